@@ -0,0 +1,80 @@
+package com.db.awmd.challenge.engine;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+
+/**
+ * Throughput of the sharded engine when submitters keep a window of transfers
+ * in flight instead of waiting for each one, which is how the engine reaches
+ * its peak rate. Needs at least one core per shard plus the submitters; the
+ * shard threads spin while idle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class ShardedTransferEngineBenchmark {
+
+	private static final int WINDOW = 1024;
+
+	@Param({ "100000" })
+	public int accounts;
+
+	@Param({ "1", "2", "4" })
+	public int shards;
+
+	private ShardedTransferEngine engine;
+
+	private String[] accountIds;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+		accountIds = new String[accounts];
+		for (int i = 0; i < accounts; i++) {
+			accountIds[i] = "Id-" + i;
+			repository.createAccount(new Account(accountIds[i], new BigDecimal(1000000000)));
+		}
+		engine = new ShardedTransferEngine(repository, shards, 65536);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		engine.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(WINDOW)
+	public void transferPipelined() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		CompletableFuture<?>[] window = new CompletableFuture<?>[WINDOW];
+		for (int i = 0; i < WINDOW; i++) {
+			int from = random.nextInt(accounts);
+			int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+			window[i] = engine.transfer(accountIds[from], accountIds[to], 1);
+		}
+		CompletableFuture.allOf(window).join();
+	}
+}
@@ -0,0 +1,90 @@
+package com.db.awmd.challenge.journal;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.db.awmd.challenge.config.AccountsProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+
+/**
+ * Startup time of a journaled service, recovering either from a snapshot plus
+ * a short journal tail or from the full journal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = { "-Xmx6g" })
+public class SnapshotRecoveryBenchmark {
+
+	private static final int TAIL_TRANSFERS = 100000;
+
+	@Param({ "1000000", "10000000" })
+	public int accounts;
+
+	@Param({ "snapshot", "journal" })
+	public String recovery;
+
+	private Path directory;
+
+	@Setup(Level.Trial)
+	public void writeJournal() throws Exception {
+		directory = Files.createTempDirectory("recovery-benchmark");
+		AccountsService accountsService = newService();
+		for (int i = 0; i < accounts; i++) {
+			accountsService.createAccount(new Account("Id-" + i, BigDecimal.valueOf(10000)));
+		}
+		if ("snapshot".equals(recovery)) {
+			accountsService.getSnapshotManager().takeSnapshot();
+		}
+		for (int i = 0; i < TAIL_TRANSFERS; i++) {
+			accountsService.amountTransfer("Id-" + (i % accounts), "Id-" + ((i * 31 + 1) % accounts), 100);
+		}
+		accountsService.close();
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteJournal() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public AccountsService recover() throws IOException {
+		AccountsService accountsService = newService();
+		accountsService.close();
+		return accountsService;
+	}
+
+	private AccountsService newService() {
+		AccountsProperties properties = new AccountsProperties();
+		properties.getJournal().setEnabled(true);
+		properties.getJournal().setDirectory(directory.toString());
+		properties.getJournal().setSyncIntervalMs(1000);
+		properties.getJournal().setBufferSize(8 << 20);
+		return new AccountsService(new AccountsRepositoryInMemory(), properties);
+	}
+}
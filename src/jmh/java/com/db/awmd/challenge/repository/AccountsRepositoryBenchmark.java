@@ -0,0 +1,88 @@
+package com.db.awmd.challenge.repository;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.db.awmd.challenge.domain.Account;
+
+/**
+ * Lookup latency of the heap and the off heap repository. The trial setup
+ * prints the heap and direct memory used by the populated repository.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xmx4g", "-XX:MaxDirectMemorySize=4g" })
+public class AccountsRepositoryBenchmark {
+
+	@Param({ "in-memory", "off-heap" })
+	public String type;
+
+	@Param({ "100000", "1000000" })
+	public int accounts;
+
+	private AccountsRepository repository;
+
+	private String[] accountIds;
+
+	@Setup(Level.Trial)
+	public void populate() {
+		accountIds = new String[accounts];
+		for (int i = 0; i < accounts; i++) {
+			accountIds[i] = "Id-" + i;
+		}
+		long heapBefore = usedHeap();
+		long directBefore = usedDirect();
+		repository = "off-heap".equals(type) ? new AccountsRepositoryOffHeap(accounts) : new AccountsRepositoryInMemory();
+		for (int i = 0; i < accounts; i++) {
+			repository.createAccount(new Account(accountIds[i], BigDecimal.valueOf(i)));
+		}
+		System.out.printf("%n%s with %d accounts: heap %d bytes, direct %d bytes%n", type, accounts,
+				usedHeap() - heapBefore, usedDirect() - directBefore);
+	}
+
+	@TearDown(Level.Trial)
+	public void clear() {
+		repository.clearAccounts();
+	}
+
+	@Benchmark
+	public Account getAccount() {
+		return repository.getAccount(accountIds[ThreadLocalRandom.current().nextInt(accounts)]);
+	}
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	private static long usedDirect() {
+		for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+			if ("direct".equals(pool.getName())) {
+				return pool.getMemoryUsed();
+			}
+		}
+		return 0;
+	}
+}
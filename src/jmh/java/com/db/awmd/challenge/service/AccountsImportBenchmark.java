@@ -0,0 +1,100 @@
+package com.db.awmd.challenge.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.db.awmd.challenge.config.AccountsProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.ImportResult;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Time to load an account base into an empty service: a streamed NDJSON
+ * import against one createAccount call per account (the work behind one
+ * POST /v1/accounts, without HTTP), and the export of the loaded accounts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = { "-Xmx6g" })
+public class AccountsImportBenchmark {
+
+	@Param({ "1000000" })
+	public int accounts;
+
+	private byte[] ndjson;
+
+	private AccountsService accountsService;
+
+	private AccountsBulkService bulkService;
+
+	@Setup(Level.Trial)
+	public void writeInput() {
+		StringBuilder body = new StringBuilder(accounts * 40);
+		for (int i = 0; i < accounts; i++) {
+			body.append("{\"accountId\":\"Id-").append(i).append("\",\"balance\":").append(i % 100000).append(".25}\n");
+		}
+		ndjson = body.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Setup(Level.Iteration)
+	public void newService() {
+		accountsService = new AccountsService(new AccountsRepositoryInMemory(), new AccountsProperties());
+		bulkService = new AccountsBulkService(accountsService, new AccountsProperties(), new ObjectMapper());
+	}
+
+	@TearDown(Level.Iteration)
+	public void closeService() throws IOException {
+		bulkService.close();
+		accountsService.close();
+	}
+
+	@Benchmark
+	public ImportResult streamedImport() throws IOException {
+		return bulkService.importAccounts(new ByteArrayInputStream(ndjson));
+	}
+
+	@Benchmark
+	public AccountsService singleCreates() {
+		for (int i = 0; i < accounts; i++) {
+			accountsService.createAccount(new Account("Id-" + i, BigDecimal.valueOf(i % 100000 * 100 + 25, 2)));
+		}
+		return accountsService;
+	}
+
+	@Benchmark
+	public void importAndExport() throws IOException {
+		bulkService.importAccounts(new ByteArrayInputStream(ndjson));
+		bulkService.exportAccounts(new OutputStream() {
+
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		});
+	}
+}
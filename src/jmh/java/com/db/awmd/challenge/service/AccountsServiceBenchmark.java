@@ -0,0 +1,121 @@
+package com.db.awmd.challenge.service;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.db.awmd.challenge.config.AccountsProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.transaction.AccountTransactionManager;
+import com.db.awmd.challenge.transaction.TransactionEngine;
+import com.db.awmd.challenge.transaction.TransactionalAccountsRepository;
+
+/**
+ * Throughput of the service hot paths over account sets of different sizes.
+ * Low contention transfers pick two random accounts, high contention
+ * transfers all go between the same two accounts. The thread count is set by
+ * the runner, e.g.
+ * <pre>
+ * gradle jmh -PjmhArgs='AccountsServiceBenchmark -prof gc' -PjmhThreads=1,4,16
+ * </pre>
+ * where "-prof gc" adds the allocation rate per operation (gc.alloc.rate.norm).
+ * The engine parameter compares the locking transactions with the sharded
+ * engine; repoProxyRead only applies to the locking one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class AccountsServiceBenchmark {
+
+	@Param({ "1000", "100000", "1000000" })
+	public int accounts;
+
+	@Param({ "LOCKING", "SHARDED" })
+	public TransactionEngine engine;
+
+	private AccountsService accountsService;
+
+	private AccountTransactionManager transactionManager;
+
+	private String[] accountIds;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		AccountsProperties properties = new AccountsProperties();
+		properties.getTransaction().setEngine(engine);
+		accountsService = new AccountsService(new AccountsRepositoryInMemory(), properties);
+		transactionManager = accountsService.getTransactionManager();
+		accountIds = new String[accounts];
+		for (int i = 0; i < accounts; i++) {
+			accountIds[i] = "Id-" + i;
+			accountsService.createAccount(new Account(accountIds[i], new BigDecimal(1000000000)));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		accountsService.close();
+	}
+
+	@Benchmark
+	public void transferLowContention() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int from = random.nextInt(accounts);
+		int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+		accountsService.amountTransfer(accountIds[from], accountIds[to], 1);
+	}
+
+	@Benchmark
+	public void transferHighContention() {
+		boolean forward = ThreadLocalRandom.current().nextBoolean();
+		accountsService.amountTransfer(accountIds[forward ? 0 : 1], accountIds[forward ? 1 : 0], 1);
+	}
+
+	@Benchmark
+	public Account getAccount() {
+		return accountsService.getAccount(accountIds[ThreadLocalRandom.current().nextInt(accounts)]);
+	}
+
+	@Benchmark
+	public void blockUnblock() {
+		String accountId = accountIds[ThreadLocalRandom.current().nextInt(accounts)];
+		accountsService.blockAccount(accountId);
+		accountsService.unblockAccount(accountId);
+	}
+
+	/**
+	 * Two reads through the transactional repository and the rollback of
+	 * their save points, without locks or commit.
+	 */
+	@Benchmark
+	public void repoProxyRead() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		String from = accountIds[random.nextInt(accounts)];
+		String to = accountIds[random.nextInt(accounts)];
+		TransactionalAccountsRepository repoProxy = transactionManager.getRepoProxy();
+		transactionManager.doInTransaction(() -> {
+			repoProxy.getAccount(from);
+			repoProxy.getAccount(to);
+		});
+		transactionManager.rollBack();
+	}
+}
@@ -0,0 +1,99 @@
+package com.db.awmd.challenge.service;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.db.awmd.challenge.config.AccountsProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AmountTransfer;
+import com.db.awmd.challenge.domain.BatchTransfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+
+/**
+ * Transfer throughput of one call per transfer against one best effort batch
+ * call, with and without a journal forced on every commit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchTransferBenchmark {
+
+	private static final int ACCOUNTS = 10000;
+
+	private static final int TRANSFERS = 1000;
+
+	@Param({ "false", "true" })
+	public boolean journal;
+
+	private Path directory;
+
+	private AccountsService accountsService;
+
+	private List<AmountTransfer> transfers;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("batch-benchmark");
+		AccountsProperties properties = new AccountsProperties();
+		properties.getJournal().setEnabled(journal);
+		properties.getJournal().setDirectory(directory.toString());
+		accountsService = new AccountsService(new AccountsRepositoryInMemory(), properties);
+		for (int i = 0; i < ACCOUNTS; i++) {
+			accountsService.createAccount(new Account("Id-" + i, new BigDecimal(1000000000)));
+		}
+		transfers = new ArrayList<>();
+		for (int i = 0; i < TRANSFERS; i++) {
+			transfers.add(new AmountTransfer("Id-" + (i * 7 % ACCOUNTS), "Id-" + ((i * 13 + 1) % ACCOUNTS),
+					BigDecimal.ONE));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		accountsService.close();
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TRANSFERS)
+	public void singleTransfers() {
+		for (AmountTransfer transfer : transfers) {
+			accountsService.amountTransfer(transfer.getAccountFrom(), transfer.getAccountTo(),
+					transfer.getTransferAmount());
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TRANSFERS)
+	public List<TransferResult> batchTransfer() {
+		return accountsService.amountTransfers(transfers, BatchTransfer.Mode.BEST_EFFORT);
+	}
+}
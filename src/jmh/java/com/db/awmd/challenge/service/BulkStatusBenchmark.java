@@ -0,0 +1,77 @@
+package com.db.awmd.challenge.service;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.db.awmd.challenge.config.AccountsProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+
+/**
+ * Freezing and releasing a sweep of accounts, one status change per account
+ * or in bulk. An invocation blocks and unblocks all of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BulkStatusBenchmark {
+
+	private static final int ACCOUNTS = 4096;
+
+	private AccountsService accountsService;
+
+	private List<String> accountIds;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		AccountsProperties properties = new AccountsProperties();
+		properties.getLedger().setEnabled(false);
+		accountsService = new AccountsService(new AccountsRepositoryInMemory(), properties);
+		accountIds = new ArrayList<>(ACCOUNTS);
+		for (int i = 0; i < ACCOUNTS; i++) {
+			accountIds.add("Id-" + i);
+			accountsService.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		accountsService.close();
+	}
+
+	@Benchmark
+	public Object single() {
+		for (String accountId : accountIds) {
+			accountsService.setBlocked(accountId, true);
+		}
+		for (String accountId : accountIds) {
+			accountsService.setBlocked(accountId, false);
+		}
+		return accountsService;
+	}
+
+	@Benchmark
+	public Object bulk() {
+		accountsService.setBlocked(accountIds, true);
+		return accountsService.setBlocked(accountIds, false);
+	}
+}
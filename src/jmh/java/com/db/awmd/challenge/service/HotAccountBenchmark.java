@@ -0,0 +1,77 @@
+package com.db.awmd.challenge.service;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.db.awmd.challenge.config.AccountsProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+
+/**
+ * Throughput of credits to one merchant account from many payers, with the
+ * merchant locked like any account or striped as a hot account. The scaling
+ * shows with the thread count, e.g.
+ * <pre>
+ * gradle jmh -PjmhArgs='HotAccountBenchmark' -PjmhThreads=1,4,16
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HotAccountBenchmark {
+
+	private static final int PAYERS = 4096;
+
+	@Param({ "false", "true" })
+	public boolean striped;
+
+	private AccountsService accountsService;
+
+	private String[] payers;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		AccountsProperties properties = new AccountsProperties();
+		if (striped) {
+			properties.getHot().getAccounts().add("merchant");
+		}
+		// the ledger would serialize the merchant's entries either way
+		properties.getLedger().setEnabled(false);
+		accountsService = new AccountsService(new AccountsRepositoryInMemory(), properties);
+		accountsService.createAccount(new Account("merchant", BigDecimal.ZERO));
+		payers = new String[PAYERS];
+		for (int i = 0; i < PAYERS; i++) {
+			payers[i] = "Id-" + i;
+			accountsService.createAccount(new Account(payers[i], new BigDecimal(1000000000)));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		accountsService.close();
+	}
+
+	@Benchmark
+	public Object credit() {
+		return accountsService.transfer(payers[ThreadLocalRandom.current().nextInt(PAYERS)], "merchant", 1);
+	}
+}
@@ -0,0 +1,73 @@
+package com.db.awmd.challenge.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the idempotency check: a lookup of a known key and the insert of a
+ * new one, which evicts the oldest key once its segment is full, set against
+ * a plain {@link ConcurrentHashMap} probe.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class IdempotencyCacheBenchmark {
+
+	@Param({ "1000000" })
+	public int keys;
+
+	private IdempotencyCache cache;
+
+	private ConcurrentHashMap<String, IdempotencyCache.Entry> map;
+
+	private String[] knownKeys;
+
+	private final IdempotencyCache.Entry entry = new IdempotencyCache.Entry("Id-1", "Id-2", 1);
+
+	private long sequence;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		// room to spare, so that uneven segments do not evict known keys
+		cache = new IdempotencyCache(2 * keys, TimeUnit.HOURS.toMillis(1));
+		map = new ConcurrentHashMap<>(keys);
+		knownKeys = new String[keys];
+		for (int i = 0; i < keys; i++) {
+			knownKeys[i] = "key-" + i;
+			cache.putIfAbsent(knownKeys[i], new IdempotencyCache.Entry("Id-1", "Id-2", i));
+			map.put(knownKeys[i], entry);
+		}
+	}
+
+	@Benchmark
+	public IdempotencyCache.Entry lookupKnownKey() {
+		return cache.putIfAbsent(knownKeys[ThreadLocalRandom.current().nextInt(keys)], entry);
+	}
+
+	@Benchmark
+	public IdempotencyCache.Entry insertNewKey() {
+		return cache.putIfAbsent("new-" + sequence++, new IdempotencyCache.Entry("Id-1", "Id-2", 1));
+	}
+
+	@Benchmark
+	public IdempotencyCache.Entry concurrentHashMapProbe() {
+		return map.get(knownKeys[ThreadLocalRandom.current().nextInt(keys)]);
+	}
+}
@@ -0,0 +1,94 @@
+package com.db.awmd.challenge.service;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.db.awmd.challenge.config.AccountsProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AmountTransfer;
+import com.db.awmd.challenge.domain.BatchTransfer;
+import com.db.awmd.challenge.domain.MultiLegTransfer;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+
+/**
+ * A payroll run from one employer account to many employees, as one transfer
+ * per employee, as an all-or-nothing batch and as one multi-leg transfer. An
+ * invocation pays all employees.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiLegTransferBenchmark {
+
+	private static final int EMPLOYEES = 1000;
+
+	private AccountsService accountsService;
+
+	private List<String> employees;
+
+	private List<AmountTransfer> transfers;
+
+	private MultiLegTransfer payroll;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		AccountsProperties properties = new AccountsProperties();
+		properties.getLedger().setEnabled(false);
+		accountsService = new AccountsService(new AccountsRepositoryInMemory(), properties);
+		accountsService.createAccount(new Account("employer", new BigDecimal(1000000000)));
+		employees = new ArrayList<>(EMPLOYEES);
+		transfers = new ArrayList<>(EMPLOYEES);
+		List<MultiLegTransfer.Leg> credits = new ArrayList<>(EMPLOYEES);
+		for (int i = 0; i < EMPLOYEES; i++) {
+			employees.add("Id-" + i);
+			accountsService.createAccount(new Account("Id-" + i, BigDecimal.ZERO));
+			transfers.add(new AmountTransfer("employer", "Id-" + i, BigDecimal.ONE));
+			credits.add(new MultiLegTransfer.Leg("Id-" + i, BigDecimal.ONE));
+		}
+		payroll = new MultiLegTransfer(
+				Collections.singletonList(new MultiLegTransfer.Leg("employer", new BigDecimal(EMPLOYEES))), credits);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		accountsService.close();
+	}
+
+	@Benchmark
+	public Object single() {
+		for (String employee : employees) {
+			accountsService.transfer("employer", employee, 100);
+		}
+		return accountsService;
+	}
+
+	@Benchmark
+	public Object batch() {
+		return accountsService.amountTransfers(transfers, BatchTransfer.Mode.ALL_OR_NOTHING);
+	}
+
+	@Benchmark
+	public Object multiLeg() {
+		return accountsService.transfer(payroll);
+	}
+}
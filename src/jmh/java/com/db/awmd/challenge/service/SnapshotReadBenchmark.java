@@ -0,0 +1,102 @@
+package com.db.awmd.challenge.service;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.db.awmd.challenge.config.AccountsProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountsSnapshot;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+
+/**
+ * Transfers alone against transfers next to readers which take snapshots of
+ * a fixed set of accounts; the transfer throughput of both groups should be
+ * the same, snapshot readers take no lock. The readers' set includes the
+ * accounts being transferred between, so they walk the version histories.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+public class SnapshotReadBenchmark {
+
+	private static final int ACCOUNTS = 1000;
+
+	@Param({ "10", "100" })
+	public int snapshotSize;
+
+	private AccountsService accountsService;
+
+	private String[] accountIds;
+
+	private List<String> snapshotIds;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		accountsService = new AccountsService(new AccountsRepositoryInMemory(), new AccountsProperties());
+		accountIds = new String[ACCOUNTS];
+		for (int i = 0; i < ACCOUNTS; i++) {
+			accountIds[i] = "Id-" + i;
+			accountsService.createAccount(new Account(accountIds[i], new BigDecimal(1000000000)));
+		}
+		snapshotIds = new ArrayList<>(snapshotSize);
+		for (int i = 0; i < snapshotSize; i++) {
+			snapshotIds.add(accountIds[i]);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		accountsService.close();
+	}
+
+	@Benchmark
+	@Group("transfersOnly")
+	@GroupThreads(2)
+	public void transfer() {
+		transferAmongSnapshotAccounts();
+	}
+
+	@Benchmark
+	@Group("transfersWithReaders")
+	@GroupThreads(2)
+	public void transferNextToReaders() {
+		transferAmongSnapshotAccounts();
+	}
+
+	@Benchmark
+	@Group("transfersWithReaders")
+	@GroupThreads(2)
+	public AccountsSnapshot snapshot() {
+		return accountsService.getAccounts(snapshotIds);
+	}
+
+	private void transferAmongSnapshotAccounts() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int from = random.nextInt(snapshotSize);
+		int to = (from + 1 + random.nextInt(snapshotSize - 1)) % snapshotSize;
+		accountsService.amountTransfer(accountIds[from], accountIds[to], 1);
+	}
+}
@@ -0,0 +1,98 @@
+package com.db.awmd.challenge.service;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.db.awmd.challenge.config.AccountsProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.AmountTransferException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+
+/**
+ * Transfers of which half are rejected, through the result codes of
+ * transfer() and through the exceptions of amountTransfer(). An invocation
+ * is one applied and one rejected transfer. The precheck variants are
+ * rejected before the transaction, the transaction variants only in it, by
+ * a target at the balance limit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferOutcomeBenchmark {
+
+	private AccountsService accountsService;
+
+	// alternates the direction of the applied transfer, so balances stay put
+	private boolean back;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		accountsService = new AccountsService(new AccountsRepositoryInMemory(), new AccountsProperties());
+		accountsService.createAccount(new Account("Id-1", new BigDecimal(1000)));
+		accountsService.createAccount(new Account("Id-2", new BigDecimal(1000)));
+		accountsService.createAccount(new Account("Id-blocked", new BigDecimal(1000), true));
+		Account full = new Account("Id-full");
+		full.setBalanceUnits(Long.MAX_VALUE);
+		accountsService.createAccount(full);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		accountsService.close();
+	}
+
+	@Benchmark
+	public Object codesPrecheck() {
+		apply();
+		return accountsService.transfer("Id-1", "Id-blocked", 100);
+	}
+
+	@Benchmark
+	public Object codesTransaction() {
+		apply();
+		return accountsService.transfer("Id-1", "Id-full", 100);
+	}
+
+	@Benchmark
+	public Object exceptionsPrecheck() {
+		apply();
+		return reject("Id-1", "Id-blocked");
+	}
+
+	@Benchmark
+	public Object exceptionsTransaction() {
+		apply();
+		return reject("Id-1", "Id-full");
+	}
+
+	private void apply() {
+		back = !back;
+		accountsService.amountTransfer(back ? "Id-2" : "Id-1", back ? "Id-1" : "Id-2", 100);
+	}
+
+	private Object reject(String fromAccount, String toAccount) {
+		try {
+			accountsService.amountTransfer(fromAccount, toAccount, 100);
+			return null;
+		} catch (AmountTransferException e) {
+			return e;
+		}
+	}
+}
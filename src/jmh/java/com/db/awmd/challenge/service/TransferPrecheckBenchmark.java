@@ -0,0 +1,79 @@
+package com.db.awmd.challenge.service;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.db.awmd.challenge.config.AccountsProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.AmountTransferException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+
+/**
+ * Latency of rejected transfers, from the call to the caught exception.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferPrecheckBenchmark {
+
+	private AccountsService accountsService;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		accountsService = new AccountsService(new AccountsRepositoryInMemory(), new AccountsProperties());
+		accountsService.createAccount(new Account("Id-1", new BigDecimal(1000)));
+		accountsService.createAccount(new Account("Id-2", new BigDecimal(1000)));
+		accountsService.createAccount(new Account("Id-blocked", new BigDecimal(1000), true));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		accountsService.close();
+	}
+
+	@Benchmark
+	public Object rejectBlockedTarget() {
+		return reject("Id-1", "Id-blocked", 100);
+	}
+
+	@Benchmark
+	public Object rejectUnknownSource() {
+		return reject("Id-unknown", "Id-2", 100);
+	}
+
+	@Benchmark
+	public Object rejectSameAccount() {
+		return reject("Id-1", "Id-1", 100);
+	}
+
+	@Benchmark
+	public Object rejectInsufficientBalance() {
+		return reject("Id-1", "Id-2", 5000_00);
+	}
+
+	private Object reject(String fromAccount, String toAccount, long amount) {
+		try {
+			accountsService.amountTransfer(fromAccount, toAccount, amount);
+			return null;
+		} catch (AmountTransferException e) {
+			return e;
+		}
+	}
+}
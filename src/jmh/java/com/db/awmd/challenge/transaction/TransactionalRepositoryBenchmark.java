@@ -0,0 +1,82 @@
+package com.db.awmd.challenge.transaction;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+
+/**
+ * Compares the save point tracking of one transfer (two transactional reads
+ * and the balance updates) through the JDK dynamic proxy and through
+ * {@link TransactionalAccountsRepository}. Run with "-prof gc" to compare the
+ * allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionalRepositoryBenchmark {
+
+	private static final long AMOUNT = 100;
+
+	private TransactionInvocationHandler<Account> handler;
+
+	private AccountsRepository proxyRepository;
+
+	private TransactionalAccountsRepository directRepository;
+
+	private TransactionContext<Account, Account> proxyContext = new TransactionContext<>();
+
+	@Setup
+	public void setUp() {
+		AccountsRepository accountsRepository = new AccountsRepositoryInMemory();
+		accountsRepository.createAccount(new Account("Id-1", new BigDecimal(1000000)));
+		accountsRepository.createAccount(new Account("Id-2", new BigDecimal(1000000)));
+
+		handler = new TransactionInvocationHandler<>(accountsRepository);
+		proxyRepository = (AccountsRepository) Proxy.newProxyInstance(AccountsRepository.class.getClassLoader(),
+				new Class<?>[] { AccountsRepository.class }, handler);
+		directRepository = new TransactionalAccountsRepository(accountsRepository);
+		handler.getLocalContext().set(proxyContext);
+	}
+
+	@Benchmark
+	public TransactionContext<Account, Account> proxyTransfer() {
+		proxyContext.begin();
+		transfer(proxyRepository);
+		proxyContext.reset();
+		return proxyContext;
+	}
+
+	@Benchmark
+	public TransactionContext<Account, Account> directTransfer() {
+		TransactionContext<Account, Account> context = directRepository.getContext();
+		context.begin();
+		transfer(directRepository);
+		context.reset();
+		return context;
+	}
+
+	private static void transfer(AccountsRepository repository) {
+		Account from = repository.getAccount("Id-1");
+		Account to = repository.getAccount("Id-2");
+		from.setBalanceUnits(from.getBalanceUnits() - AMOUNT);
+		to.setBalanceUnits(to.getBalanceUnits() + AMOUNT);
+	}
+}
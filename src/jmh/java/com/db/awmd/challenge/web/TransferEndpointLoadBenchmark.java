@@ -0,0 +1,116 @@
+package com.db.awmd.challenge.web;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.db.awmd.challenge.DevChallengeApplication;
+
+/**
+ * Load test of the transfer endpoint over HTTP, blocking (/v1) against
+ * asynchronous (/v2), with a deliberately small Tomcat thread pool. Every
+ * benchmark thread is one client with a keep-alive connection, so running it
+ * with more threads than tomcatThreads shows how each API behaves once the
+ * clients outnumber the container threads, e.g.
+ * <pre>
+ * gradle jmh -PjmhArgs='TransferEndpointLoadBenchmark' -PjmhThreads=16,64,256
+ * </pre>
+ * Answers other than 202 count as errors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx2g", "-Dhttp.maxConnections=1024" })
+public class TransferEndpointLoadBenchmark {
+
+	private static final int ACCOUNTS = 10000;
+
+	@Param({ "v1", "v2" })
+	public String api;
+
+	@Param({ "8" })
+	public int tomcatThreads;
+
+	private ConfigurableApplicationContext context;
+
+	private URL transferUrl;
+
+	@Setup(Level.Trial)
+	public void startServer() throws IOException {
+		context = SpringApplication.run(DevChallengeApplication.class, "--server.port=0",
+				"--server.tomcat.max-threads=" + tomcatThreads, "--logging.level.root=WARN");
+		int port = ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+		URL accountsUrl = new URL("http://localhost:" + port + "/v1/accounts");
+		for (int i = 0; i < ACCOUNTS; i++) {
+			post(accountsUrl, "{\"accountId\":\"Id-" + i + "\",\"balance\":1000000000}");
+		}
+		transferUrl = new URL("http://localhost:" + port + "/" + api + "/accounts/transfer");
+	}
+
+	@TearDown(Level.Trial)
+	public void stopServer() {
+		context.close();
+	}
+
+	@Benchmark
+	public int transfer() throws IOException {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int from = random.nextInt(ACCOUNTS);
+		int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+		int status = post(transferUrl,
+				"{\"accountFrom\":\"Id-" + from + "\",\"accountTo\":\"Id-" + to + "\",\"transferAmount\":1}");
+		if (status != 202) {
+			throw new IllegalStateException("Transfer answered " + status);
+		}
+		return status;
+	}
+
+	private static int post(URL url, String body) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setRequestMethod("POST");
+		connection.setRequestProperty("Content-Type", "application/json");
+		connection.setDoOutput(true);
+		try (OutputStream out = connection.getOutputStream()) {
+			out.write(body.getBytes(StandardCharsets.UTF_8));
+		}
+		int status = connection.getResponseCode();
+		// the body has to be read to the end for the connection to be reused
+		try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+			if (in != null) {
+				drain(in);
+			}
+		}
+		return status;
+	}
+
+	private static void drain(InputStream in) throws IOException {
+		byte[] buffer = new byte[1024];
+		while (in.read(buffer) >= 0) {
+			// discard
+		}
+	}
+}
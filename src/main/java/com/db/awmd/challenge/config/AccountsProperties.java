@@ -0,0 +1,184 @@
+package com.db.awmd.challenge.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.ledger.AccountLedger;
+import com.db.awmd.challenge.service.AsyncNotificationService.Backpressure;
+import com.db.awmd.challenge.transaction.AccountLockManager;
+import com.db.awmd.challenge.transaction.TransactionEngine;
+import com.db.awmd.challenge.transaction.TransactionMode;
+import com.db.awmd.challenge.transaction.VersionClock;
+
+import lombok.Data;
+
+/**
+ * Tuning options of the accounts service, bound from the "accounts" prefix of
+ * application.yml.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "accounts")
+public class AccountsProperties {
+
+	private Repository repository = new Repository();
+
+	private Transaction transaction = new Transaction();
+
+	private Journal journal = new Journal();
+
+	private Batch batch = new Batch();
+
+	private Notification notification = new Notification();
+
+	private Async async = new Async();
+
+	private Idempotency idempotency = new Idempotency();
+
+	private Bulk bulk = new Bulk();
+
+	private Ledger ledger = new Ledger();
+
+	private Hot hot = new Hot();
+
+	@Data
+	public static class Repository {
+
+		/** "in-memory" (default) or "off-heap" */
+		private String type = "in-memory";
+
+		/** number of accounts the off heap index is sized for before it grows */
+		private int initialCapacity = 1024;
+	}
+
+	@Data
+	public static class Transaction {
+
+		private TransactionMode mode = TransactionMode.PESSIMISTIC;
+
+		/** retries of an optimistic transaction before it is aborted */
+		private int maxRetries = 8;
+
+		private int lockStripes = AccountLockManager.DEFAULT_STRIPES;
+
+		/** SHARDED does not support the journal */
+		private TransactionEngine engine = TransactionEngine.LOCKING;
+
+		/** threads of the sharded engine, 0 for one per processor */
+		private int shards = 0;
+
+		/** commands queued per shard before submitters have to wait */
+		private int shardQueueCapacity = 65536;
+
+		/**
+		 * committed versions kept per account for snapshot reads, at most two
+		 * with the off-heap repository
+		 */
+		private int snapshotVersions = VersionClock.DEFAULT_DEPTH;
+	}
+
+	@Data
+	public static class Journal {
+
+		private boolean enabled = false;
+
+		/** directory of the journal segments and snapshots */
+		private String directory = "data/journal";
+
+		/** 0 forces every commit (group commit), otherwise the journal is forced at this interval */
+		private long syncIntervalMs = 0;
+
+		private int bufferSize = 1 << 20;
+
+		/** 0 disables periodic snapshots */
+		private long snapshotIntervalMs = 0;
+	}
+
+	@Data
+	public static class Batch {
+
+		/** transfers of a best effort batch which are locked and committed together */
+		private int groupSize = 256;
+	}
+
+	@Data
+	public static class Notification {
+
+		/** deliver notifications on background workers instead of the request thread */
+		private boolean async = true;
+
+		private int workers = 2;
+
+		/** notifications queued over all workers before the backpressure policy applies */
+		private int queueCapacity = 10000;
+
+		/** queued notifications a worker takes at once and merges per account */
+		private int maxBatch = 64;
+
+		private Backpressure backpressure = Backpressure.BLOCK;
+	}
+
+	@Data
+	public static class Async {
+
+		/** threads running the service calls of the /v2 endpoints */
+		private int threads = 32;
+
+		/** calls waiting for a thread before further requests get 503 */
+		private int queueCapacity = 10000;
+
+		/** requests still waiting for their result after this time get 503 */
+		private long requestTimeoutMs = 30000;
+	}
+
+	@Data
+	public static class Idempotency {
+
+		/** idempotency keys remembered at most, the oldest are evicted first */
+		private int maxKeys = 1000000;
+
+		/** how long the outcome of a keyed transfer is replayed */
+		private long ttlMs = 3600000;
+	}
+
+	@Data
+	public static class Bulk {
+
+		/** imported or blocked accounts which are locked and journaled together */
+		private int batchSize = 1024;
+
+		/** threads creating the imported accounts, 0 for one per processor */
+		private int writers = 0;
+	}
+
+	@Data
+	public static class Ledger {
+
+		private boolean enabled = true;
+
+		/** entries per chunk, the unit kept in memory or spilled */
+		private int chunkSize = 64;
+
+		/** full chunks per account kept in memory, older ones are spilled to disk */
+		private int memoryChunks = 4;
+
+		/** directory of the spill file, the system temporary directory if empty */
+		private String directory = "";
+
+		/** entries queued for the ledger writer before committing transactions have to wait */
+		private int bufferSize = AccountLedger.DEFAULT_BUFFER_SIZE;
+	}
+
+	@Data
+	public static class Hot {
+
+		/** accounts credited without their lock, their balance split into stripes */
+		private List<String> accounts = new ArrayList<>();
+
+		/** sub-balances per hot account, 0 for two per processor */
+		private int stripes = 0;
+	}
+}
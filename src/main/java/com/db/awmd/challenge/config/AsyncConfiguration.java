@@ -0,0 +1,33 @@
+package com.db.awmd.challenge.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+
+/**
+ * Bounded executor of the service calls behind the asynchronous /v2
+ * endpoints. Request threads only hand the call over and return to the
+ * container; once all threads are busy and the queue is full further calls
+ * are rejected instead of queueing without limit.
+ */
+@Configuration
+public class AsyncConfiguration {
+
+	@Bean
+	public ThreadPoolTaskExecutor accountsExecutor(AccountsProperties properties, MetricsRegistry metrics) {
+		AccountsProperties.Async async = properties.getAsync();
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setThreadNamePrefix("accounts-async-");
+		executor.setCorePoolSize(async.getThreads());
+		executor.setMaxPoolSize(async.getThreads());
+		executor.setQueueCapacity(async.getQueueCapacity());
+		executor.setWaitForTasksToCompleteOnShutdown(true);
+		executor.setAwaitTerminationSeconds(5);
+		executor.initialize();
+		metrics.gauge("async.active", executor::getActiveCount);
+		metrics.gauge("async.queue.depth", () -> executor.getThreadPoolExecutor().getQueue().size());
+		return executor;
+	}
+}
@@ -0,0 +1,38 @@
+package com.db.awmd.challenge.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.service.AsyncNotificationService;
+import com.db.awmd.challenge.service.EmailNotificationService;
+import com.db.awmd.challenge.service.TimedNotificationService;
+
+/**
+ * Puts the {@link AsyncNotificationService} in front of the e-mail
+ * notifications, unless accounts.notification.async is false.
+ */
+@Configuration
+public class NotificationConfiguration {
+
+	@Bean(destroyMethod = "close")
+	@Primary
+	@ConditionalOnProperty(prefix = "accounts.notification", name = "async", havingValue = "true", matchIfMissing = true)
+	public AsyncNotificationService asyncNotificationService(EmailNotificationService emailNotificationService,
+			AccountsProperties properties, MetricsRegistry metrics) {
+		AccountsProperties.Notification notification = properties.getNotification();
+		AsyncNotificationService notificationService = new AsyncNotificationService(
+				new TimedNotificationService(emailNotificationService, metrics.histogram("notification.delivery")),
+				notification.getWorkers(), notification.getQueueCapacity(), notification.getMaxBatch(),
+				notification.getBackpressure());
+		metrics.gauge("notifications.queue.depth", notificationService::getQueueDepth);
+		metrics.gauge("notifications.submitted", notificationService::getSubmittedCount);
+		metrics.gauge("notifications.delivered", notificationService::getDeliveredCount);
+		metrics.gauge("notifications.dropped", notificationService::getDroppedCount);
+		metrics.gauge("notifications.failed", notificationService::getFailedCount);
+		metrics.gauge("notifications.batches", notificationService::getBatchCount);
+		return notificationService;
+	}
+}
@@ -0,0 +1,34 @@
+package com.db.awmd.challenge.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.metrics.RequestTimingInterceptor;
+
+@Configuration
+public class WebConfiguration extends WebMvcConfigurerAdapter {
+
+	private final MetricsRegistry metrics;
+
+	private final AccountsProperties properties;
+
+	@Autowired
+	public WebConfiguration(MetricsRegistry metrics, AccountsProperties properties) {
+		this.metrics = metrics;
+		this.properties = properties;
+	}
+
+	@Override
+	public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+		configurer.setDefaultTimeout(properties.getAsync().getRequestTimeoutMs());
+	}
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(new RequestTimingInterceptor(metrics));
+	}
+}
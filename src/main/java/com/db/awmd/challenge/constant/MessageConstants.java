@@ -12,6 +12,27 @@ public class MessageConstants {
 	public static final String ACCOUNT_UNBLOCKED_UNSUCCESSFUL = "Unable to block Account %s";
 	public static final String ACCOUNT_IS_BLOCKED = "Account %s is blocked from performing transactions";
 	public static final String INSUFFICIENT_BALANCE = "Insufficient balance in account %s";
+	public static final String SAME_ACCOUNT_TRANSFER = "Account %s cannot transfer to itself";
 	public static final String ACCOUNT_ALREADY_EXIST = "Account id %s already exists!";
+	public static final String ACCOUNT_ID_TOO_LONG = "Account id of %d characters is longer than %d characters";
 	public static final String INVALID_AMOUNT= "Invalid amount. Amount cannot be negative.";
+	public static final String INVALID_AMOUNT_SCALE = "Invalid amount. Amount cannot have more than %d decimal places.";
+	public static final String BALANCE_LIMIT_EXCEEDED = "Balance limit exceeded in account %s";
+	public static final String BATCH_ROLLED_BACK = "Transfer rolled back because transfer %d of the batch failed";
+	public static final String TRANSFER_COMPLETED = "Transfer Completed";
+	public static final String ENGINE_STOPPED = "Transfer engine is stopped";
+	public static final String ENGINE_ALL_OR_NOTHING_UNSUPPORTED = "All-or-nothing batches are not supported by the sharded engine";
+	public static final String IDEMPOTENCY_KEY_REUSED = "Idempotency key %s was already used for a different transfer";
+	public static final String BATCH_IDEMPOTENCY_KEY_UNSUPPORTED = "Idempotency keys are not supported in a batch, transfer %d has one";
+	public static final String INITIAL_BALANCE_NEGATIVE = "Initial balance must be positive.";
+	public static final String IMPORT_INVALID_LINE = "line %d: %s";
+	public static final String INVALID_PAGE = "Invalid page. The page must not be negative and the size between 1 and %d.";
+	public static final String LEDGER_DISABLED = "The transaction ledger is disabled";
+	public static final String TOO_MANY_ACCOUNTS = "At most %d accounts can be read at once";
+	public static final String SERVER_BUSY = "Too many requests in progress, try again later";
+	public static final String UNBALANCED_LEGS = "Debits and credits must add up to the same amount, they differ by %s";
+	public static final String ENGINE_MULTI_LEG_UNSUPPORTED = "Multi-leg transfers are not supported by the sharded engine";
+	public static final String MULTI_LEG_DEBIT_NOTIFICATION = "%s Amount sent to %d accounts";
+	public static final String ACCOUNT_IDS_REQUIRED = "A non-empty list of account ids is required";
+	public static final String TRANSACTION_CONFLICT = "Transaction aborted after %d attempts due to concurrent updates";
 }
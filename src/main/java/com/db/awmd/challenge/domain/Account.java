@@ -1,44 +1,116 @@
 package com.db.awmd.challenge.domain;
 
 import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 import org.hibernate.validator.constraints.NotEmpty;
 
+import com.db.awmd.challenge.constant.MessageConstants;
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Setter;
+import lombok.ToString;
 
 @Data
+@EqualsAndHashCode(exclude = { "number", "history", "stripes" })
+@ToString(exclude = { "number", "history", "stripes" })
+@JsonPropertyOrder({ "accountId", "balance", "blocked" })
 public class Account {
+	private static final long NO_BALANCE = Long.MIN_VALUE;
+
+	private static final AtomicReferenceFieldUpdater<Account, AccountVersion> HISTORY = AtomicReferenceFieldUpdater
+			.newUpdater(Account.class, AccountVersion.class, "history");
+
+	// only changed by copyFrom(), on save point copies
 	@NotNull
 	@NotEmpty
-	private final String accountId;
+	@Setter(AccessLevel.NONE)
+	private String accountId;
 
 	@NotNull
 	private boolean blocked = false;
 
-	@NotNull
-	@Min(value = 0, message = "Initial balance must be positive.")
-	private BigDecimal balance;
+	// dense number the repository hands out on creation, -1 before
+	@JsonIgnore
+	private int number = -1;
+
+	// balance in minor units (see Money), so that transfers do not allocate;
+	// NO_BALANCE until a balance is given
+	@JsonIgnore
+	private long balanceUnits;
+
+	// incremented on every commit, written last and read first so that a
+	// reader which sees a version also sees the balance committed with it
+	@JsonIgnore
+	private volatile long version;
+
+	// committed states for snapshot reads, newest first, see VersionClock
+	@JsonIgnore
+	private volatile AccountVersion history;
+
+	// sub-balances of a hot account, which then hold its balance
+	@JsonIgnore
+	private StripedBalance stripes;
 
 	public Account(String accountId) {
 		this.accountId = accountId;
-		this.balance = BigDecimal.ZERO;
+		this.balanceUnits = 0;
 	}
 
 	@JsonCreator
 	public Account(@JsonProperty("accountId") String accountId, @JsonProperty("balance") BigDecimal balance) {
 		this.accountId = accountId;
-		this.balance = balance;
+		setBalance(balance);
 	}
 
 	public Account(String accountId, BigDecimal balance, boolean blocked) {
 		this.accountId = accountId;
-		this.balance = balance;
+		setBalance(balance);
 		this.blocked = blocked;
 	}
+
+	@NotNull
+	@Min(value = 0, message = MessageConstants.INITIAL_BALANCE_NEGATIVE)
+	public BigDecimal getBalance() {
+		long units = getBalanceUnits();
+		return units == NO_BALANCE ? null : Money.toBigDecimal(units);
+	}
+
+	public void setBalance(BigDecimal balance) {
+		setBalanceUnits(balance == null ? NO_BALANCE : Money.toMinorUnits(balance));
+	}
+
+	public long getBalanceUnits() {
+		return stripes == null ? balanceUnits : stripes.sum();
+	}
+
+	/**
+	 * Makes this account a copy of the given one, without its history or
+	 * stripes, so that save point copies can be reused; see
+	 * {@link com.db.awmd.challenge.transaction.TransactionContext}. The
+	 * version is read before the state it guards.
+	 */
+	public void copyFrom(Account account) {
+		long copiedVersion = account.getVersion();
+		this.accountId = account.getAccountId();
+		this.balanceUnits = account.getBalanceUnits();
+		this.blocked = account.isBlocked();
+		this.number = account.getNumber();
+		this.history = null;
+		this.stripes = null;
+		this.version = copiedVersion;
+	}
+
+	public boolean compareAndSetHistory(AccountVersion expected, AccountVersion history) {
+		return HISTORY.compareAndSet(this, expected, history);
+	}
 }
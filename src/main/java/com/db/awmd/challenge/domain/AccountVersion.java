@@ -0,0 +1,47 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Getter;
+
+/**
+ * Committed state of an account, linked to the state it replaced. The epoch
+ * is the one of the commit which produced it, 0 for the state an account had
+ * before its first commit.
+ */
+@Getter
+public class AccountVersion {
+
+	private final long epoch;
+
+	private final long balanceUnits;
+
+	private final boolean blocked;
+
+	// cut off once the version falls out of the history depth
+	private volatile AccountVersion previous;
+
+	public AccountVersion(long epoch, long balanceUnits, boolean blocked, AccountVersion previous) {
+		this.epoch = epoch;
+		this.balanceUnits = balanceUnits;
+		this.blocked = blocked;
+		this.previous = previous;
+	}
+
+	/**
+	 * Returns the version which replaces this one and cuts the history after
+	 * depth versions, but not before the version seen at the pinned epoch.
+	 */
+	public AccountVersion next(long epoch, long balanceUnits, boolean blocked, int depth, long pinned) {
+		AccountVersion next = new AccountVersion(epoch, balanceUnits, blocked, this);
+		AccountVersion last = next;
+		for (int i = 1; i < depth && last != null; i++) {
+			last = last.previous;
+		}
+		while (last != null && last.epoch > pinned) {
+			last = last.previous;
+		}
+		if (last != null) {
+			last.previous = null;
+		}
+		return next;
+	}
+}
@@ -0,0 +1,19 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * State of a set of accounts as of one commit epoch.
+ */
+@Data
+public class AccountsSnapshot {
+
+	private final long epoch;
+
+	private final List<Account> accounts;
+
+	/** requested ids without an account */
+	private final List<String> missing;
+}
@@ -4,6 +4,7 @@ import java.math.BigDecimal;
 
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
 
 import com.db.awmd.challenge.constant.MessageConstants;
 import com.fasterxml.jackson.annotation.JsonCreator;
@@ -23,13 +24,26 @@ public class AmountTransfer {
 	@NotNull
 	@Min(value = 0, message = MessageConstants.INVALID_AMOUNT)
 	private BigDecimal transferAmount;
-	
+
+	/**
+	 * optional key chosen by the client; a retry with the same key gets the
+	 * outcome of the first request instead of transferring again
+	 */
+	@Size(min = 1, max = 128)
+	private String idempotencyKey;
+
+	public AmountTransfer(String accountFrom, String accountTo, BigDecimal transferAmount) {
+		this(accountFrom, accountTo, transferAmount, null);
+	}
+
 	@JsonCreator
 	public AmountTransfer(@JsonProperty("accountFrom") String accountFrom,
 			@JsonProperty("accountTo") String accountTo,
-	    @JsonProperty("transferAmount") BigDecimal transferAmount) {
+	    @JsonProperty("transferAmount") BigDecimal transferAmount,
+	    @JsonProperty("idempotencyKey") String idempotencyKey) {
 		this.accountFrom = accountFrom;
 		this.accountTo = accountTo;
 	    this.transferAmount = transferAmount;
+	    this.idempotencyKey = idempotencyKey;
 	}
 }
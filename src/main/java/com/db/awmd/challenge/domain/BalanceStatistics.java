@@ -0,0 +1,41 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * Aggregates over all accounts, see AccountStatistics.
+ */
+@Data
+public class BalanceStatistics {
+
+	private final long accounts;
+
+	private final long blockedAccounts;
+
+	private final BigDecimal totalBalance;
+
+	/** balance the accounts were created with, transfers do not change it */
+	private final BigDecimal createdBalance;
+
+	/** total less created balance, zero unless commits are in progress */
+	private final BigDecimal imbalance;
+
+	private final List<Bucket> histogram;
+
+	/**
+	 * Accounts with a balance from the lower bound up to, not including, the
+	 * upper one; the last bucket has no upper bound.
+	 */
+	@Data
+	public static class Bucket {
+
+		private final BigDecimal from;
+
+		private final BigDecimal to;
+
+		private final long accounts;
+	}
+}
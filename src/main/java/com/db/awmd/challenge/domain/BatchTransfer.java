@@ -0,0 +1,38 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.List;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.Data;
+
+@Data
+public class BatchTransfer {
+
+	public enum Mode {
+		/** the first failing transfer rolls back the whole batch */
+		ALL_OR_NOTHING,
+		/** failing transfers are skipped, the others are applied */
+		BEST_EFFORT
+	}
+
+	@NotNull
+	private Mode mode;
+
+	@NotNull
+	@Size(min = 1)
+	@Valid
+	private List<AmountTransfer> transfers;
+
+	@JsonCreator
+	public BatchTransfer(@JsonProperty("mode") Mode mode,
+			@JsonProperty("transfers") List<AmountTransfer> transfers) {
+		this.mode = mode == null ? Mode.ALL_OR_NOTHING : mode;
+		this.transfers = transfers;
+	}
+}
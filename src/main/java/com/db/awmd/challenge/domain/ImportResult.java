@@ -0,0 +1,24 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * Outcome of a bulk account import. Only the first few duplicate ids and
+ * invalid lines are listed, the counts cover all of them.
+ */
+@Data
+public class ImportResult {
+
+	private final long imported;
+
+	private final long duplicates;
+
+	private final long invalid;
+
+	private final List<String> duplicateIds;
+
+	/** "line &lt;number&gt;: &lt;reason&gt;" of the invalid lines */
+	private final List<String> errors;
+}
@@ -0,0 +1,27 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import lombok.Data;
+
+/**
+ * One debit (negative amount) or credit of an account, with the balance it
+ * left. The sequence numbers the entries of the account from 0.
+ */
+@Data
+@JsonPropertyOrder({ "sequence", "timestamp", "amount", "balance", "counterparty" })
+public class LedgerEntry {
+
+	private final long sequence;
+
+	/** commit time in milliseconds since the epoch */
+	private final long timestamp;
+
+	private final BigDecimal amount;
+
+	private final BigDecimal balance;
+
+	private final String counterparty;
+}
@@ -0,0 +1,23 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * A page of the ledger of an account, newest entries first.
+ */
+@Data
+public class LedgerPage {
+
+	private final String accountId;
+
+	private final int page;
+
+	private final int size;
+
+	/** entries of the account over all pages */
+	private final long total;
+
+	private final List<LedgerEntry> entries;
+}
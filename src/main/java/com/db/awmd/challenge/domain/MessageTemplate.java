@@ -0,0 +1,26 @@
+package com.db.awmd.challenge.domain;
+
+/**
+ * Message constant with one placeholder, split once around it so that the
+ * message is filled in by concatenation rather than by parsing the format on
+ * every call as {@link String#format(String, Object...)} does.
+ */
+public final class MessageTemplate {
+
+	private final String prefix;
+
+	private final String suffix;
+
+	public MessageTemplate(String format) {
+		int placeholder = format.indexOf('%');
+		if (placeholder < 0 || placeholder + 1 >= format.length() || "sd".indexOf(format.charAt(placeholder + 1)) < 0) {
+			throw new IllegalArgumentException("No %s or %d placeholder in " + format);
+		}
+		this.prefix = format.substring(0, placeholder);
+		this.suffix = format.substring(placeholder + 2);
+	}
+
+	public String with(Object argument) {
+		return prefix + argument + suffix;
+	}
+}
@@ -0,0 +1,54 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+/**
+ * Fixed point money arithmetic. Amounts are kept as a long count of minor units
+ * ({@link #SCALE} decimal places) and converted to {@link BigDecimal} only at
+ * the API edge. All arithmetic is overflow checked and throws
+ * {@link ArithmeticException} instead of wrapping around.
+ */
+public final class Money {
+
+	public static final int SCALE = 2;
+
+	private Money() {
+	}
+
+	/**
+	 * @throws ArithmeticException if the amount has more than {@link #SCALE}
+	 *                             decimal places or does not fit into a long
+	 */
+	public static long toMinorUnits(BigDecimal amount) {
+		return amount.setScale(SCALE).unscaledValue().longValueExact();
+	}
+
+	/**
+	 * Converts back without trailing zeros, so 1000 minor units read as 10 and
+	 * 12345 as 123.45.
+	 */
+	public static BigDecimal toBigDecimal(long minorUnits) {
+		BigDecimal amount = BigDecimal.valueOf(minorUnits, SCALE).stripTrailingZeros();
+		return amount.scale() < 0 ? amount.setScale(0) : amount;
+	}
+
+	public static long add(long minorUnits, long amount) {
+		return Math.addExact(minorUnits, amount);
+	}
+
+	public static long subtract(long minorUnits, long amount) {
+		return Math.subtractExact(minorUnits, amount);
+	}
+
+	/** whether {@link #add(long, long)} would overflow, without throwing */
+	public static boolean addOverflows(long minorUnits, long amount) {
+		long sum = minorUnits + amount;
+		return ((minorUnits ^ sum) & (amount ^ sum)) < 0;
+	}
+
+	/** whether {@link #subtract(long, long)} would overflow, without throwing */
+	public static boolean subtractOverflows(long minorUnits, long amount) {
+		long difference = minorUnits - amount;
+		return ((minorUnits ^ amount) & (minorUnits ^ difference)) < 0;
+	}
+}
@@ -0,0 +1,24 @@
+package com.db.awmd.challenge.domain;
+
+import com.db.awmd.challenge.domain.TransferResult.Status;
+
+import lombok.Data;
+
+/**
+ * Outcome of a {@link MultiLegTransfer}, which is applied or rejected as a
+ * whole.
+ */
+@Data
+public class MultiLegResult {
+
+	private final Status status;
+
+	/** set when the transfer was rejected for one of its legs or its amounts */
+	private final RejectionReason reason;
+
+	private final String message;
+
+	public boolean isCompleted() {
+		return status == Status.COMPLETED;
+	}
+}
@@ -0,0 +1,57 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+import com.db.awmd.challenge.constant.MessageConstants;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.Data;
+
+/**
+ * Transfer from one or more accounts to one or more others, applied
+ * atomically, like a payroll run or a fee split. The debits must add up to
+ * the credits.
+ */
+@Data
+public class MultiLegTransfer {
+
+	@NotNull
+	@Size(min = 1)
+	@Valid
+	private List<Leg> debits;
+
+	@NotNull
+	@Size(min = 1)
+	@Valid
+	private List<Leg> credits;
+
+	@JsonCreator
+	public MultiLegTransfer(@JsonProperty("debits") List<Leg> debits, @JsonProperty("credits") List<Leg> credits) {
+		this.debits = debits;
+		this.credits = credits;
+	}
+
+	@Data
+	public static class Leg {
+
+		@NotNull
+		private String accountId;
+
+		@NotNull
+		@Min(value = 0, message = MessageConstants.INVALID_AMOUNT)
+		private BigDecimal amount;
+
+		@JsonCreator
+		public Leg(@JsonProperty("accountId") String accountId, @JsonProperty("amount") BigDecimal amount) {
+			this.accountId = accountId;
+			this.amount = amount;
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package com.db.awmd.challenge.domain;
+
+/**
+ * Why a transfer was not applied.
+ */
+public enum RejectionReason {
+
+	INSUFFICIENT_BALANCE("insufficient-balance"),
+
+	ACCOUNT_BLOCKED("account-blocked"),
+
+	ACCOUNT_MISSING("account-missing"),
+
+	BALANCE_LIMIT("balance-limit"),
+
+	INVALID_AMOUNT("invalid-amount"),
+
+	CONFLICT("conflict"),
+
+	/** the idempotency key was already used for a different transfer */
+	IDEMPOTENCY_KEY_REUSED("idempotency-key-reused"),
+
+	SAME_ACCOUNT("same-account"),
+
+	/** the debits of a multi-leg transfer do not add up to its credits */
+	UNBALANCED_LEGS("unbalanced-legs");
+
+	private final String metricName;
+
+	RejectionReason(String metricName) {
+		this.metricName = metricName;
+	}
+
+	public String getMetricName() {
+		return metricName;
+	}
+}
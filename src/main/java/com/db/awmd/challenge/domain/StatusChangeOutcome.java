@@ -0,0 +1,26 @@
+package com.db.awmd.challenge.domain;
+
+import static com.db.awmd.challenge.constant.MessageConstants.ACCOUNT_DOES_NOT_EXIST;
+
+/**
+ * Result code of blocking or unblocking an account.
+ */
+public enum StatusChangeOutcome {
+
+	COMPLETED(null),
+
+	ACCOUNT_MISSING(ACCOUNT_DOES_NOT_EXIST);
+
+	private final MessageTemplate message;
+
+	StatusChangeOutcome(String message) {
+		this.message = message == null ? null : new MessageTemplate(message);
+	}
+
+	/**
+	 * Returns the failure message for the account, null for a success.
+	 */
+	public String message(String accountId) {
+		return message == null ? null : message.with(accountId);
+	}
+}
@@ -0,0 +1,19 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * Outcome of blocking or unblocking a list of accounts.
+ */
+@Data
+public class StatusChangeResult {
+
+	private final boolean blocked;
+
+	/** accounts found and changed, each id counted once */
+	private final long accounts;
+
+	private final List<String> missing;
+}
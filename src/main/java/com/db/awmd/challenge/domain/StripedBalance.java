@@ -0,0 +1,133 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Balance of a hot account kept as several sub-balances, so that credits
+ * from many threads neither wait on the account's lock nor contend on one
+ * cache line. A credit is reserved on the stripe of the crediting thread and
+ * added to that stripe when its transaction commits; a debit takes from the
+ * thread's stripe and borrows from the others only when it does not cover the
+ * amount. The balance is the sum of all stripes.
+ *
+ * Debits and status changes still hold the account's lock, so they are
+ * serialized among themselves, and since credits only add to the stripes a
+ * balance read under the lock still covers a debit when it is applied.
+ * Blocking waits until the credits reserved before it are committed or
+ * cancelled, so no credit lands on a blocked account.
+ */
+public final class StripedBalance {
+
+	// longs per stripe: 128 bytes, so that no two stripes share a cache line
+	private static final int PAD = 16;
+
+	// offset of the count of reserved credits within a stripe
+	private static final int PENDING = 1;
+
+	private final AtomicLongArray cells;
+
+	private final int mask;
+
+	private volatile boolean blocked;
+
+	public StripedBalance(long balanceUnits, boolean blocked, int stripes) {
+		int size = 1;
+		while (size < stripes) {
+			size <<= 1;
+		}
+		this.cells = new AtomicLongArray(size * PAD);
+		this.mask = size - 1;
+		this.cells.set(0, balanceUnits);
+		this.blocked = blocked;
+	}
+
+	public int getStripeCount() {
+		return mask + 1;
+	}
+
+	public long sum() {
+		long sum = 0;
+		for (int i = 0; i <= mask; i++) {
+			sum += cells.get(i * PAD);
+		}
+		return sum;
+	}
+
+	public boolean isBlocked() {
+		return blocked;
+	}
+
+	/**
+	 * Reserves a credit on the calling thread's stripe and returns the stripe,
+	 * or -1 if the account is blocked. The reservation must be handed back to
+	 * {@link #credit(int, long)} or {@link #cancel(int)}.
+	 */
+	public int reserve() {
+		int stripe = home();
+		cells.incrementAndGet(stripe * PAD + PENDING);
+		// read after the reservation is visible, pairs with setBlocked
+		if (blocked) {
+			cells.decrementAndGet(stripe * PAD + PENDING);
+			return -1;
+		}
+		return stripe;
+	}
+
+	public void credit(int stripe, long amount) {
+		cells.addAndGet(stripe * PAD, amount);
+		cells.decrementAndGet(stripe * PAD + PENDING);
+	}
+
+	public void cancel(int stripe) {
+		cells.decrementAndGet(stripe * PAD + PENDING);
+	}
+
+	/**
+	 * Applies a change made under the account's lock: a credit goes to the
+	 * calling thread's stripe, a debit takes from it and then from the other
+	 * stripes in turn. The caller checked that the balance covers the debit.
+	 */
+	public void add(long amount) {
+		int stripe = home();
+		if (amount >= 0) {
+			cells.addAndGet(stripe * PAD, amount);
+			return;
+		}
+		long remaining = -amount;
+		for (int i = 0; i <= mask && remaining > 0; i++) {
+			int cell = ((stripe + i) & mask) * PAD;
+			long units = cells.get(cell);
+			long taken = Math.min(units, remaining);
+			// concurrent credits only add to the stripe
+			while (taken > 0 && !cells.compareAndSet(cell, units, units - taken)) {
+				units = cells.get(cell);
+				taken = Math.min(units, remaining);
+			}
+			remaining -= Math.max(taken, 0);
+		}
+		if (remaining > 0) {
+			throw new IllegalStateException("Debit exceeds the striped balance by " + remaining);
+		}
+	}
+
+	/**
+	 * Sets the status under the account's lock. Blocking waits for the
+	 * credits reserved before it.
+	 */
+	public void setBlocked(boolean blocked) {
+		this.blocked = blocked;
+		if (!blocked) {
+			return;
+		}
+		for (int i = 0; i <= mask; i++) {
+			while (cells.get(i * PAD + PENDING) != 0) {
+				Thread.yield();
+			}
+		}
+	}
+
+	private int home() {
+		// thread ids are handed out in sequence, which the mask spreads evenly
+		return (int) Thread.currentThread().getId() & mask;
+	}
+}
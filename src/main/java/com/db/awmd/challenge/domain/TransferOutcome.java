@@ -0,0 +1,94 @@
+package com.db.awmd.challenge.domain;
+
+import static com.db.awmd.challenge.constant.MessageConstants.ACCOUNT_DOES_NOT_EXIST;
+import static com.db.awmd.challenge.constant.MessageConstants.ACCOUNT_IS_BLOCKED;
+import static com.db.awmd.challenge.constant.MessageConstants.BALANCE_LIMIT_EXCEEDED;
+import static com.db.awmd.challenge.constant.MessageConstants.INSUFFICIENT_BALANCE;
+import static com.db.awmd.challenge.constant.MessageConstants.INVALID_AMOUNT_SCALE;
+import static com.db.awmd.challenge.constant.MessageConstants.SAME_ACCOUNT_TRANSFER;
+
+import com.db.awmd.challenge.constant.MessageConstants;
+import com.db.awmd.challenge.exception.AmountTransferException;
+
+/**
+ * Result code of a transfer. Rejections are returned rather than thrown; the
+ * message, naming the account or key concerned, is only built when a caller
+ * asks for it.
+ */
+public enum TransferOutcome {
+
+	COMPLETED(null, null, Subject.NONE),
+
+	/** a keyed transfer whose first request completed */
+	REPLAYED(null, null, Subject.NONE),
+
+	SAME_ACCOUNT(RejectionReason.SAME_ACCOUNT, SAME_ACCOUNT_TRANSFER, Subject.SOURCE),
+
+	SOURCE_MISSING(RejectionReason.ACCOUNT_MISSING, ACCOUNT_DOES_NOT_EXIST, Subject.SOURCE),
+
+	SOURCE_INSUFFICIENT_BALANCE(RejectionReason.INSUFFICIENT_BALANCE, INSUFFICIENT_BALANCE, Subject.SOURCE),
+
+	SOURCE_BLOCKED(RejectionReason.ACCOUNT_BLOCKED, ACCOUNT_IS_BLOCKED, Subject.SOURCE),
+
+	SOURCE_BALANCE_LIMIT(RejectionReason.BALANCE_LIMIT, BALANCE_LIMIT_EXCEEDED, Subject.SOURCE),
+
+	TARGET_MISSING(RejectionReason.ACCOUNT_MISSING, ACCOUNT_DOES_NOT_EXIST, Subject.TARGET),
+
+	TARGET_BLOCKED(RejectionReason.ACCOUNT_BLOCKED, ACCOUNT_IS_BLOCKED, Subject.TARGET),
+
+	TARGET_BALANCE_LIMIT(RejectionReason.BALANCE_LIMIT, BALANCE_LIMIT_EXCEEDED, Subject.TARGET),
+
+	INVALID_AMOUNT(RejectionReason.INVALID_AMOUNT, INVALID_AMOUNT_SCALE, Subject.SCALE),
+
+	IDEMPOTENCY_KEY_REUSED(RejectionReason.IDEMPOTENCY_KEY_REUSED, MessageConstants.IDEMPOTENCY_KEY_REUSED, Subject.KEY);
+
+	private enum Subject {
+		NONE, SOURCE, TARGET, SCALE, KEY
+	}
+
+	private final RejectionReason reason;
+
+	private final MessageTemplate message;
+
+	private final Subject subject;
+
+	TransferOutcome(RejectionReason reason, String message, Subject subject) {
+		this.reason = reason;
+		this.message = message == null ? null : new MessageTemplate(message);
+		this.subject = subject;
+	}
+
+	public RejectionReason getReason() {
+		return reason;
+	}
+
+	public boolean isSuccess() {
+		return reason == null;
+	}
+
+	/**
+	 * Returns the rejection message of the transfer, null for a success.
+	 */
+	public String message(String fromAccount, String toAccount, String idempotencyKey) {
+		switch (subject) {
+		case SOURCE:
+			return message.with(fromAccount);
+		case TARGET:
+			return message.with(toAccount);
+		case SCALE:
+			return message.with(Money.SCALE);
+		case KEY:
+			return message.with(idempotencyKey);
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the rejection as an exception without a stack trace, for the
+	 * callers of the throwing service methods.
+	 */
+	public AmountTransferException rejection(String fromAccount, String toAccount, String idempotencyKey) {
+		return new AmountTransferException(message(fromAccount, toAccount, idempotencyKey), reason, false);
+	}
+}
@@ -0,0 +1,28 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+/**
+ * Outcome of one transfer of a {@link BatchTransfer}, identified by its
+ * position in the batch.
+ */
+@Data
+public class TransferResult {
+
+	public enum Status {
+		COMPLETED, REJECTED, ROLLED_BACK
+	}
+
+	private final int index;
+
+	private final Status status;
+
+	/** set when the transfer itself was rejected */
+	private final RejectionReason reason;
+
+	private final String message;
+
+	public boolean isCompleted() {
+		return status == Status.COMPLETED;
+	}
+}
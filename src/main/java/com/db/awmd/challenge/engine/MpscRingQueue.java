@@ -0,0 +1,90 @@
+package com.db.awmd.challenge.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock free queue for many producers and a single consumer.
+ *
+ * Every slot carries a sequence number (D. Vyukov's bounded queue): a
+ * producer claims the slot at the tail with a CAS once the slot's sequence
+ * shows it was consumed, writes the element and publishes it by advancing the
+ * sequence; the consumer takes a slot when its sequence shows it was
+ * published. Producers never wait for each other beyond the CAS and the
+ * consumer never waits at all.
+ */
+final class MpscRingQueue<E> {
+
+	private final AtomicReferenceArray<E> elements;
+
+	private final AtomicLongArray sequences;
+
+	private final int mask;
+
+	private final AtomicLong tail = new AtomicLong();
+
+	// only read and written by the consumer
+	private long head;
+
+	MpscRingQueue(int capacity) {
+		int size = 2;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		this.elements = new AtomicReferenceArray<>(size);
+		this.sequences = new AtomicLongArray(size);
+		this.mask = size - 1;
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	/**
+	 * Appends the element, or returns false if the queue is full.
+	 */
+	boolean offer(E element) {
+		for (;;) {
+			long position = tail.get();
+			int slot = (int) position & mask;
+			long sequence = sequences.get(slot);
+			if (sequence == position) {
+				if (tail.compareAndSet(position, position + 1)) {
+					elements.lazySet(slot, element);
+					// a volatile write, so that a producer reading the consumer's
+					// parked flag afterwards cannot miss a consumer going to sleep
+					sequences.set(slot, position + 1);
+					return true;
+				}
+			} else if (sequence < position) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Removes the head element, or returns null if the queue is empty. Must
+	 * only be called by the consumer thread.
+	 */
+	E poll() {
+		int slot = (int) head & mask;
+		if (sequences.get(slot) != head + 1) {
+			return null;
+		}
+		E element = elements.get(slot);
+		elements.lazySet(slot, null);
+		sequences.lazySet(slot, head + mask + 1);
+		head++;
+		return element;
+	}
+
+	boolean isEmpty() {
+		return sequences.get((int) head & mask) != head + 1;
+	}
+
+	// approximate outside the consumer thread, head is not volatile
+	int size() {
+		long size = tail.get() - head;
+		return (int) Math.max(0, Math.min(size, mask + 1));
+	}
+}
@@ -0,0 +1,465 @@
+package com.db.awmd.challenge.engine;
+
+import static com.db.awmd.challenge.constant.MessageConstants.ENGINE_STOPPED;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountVersion;
+import com.db.awmd.challenge.domain.StatusChangeOutcome;
+import com.db.awmd.challenge.domain.TransferOutcome;
+import com.db.awmd.challenge.ledger.AccountLedger;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.statistics.AccountStatistics;
+import com.db.awmd.challenge.transaction.AccountStatusBitmap;
+import com.db.awmd.challenge.transaction.VersionClock;
+
+/**
+ * Single writer execution engine for transfers and status changes.
+ *
+ * Accounts are split into shards by the hash of their id and every shard is
+ * owned by one thread, the only one which ever changes the balance or the
+ * blocked flag of its accounts. Commands reach a shard through its lock free
+ * {@link MpscRingQueue} and are executed one after the other, so no locks are
+ * taken. The ring is bounded and makes submitters wait while it is full;
+ * commands forwarded between shards go to a separate unbounded inbox instead,
+ * which the shard drains first, so two shards with full rings never wait on
+ * each other. A transfer between two accounts of one shard is executed in one
+ * step. A transfer across shards is a message exchange: the shard of the
+ * source account validates and debits it (reserve), then hands the command to
+ * the shard of the target account which validates and credits it (apply). If
+ * the target rejects it, the command goes back to the source shard which
+ * refunds the reserved amount. In between, the amount is missing from both
+ * balances. A step which fails after the debit and before the credit is
+ * refunded the same way, the transfer then completes with the failure.
+ *
+ * After each change the account version is bumped; it is volatile, so a
+ * reader which reads the version first sees the complete change. Each step
+ * is also a commit of the {@link VersionClock}: snapshot readers see both
+ * sides of a transfer within one shard at once, and the amount of a cross
+ * shard transfer in flight in neither balance. With a
+ * ledger, each shard records the entries of its own accounts; a cross shard
+ * transfer which is refunded leaves a debit and a refunding credit.
+ */
+public class ShardedTransferEngine implements Closeable {
+
+	private static final int SPINS = 1000;
+
+	private static final int YIELDS = 100;
+
+	private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final AccountsRepository accountsRepository;
+
+	private final Shard[] shards;
+
+	private final VersionClock clock;
+
+	// external commands are refused once false, forwards between shards never are
+	private volatile boolean accepting = true;
+
+	private volatile boolean running = true;
+
+	// set before the first command, entries of an account are recorded by its shard
+	private volatile AccountLedger ledger;
+
+	private volatile AccountStatistics statistics;
+
+	private volatile AccountStatusBitmap statuses;
+
+	public ShardedTransferEngine(AccountsRepository accountsRepository, int shardCount, int queueCapacity) {
+		this(accountsRepository, shardCount, queueCapacity, new VersionClock());
+	}
+
+	public ShardedTransferEngine(AccountsRepository accountsRepository, int shardCount, int queueCapacity,
+			VersionClock clock) {
+		this.accountsRepository = accountsRepository;
+		this.clock = clock;
+		this.shards = new Shard[Math.max(1, shardCount)];
+		for (int i = 0; i < shards.length; i++) {
+			shards[i] = new Shard(i, queueCapacity);
+		}
+		for (Shard shard : shards) {
+			shard.thread.start();
+		}
+	}
+
+	/**
+	 * Queues a transfer of an amount in minor units. The future completes with
+	 * the outcome, rejections included.
+	 */
+	public CompletableFuture<TransferOutcome> transfer(String fromAccount, String toAccount, long amount) {
+		Transfer transfer = new Transfer(fromAccount, toAccount, amount);
+		accept(shardOf(fromAccount), transfer);
+		return transfer.result;
+	}
+
+	/**
+	 * Queues a status change. The future completes with the outcome.
+	 */
+	public CompletableFuture<StatusChangeOutcome> setBlocked(String accountId, boolean blocked) {
+		StatusChange change = new StatusChange(accountId, blocked);
+		accept(shardOf(accountId), change);
+		return change.result;
+	}
+
+	public void setLedger(AccountLedger ledger) {
+		this.ledger = ledger;
+	}
+
+	public void setStatistics(AccountStatistics statistics) {
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Keeps the status bits in step with the flags the shards commit, for
+	 * the prechecks which read them.
+	 */
+	public void setStatuses(AccountStatusBitmap statuses) {
+		this.statuses = statuses;
+	}
+
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	public int getQueueDepth() {
+		int depth = 0;
+		for (Shard shard : shards) {
+			depth += shard.queue.size() + shard.forwards.size();
+		}
+		return depth;
+	}
+
+	/**
+	 * Refuses new commands, waits until the queued ones and the transfers in
+	 * flight between shards are done and stops the shard threads.
+	 */
+	@Override
+	public void close() {
+		accepting = false;
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		// two empty looks in a row, a forward is queued while its source command runs
+		for (int empty = 0; empty < 2 && System.nanoTime() < deadline;) {
+			empty = isIdle() ? empty + 1 : 0;
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+		running = false;
+		for (Shard shard : shards) {
+			LockSupport.unpark(shard.thread);
+		}
+		for (Shard shard : shards) {
+			try {
+				shard.thread.join(TimeUnit.SECONDS.toMillis(5));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	private boolean isIdle() {
+		for (Shard shard : shards) {
+			if (!shard.isEmpty()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void accept(Shard shard, Command<?> command) {
+		if (!accepting) {
+			command.result.completeExceptionally(new IllegalStateException(ENGINE_STOPPED));
+			return;
+		}
+		shard.submit(command);
+	}
+
+	private Shard shardOf(String accountId) {
+		int h = accountId == null ? 0 : accountId.hashCode();
+		return shards[((h ^ (h >>> 16)) & Integer.MAX_VALUE) % shards.length];
+	}
+
+	private void record(String accountId, String counterparty, long amount, long balance) {
+		AccountLedger current = ledger;
+		if (current != null) {
+			current.record(accountId, counterparty, amount, balance);
+		}
+	}
+
+	/**
+	 * Publishes the changes of one or two accounts of the calling shard as one
+	 * commit; their histories were seeded before they were changed.
+	 */
+	private void commit(Account first, Account second) {
+		long epoch = clock.begin();
+		try {
+			publish(epoch, first);
+			if (second != null && second != first) {
+				publish(epoch, second);
+			}
+		} finally {
+			clock.publish(epoch);
+		}
+	}
+
+	private void publish(long epoch, Account account) {
+		AccountStatistics current = statistics;
+		if (current != null) {
+			// the history still ends with the last committed state
+			AccountVersion previous = clock.history(account);
+			current.changed(previous.getBalanceUnits(), previous.isBlocked(), account.getBalanceUnits(),
+					account.isBlocked());
+		}
+		account.setVersion(account.getVersion() + 1);
+		clock.addVersion(epoch, account);
+	}
+
+	private final class Shard implements Runnable {
+
+		private final MpscRingQueue<Command<?>> queue;
+
+		// transfers handed over by other shards, never refused
+		private final Queue<Command<?>> forwards = new ConcurrentLinkedQueue<>();
+
+		private final Thread thread;
+
+		private volatile boolean parked;
+
+		private Shard(int index, int queueCapacity) {
+			this.queue = new MpscRingQueue<>(queueCapacity);
+			this.thread = new Thread(this, "transfer-shard-" + index);
+			this.thread.setDaemon(true);
+		}
+
+		private void submit(Command<?> command) {
+			while (!queue.offer(command)) {
+				// full, wait for the shard to catch up
+				Thread.yield();
+			}
+			wake();
+		}
+
+		private void forward(Command<?> command) {
+			forwards.offer(command);
+			wake();
+		}
+
+		private void wake() {
+			if (parked) {
+				LockSupport.unpark(thread);
+			}
+		}
+
+		private boolean isEmpty() {
+			return queue.isEmpty() && forwards.isEmpty();
+		}
+
+		@Override
+		public void run() {
+			int idle = 0;
+			while (running || !isEmpty()) {
+				// forwards first, they complete transfers already under way
+				Command<?> command = forwards.poll();
+				if (command == null) {
+					command = queue.poll();
+				}
+				if (command != null) {
+					execute(command);
+					idle = 0;
+				} else if (idle < SPINS) {
+					idle++;
+				} else if (idle < SPINS + YIELDS) {
+					idle++;
+					Thread.yield();
+				} else {
+					parked = true;
+					if (isEmpty() && running) {
+						LockSupport.parkNanos(this, PARK_NANOS);
+					}
+					parked = false;
+				}
+			}
+		}
+
+		private void execute(Command<?> command) {
+			try {
+				command.execute(this);
+			} catch (RuntimeException e) {
+				command.result.completeExceptionally(e);
+			}
+		}
+	}
+
+	private abstract static class Command<T> {
+
+		final CompletableFuture<T> result = new CompletableFuture<>();
+
+		abstract void execute(Shard shard);
+	}
+
+	private final class StatusChange extends Command<StatusChangeOutcome> {
+
+		private final String accountId;
+
+		private final boolean blocked;
+
+		private StatusChange(String accountId, boolean blocked) {
+			this.accountId = accountId;
+			this.blocked = blocked;
+		}
+
+		@Override
+		void execute(Shard shard) {
+			Account account = accountsRepository.getAccount(accountId);
+			if (account == null) {
+				result.complete(StatusChangeOutcome.ACCOUNT_MISSING);
+				return;
+			}
+			AccountStatusBitmap bits = statuses;
+			// the bit leads the flag: set before a block, cleared after an unblock
+			if (bits != null && blocked) {
+				bits.set(account.getNumber(), true);
+			}
+			clock.history(account);
+			account.setBlocked(blocked);
+			commit(account, null);
+			if (bits != null && !blocked) {
+				bits.set(account.getNumber(), false);
+			}
+			result.complete(StatusChangeOutcome.COMPLETED);
+		}
+	}
+
+	private final class Transfer extends Command<TransferOutcome> {
+
+		private final String fromAccount;
+
+		private final String toAccount;
+
+		private final long amount;
+
+		// set once the source account was debited
+		private Account debited;
+
+		private TransferOutcome rejection;
+
+		// thrown after the debit and before the credit
+		private RuntimeException failure;
+
+		// set once the target account was credited, the transfer is then done
+		private boolean credited;
+
+		private Transfer(String fromAccount, String toAccount, long amount) {
+			this.fromAccount = fromAccount;
+			this.toAccount = toAccount;
+			this.amount = amount;
+		}
+
+		@Override
+		void execute(Shard shard) {
+			if (rejection != null || failure != null) {
+				refund();
+			} else if (debited == null) {
+				reserve(shard);
+			} else {
+				apply();
+			}
+		}
+
+		private void reserve(Shard shard) {
+			Account account = accountsRepository.getAccount(fromAccount);
+			if (account == null) {
+				result.complete(TransferOutcome.SOURCE_MISSING);
+			} else if (account.getBalanceUnits() < amount) {
+				result.complete(TransferOutcome.SOURCE_INSUFFICIENT_BALANCE);
+			} else if (account.isBlocked()) {
+				result.complete(TransferOutcome.SOURCE_BLOCKED);
+			} else {
+				clock.history(account);
+				account.setBalanceUnits(account.getBalanceUnits() - amount);
+				debited = account;
+				Shard target = shardOf(toAccount);
+				if (target == shard) {
+					apply();
+					return;
+				}
+				try {
+					commit(account, null);
+					record(fromAccount, toAccount, -amount, account.getBalanceUnits());
+				} catch (RuntimeException e) {
+					failure = e;
+					refund();
+					return;
+				}
+				target.forward(this);
+			}
+		}
+
+		private void apply() {
+			try {
+				credit();
+			} catch (RuntimeException e) {
+				if (credited) {
+					throw e;
+				}
+				failure = e;
+			}
+			if (rejection != null || failure != null) {
+				rejected();
+			}
+		}
+
+		private void credit() {
+			Account account = accountsRepository.getAccount(toAccount);
+			if (account == null) {
+				rejection = TransferOutcome.TARGET_MISSING;
+			} else if (account.isBlocked()) {
+				rejection = TransferOutcome.TARGET_BLOCKED;
+			} else if (account.getBalanceUnits() > Long.MAX_VALUE - amount) {
+				rejection = TransferOutcome.TARGET_BALANCE_LIMIT;
+			}
+			if (rejection == null) {
+				clock.history(account);
+				account.setBalanceUnits(account.getBalanceUnits() + amount);
+				credited = true;
+				if (shardOf(fromAccount) == shardOf(toAccount)) {
+					commit(account, debited);
+					record(fromAccount, toAccount, -amount, debited.getBalanceUnits());
+				} else {
+					// the debit was committed by the source shard
+					commit(account, null);
+				}
+				record(toAccount, fromAccount, amount, account.getBalanceUnits());
+				result.complete(TransferOutcome.COMPLETED);
+			}
+		}
+
+		private void rejected() {
+			if (shardOf(fromAccount) == shardOf(toAccount)) {
+				refund();
+			} else {
+				shardOf(fromAccount).forward(this);
+			}
+		}
+
+		private void refund() {
+			debited.setBalanceUnits(debited.getBalanceUnits() + amount);
+			commit(debited, null);
+			if (shardOf(fromAccount) != shardOf(toAccount)) {
+				// the debit was recorded when it was reserved
+				record(fromAccount, toAccount, amount, debited.getBalanceUnits());
+			}
+			if (failure != null) {
+				result.completeExceptionally(failure);
+			} else {
+				result.complete(rejection);
+			}
+		}
+	}
+}
@@ -1,9 +1,30 @@
 package com.db.awmd.challenge.exception;
 
+import com.db.awmd.challenge.domain.RejectionReason;
+
+import lombok.Getter;
+
 public class AmountTransferException  extends RuntimeException {
 	private static final long serialVersionUID = 1L;
 
+	@Getter
+	private final RejectionReason reason;
+
 	public AmountTransferException(String message) {
+	   this(message, null);
+	}
+
+	public AmountTransferException(String message, RejectionReason reason) {
 	   super(message);
+	   this.reason = reason;
+	}
+
+	/**
+	 * @param stackTrace false for rejections which are part of the normal
+	 *                   traffic, which then skip filling in the stack trace
+	 */
+	public AmountTransferException(String message, RejectionReason reason, boolean stackTrace) {
+	   super(message, null, false, stackTrace);
+	   this.reason = reason;
 	}
 }
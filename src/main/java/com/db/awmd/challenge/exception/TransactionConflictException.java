@@ -0,0 +1,9 @@
+package com.db.awmd.challenge.exception;
+
+public class TransactionConflictException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public TransactionConflictException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,209 @@
+package com.db.awmd.challenge.journal;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.transaction.AccountLockManager;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Writes snapshots of the repository next to the journal and loads the latest
+ * one at startup, so that only the journal tail has to be replayed.
+ *
+ * A snapshot first rolls the journal. Every transaction whose record went to
+ * an earlier segment is applied before its accounts are unlocked, every
+ * creation journaled there is in the repository before the roll, and each
+ * account is read under its lock, so loading the snapshot and replaying the
+ * segments from the rolled one restores the latest state. Transfers keep
+ * running while the snapshot is written; only the account being read is
+ * locked, and only for the copy of its fields.
+ *
+ * File layout: magic, format version, first journal segment to replay, then a
+ * marker byte and the id, balance in minor units and blocked flag of every
+ * account, an end marker, the account count and the CRC32 of all preceding
+ * bytes.
+ */
+@Slf4j
+public class SnapshotManager implements Closeable {
+
+	private static final int MAGIC = 0x41434354;
+
+	private static final int FORMAT = 1;
+
+	private static final String PREFIX = "snapshot-";
+
+	private static final String SUFFIX = ".bin";
+
+	private final Path directory;
+
+	private final AccountsRepository repository;
+
+	private final AccountLockManager lockManager;
+
+	private final TransactionJournal journal;
+
+	private final ScheduledExecutorService scheduler;
+
+	public SnapshotManager(Path directory, AccountsRepository repository, AccountLockManager lockManager,
+			TransactionJournal journal, long intervalMs) {
+		this.directory = directory;
+		this.repository = repository;
+		this.lockManager = lockManager;
+		this.journal = journal;
+		if (intervalMs > 0) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "account-snapshot");
+				thread.setDaemon(true);
+				return thread;
+			});
+			scheduler.scheduleWithFixedDelay(this::takeSnapshotQuietly, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+		} else {
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * Loads the latest snapshot into the empty repository and returns the first
+	 * journal segment to replay on top of it, 0 if there is no snapshot.
+	 */
+	public static long load(Path directory, AccountsRepository repository) throws IOException {
+		List<Long> snapshots = snapshots(directory);
+		if (snapshots.isEmpty()) {
+			return 0;
+		}
+		Path latest = directory.resolve(name(snapshots.get(snapshots.size() - 1)));
+		CRC32 crc = new CRC32();
+		try (DataInputStream in = new DataInputStream(
+				new CheckedInputStream(new BufferedInputStream(new FileInputStream(latest.toFile()), 1 << 16), crc))) {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+				throw new IOException("Not an account snapshot: " + latest);
+			}
+			long segment = in.readLong();
+			long count = 0;
+			while (in.readByte() != 0) {
+				Account account = new Account(in.readUTF());
+				account.setBalanceUnits(in.readLong());
+				account.setBlocked(in.readBoolean());
+				repository.createAccount(account);
+				count++;
+			}
+			long expected = in.readLong();
+			int checksum = (int) crc.getValue();
+			if (in.readInt() != checksum || expected != count) {
+				throw new IOException("Corrupt account snapshot: " + latest);
+			}
+			log.info("Loaded {} accounts from {}", count, latest);
+			return segment;
+		}
+	}
+
+	public synchronized Path takeSnapshot() throws IOException {
+		long segment;
+		// a creation journaled before the roll must be seen by the scan below
+		lockManager.getCreationLock().writeLock().lock();
+		try {
+			segment = journal.roll();
+		} finally {
+			lockManager.getCreationLock().writeLock().unlock();
+		}
+		Path target = directory.resolve(name(segment));
+		Path temporary = directory.resolve(name(segment) + ".tmp");
+		CRC32 crc = new CRC32();
+		try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+				DataOutputStream out = new DataOutputStream(
+						new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), crc))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT);
+			out.writeLong(segment);
+			long[] count = new long[1];
+			repository.forEachAccount(account -> {
+				long balance;
+				boolean blocked;
+				int[] locked = lockManager.acquire(account.getNumber());
+				try {
+					balance = account.getBalanceUnits();
+					blocked = account.isBlocked();
+				} finally {
+					lockManager.release(locked);
+				}
+				try {
+					out.writeByte(1);
+					out.writeUTF(account.getAccountId());
+					out.writeLong(balance);
+					out.writeBoolean(blocked);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				count[0]++;
+			});
+			out.writeByte(0);
+			out.writeLong(count[0]);
+			out.writeInt((int) crc.getValue());
+			out.flush();
+			file.getFD().sync();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		Files.move(temporary, target, ATOMIC_MOVE);
+		for (long old : snapshots(directory)) {
+			if (old < segment) {
+				Files.deleteIfExists(directory.resolve(name(old)));
+			}
+		}
+		journal.deleteSegmentsBefore(segment);
+		log.info("Wrote account snapshot {}", target);
+		return target;
+	}
+
+	@Override
+	public void close() {
+		if (scheduler != null) {
+			scheduler.shutdown();
+		}
+	}
+
+	private void takeSnapshotQuietly() {
+		try {
+			takeSnapshot();
+		} catch (IOException | RuntimeException e) {
+			log.error("Account snapshot failed", e);
+		}
+	}
+
+	private static List<Long> snapshots(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.map(file -> file.getFileName().toString())
+					.filter(name -> name.matches(PREFIX + "\\d{20}\\" + SUFFIX))
+					.map(name -> Long.valueOf(name.substring(PREFIX.length(), PREFIX.length() + 20)))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	private static String name(long segment) {
+		return String.format("%s%020d%s", PREFIX, segment, SUFFIX);
+	}
+}
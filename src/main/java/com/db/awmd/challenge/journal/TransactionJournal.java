@@ -0,0 +1,387 @@
+package com.db.awmd.challenge.journal;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.transaction.TransactionEvent;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Write ahead journal of committed transactions.
+ *
+ * A record holds the event and the after image (balance and blocked flag) of
+ * every account of one transaction, and is appended before the transaction is
+ * copied into the repository. Appends only fill an in memory buffer; a flush
+ * swaps the buffer, writes it with the FileChannel and forces it, so all
+ * records appended in the meantime share a single fsync (group commit).
+ *
+ * With a sync interval of 0 each append waits until its record is forced.
+ * Otherwise a background thread flushes at that interval and appends return as
+ * soon as the record is buffered, trading the last interval of transactions
+ * for latency.
+ *
+ * The journal is a directory of numbered segment files. {@link #roll()} starts
+ * a new segment, which lets a snapshot mark the point from which the journal
+ * has to be replayed and older segments be deleted.
+ *
+ * Record layout: payload length, CRC32 of the payload, then the payload: event
+ * ordinal, account count and per account the id, the balance in minor units
+ * and the blocked flag. Replay of a segment stops at the first torn or corrupt
+ * record.
+ *
+ * A failed write or force leaves it unknown which of the buffered records
+ * reached the disk, so the journal fails: the appends waiting for the flush
+ * and all later ones throw, and their transactions are not applied.
+ */
+@Slf4j
+public class TransactionJournal implements Closeable {
+
+	private static final int HEADER = 8;
+
+	private static final String SUFFIX = ".journal";
+
+	private final Path directory;
+
+	private final long syncIntervalMs;
+
+	// appendLock guards the active buffer and appendedPosition, flushLock
+	// guards the channel and orders the writes; flushLock is always taken first
+	private final ReentrantLock appendLock = new ReentrantLock();
+
+	private final ReentrantLock flushLock = new ReentrantLock();
+
+	private final CRC32 crc = new CRC32();
+
+	private ScheduledExecutorService syncer;
+
+	private FileChannel channel;
+
+	private long segment;
+
+	private ByteBuffer active;
+
+	private ByteBuffer spare;
+
+	// logical positions, counted in bytes appended since the journal was opened
+	private long appendedPosition;
+
+	private volatile long durablePosition;
+
+	// set by the first failed write, no record is taken afterwards
+	private volatile IOException failure;
+
+	public TransactionJournal(Path directory, int bufferSize, long syncIntervalMs) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		this.syncIntervalMs = syncIntervalMs;
+		this.active = ByteBuffer.allocateDirect(bufferSize);
+		this.spare = ByteBuffer.allocateDirect(bufferSize);
+	}
+
+	/**
+	 * Applies all intact records of the segments starting at the given one to
+	 * the repository, cuts off torn tails and opens the last segment for
+	 * appending. Must be called once, before the first append.
+	 */
+	public int recover(AccountsRepository repository, long fromSegment) throws IOException {
+		int records = 0;
+		List<Long> segments = segments();
+		for (long replayed : segments) {
+			if (replayed >= fromSegment) {
+				records += replay(segmentPath(replayed), repository);
+			}
+		}
+		segment = segments.isEmpty() ? Math.max(fromSegment, 1) : Math.max(fromSegment, segments.get(segments.size() - 1));
+		channel = openSegment(segment);
+		if (syncIntervalMs > 0) {
+			syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "journal-sync");
+				thread.setDaemon(true);
+				return thread;
+			});
+			syncer.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+		}
+		return records;
+	}
+
+	/**
+	 * Appends the after images of a transaction. Must be called while the
+	 * accounts are locked, so records of one account are in commit order.
+	 */
+	public void append(TransactionEvent event, Collection<Account> accounts) {
+		checkNotFailed();
+		int size = HEADER + 5;
+		for (Account account : accounts) {
+			size += 4 + 2 * account.getAccountId().length() + 9;
+		}
+		long position;
+		for (;;) {
+			appendLock.lock();
+			try {
+				if (active.position() == 0 && active.capacity() < size) {
+					active = ByteBuffer.allocateDirect(size);
+				}
+				if (active.remaining() >= size) {
+					write(event, accounts, size);
+					appendedPosition += size;
+					position = appendedPosition;
+					break;
+				}
+			} finally {
+				appendLock.unlock();
+			}
+			// no room left, write out what is buffered
+			flush(Long.MAX_VALUE);
+		}
+		if (syncIntervalMs == 0) {
+			flush(position);
+		}
+	}
+
+	/**
+	 * Makes everything appended so far durable in the current segment and
+	 * starts a new one. Every record appended afterwards lands in the returned
+	 * segment or a later one.
+	 */
+	public long roll() throws IOException {
+		flushLock.lock();
+		try {
+			appendLock.lock();
+			try {
+				if (failure != null) {
+					throw new IOException("Journal failed", failure);
+				}
+				writeOut(active);
+				durablePosition = appendedPosition;
+				channel.close();
+				segment++;
+				channel = openSegment(segment);
+				return segment;
+			} finally {
+				appendLock.unlock();
+			}
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	public void deleteSegmentsBefore(long firstRetained) throws IOException {
+		for (long old : segments()) {
+			if (old < firstRetained) {
+				Files.deleteIfExists(segmentPath(old));
+			}
+		}
+	}
+
+	public long getDurablePosition() {
+		return durablePosition;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (syncer != null) {
+			syncer.shutdown();
+		}
+		if (channel != null) {
+			if (failure == null) {
+				flush(Long.MAX_VALUE);
+			}
+			channel.close();
+		}
+	}
+
+	private void write(TransactionEvent event, Collection<Account> accounts, int size) {
+		int start = active.position();
+		active.putInt(size - HEADER);
+		active.putInt(0);
+		active.put((byte) event.ordinal());
+		active.putInt(accounts.size());
+		for (Account account : accounts) {
+			String accountId = account.getAccountId();
+			active.putInt(accountId.length());
+			for (int i = 0; i < accountId.length(); i++) {
+				active.putChar(accountId.charAt(i));
+			}
+			active.putLong(account.getBalanceUnits());
+			active.put((byte) (account.isBlocked() ? 1 : 0));
+		}
+		ByteBuffer payload = active.duplicate();
+		payload.position(start + HEADER).limit(start + size);
+		crc.reset();
+		crc.update(payload);
+		active.putInt(start + 4, (int) crc.getValue());
+	}
+
+	/**
+	 * Writes and forces everything appended so far, unless the given position
+	 * was already made durable by a concurrent flush.
+	 */
+	private void flush(long position) {
+		flushLock.lock();
+		try {
+			if (position <= durablePosition) {
+				return;
+			}
+			checkNotFailed();
+			ByteBuffer full;
+			long target;
+			appendLock.lock();
+			try {
+				full = active;
+				active = spare;
+				spare = full;
+				target = appendedPosition;
+			} finally {
+				appendLock.unlock();
+			}
+			writeOut(full);
+			durablePosition = target;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	private void writeOut(ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(false);
+		} catch (IOException e) {
+			failure = e;
+			throw e;
+		} finally {
+			// handed back as the active buffer by the next flush
+			buffer.clear();
+		}
+	}
+
+	private void checkNotFailed() {
+		IOException failed = failure;
+		if (failed != null) {
+			throw new UncheckedIOException("Journal failed, no more transactions are taken", failed);
+		}
+	}
+
+	private void syncQuietly() {
+		try {
+			flush(Long.MAX_VALUE);
+		} catch (UncheckedIOException e) {
+			log.error("Journal sync failed", e);
+		}
+	}
+
+	private List<Long> segments() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.map(file -> file.getFileName().toString())
+					.filter(name -> name.matches("\\d{20}\\" + SUFFIX))
+					.map(name -> Long.valueOf(name.substring(0, 20)))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	private Path segmentPath(long number) {
+		return directory.resolve(String.format("%020d%s", number, SUFFIX));
+	}
+
+	private FileChannel openSegment(long number) throws IOException {
+		FileChannel opened = FileChannel.open(segmentPath(number), CREATE, READ, WRITE);
+		opened.position(opened.size());
+		return opened;
+	}
+
+	private static int replay(Path path, AccountsRepository repository) throws IOException {
+		try (FileChannel segment = FileChannel.open(path, READ, WRITE)) {
+			long valid = 0;
+			int records = 0;
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(segment)));
+			CRC32 check = new CRC32();
+			for (;;) {
+				byte[] payload;
+				int checksum;
+				try {
+					int length = in.readInt();
+					checksum = in.readInt();
+					if (length < 5 || length > segment.size() - valid) {
+						break;
+					}
+					payload = new byte[length];
+					in.readFully(payload);
+				} catch (EOFException e) {
+					break;
+				}
+				check.reset();
+				check.update(payload);
+				if ((int) check.getValue() != checksum) {
+					break;
+				}
+				apply(ByteBuffer.wrap(payload), repository);
+				valid += HEADER + payload.length;
+				records++;
+			}
+			if (valid < segment.size()) {
+				log.warn("Discarding {} bytes of torn journal tail in {}", segment.size() - valid, path);
+				segment.truncate(valid);
+			}
+			return records;
+		}
+	}
+
+	private static void apply(ByteBuffer payload, AccountsRepository repository) {
+		TransactionEvent event = TransactionEvent.values()[payload.get()];
+		int count = payload.getInt();
+		for (int i = 0; i < count; i++) {
+			char[] accountId = new char[payload.getInt()];
+			for (int c = 0; c < accountId.length; c++) {
+				accountId[c] = payload.getChar();
+			}
+			long balance = payload.getLong();
+			boolean blocked = payload.get() != 0;
+			Account account = event == TransactionEvent.CREATE ? create(repository, new String(accountId))
+					: repository.getAccount(new String(accountId));
+			if (account != null) {
+				account.setBalanceUnits(balance);
+				account.setBlocked(blocked);
+				account.setVersion(account.getVersion() + 1);
+			}
+		}
+	}
+
+	private static Account create(AccountsRepository repository, String accountId) {
+		try {
+			repository.createAccount(new Account(accountId));
+		} catch (DuplicateAccountIdException e) {
+			// already restored from a snapshot, the record is applied as an update
+		}
+		return repository.getAccount(accountId);
+	}
+}
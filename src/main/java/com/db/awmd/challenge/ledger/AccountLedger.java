@@ -0,0 +1,568 @@
+package com.db.awmd.challenge.ledger;
+
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.db.awmd.challenge.domain.LedgerEntry;
+import com.db.awmd.challenge.domain.LedgerPage;
+import com.db.awmd.challenge.domain.Money;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only history of the debits and credits of every account.
+ *
+ * Recording an entry only claims a slot of a ring buffer and stores it there;
+ * a single writer thread takes the entries in order, stamps them with the
+ * time it takes them and appends them to the histories, so committing
+ * transactions neither look up histories nor allocate. The writer drains the
+ * ring every millisecond and is only woken early when the ring is half full,
+ * so committing transactions do not wake a thread either and only wait when
+ * the ring is full. A page is read once the writer has appended every entry
+ * recorded before it was asked for.
+ *
+ * The entries of an account are stored in chunks of chunkSize entries, column
+ * wise: commit time, amount and balance in one long array, the counterparty
+ * in another. The newest memoryChunks full chunks of an account stay in
+ * memory. Older ones are handed to a background thread, which wakes up
+ * every POLL_MS and appends the chunks handed to it meanwhile to a spill file
+ * in one write, so the writer never waits for the disk. A spilled chunk is
+ * only referenced from the file: each record starts with the chunk's index
+ * and the position of the account's previous spilled chunk, and a history
+ * keeps the position of its newest one, so the memory an account takes does
+ * not grow with its entries. Pages of spilled entries follow the chain back
+ * from the newest spilled chunk.
+ *
+ * The ledger is not durable: the spill file is a scratch file which is
+ * deleted on close, and a new ledger starts empty.
+ */
+@Slf4j
+public class AccountLedger implements Closeable {
+
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	private static final long POLL_MS = 100;
+
+	// chunks the spiller writes at once
+	private static final int SPILL_BATCH = 64;
+
+	// index, previous spilled chunk of the account and length before each spilled chunk
+	private static final int SPILL_HEADER = 20;
+
+	// timestamp of an entry the writer stamps when it takes it
+	private static final long NOW = Long.MIN_VALUE;
+
+	// entries the writer takes before it frees their slots
+	private static final int WRITE_BATCH = 256;
+
+	// the writer drains the ring at this interval, or once it is half full
+	private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final int chunkSize;
+
+	private final int memoryChunks;
+
+	private final ConcurrentHashMap<String, History> histories = new ConcurrentHashMap<>();
+
+	private final FileChannel spillFile;
+
+	private final Queue<ChunkRef> spills = new ConcurrentLinkedQueue<>();
+
+	private final Thread spiller;
+
+	// the ring: account, counterparty and timestamp, amount, balance per slot
+	private final String[] accounts;
+
+	private final String[] counterparties;
+
+	private final long[] values;
+
+	// sequence + 1 of the entry stored in each slot, set once it is complete
+	private final AtomicLongArray published;
+
+	private final int mask;
+
+	private final AtomicLong claimed = new AtomicLong();
+
+	// entries taken by the writer, their slots may be reused
+	private volatile long written;
+
+	private final Thread writer;
+
+	private volatile boolean writerParked;
+
+	private final LongAdder entries = new LongAdder();
+
+	private final LongAdder spilledChunks = new LongAdder();
+
+	private final LongAdder memoryChunkCount = new LongAdder();
+
+	// end of the spill file, only moved by the spiller
+	private long spillEnd;
+
+	private volatile boolean running = true;
+
+	public AccountLedger(Path directory, int chunkSize, int memoryChunks) throws IOException {
+		this(directory, chunkSize, memoryChunks, DEFAULT_BUFFER_SIZE);
+	}
+
+	public AccountLedger(Path directory, int chunkSize, int memoryChunks, int bufferSize) throws IOException {
+		this.chunkSize = Math.max(1, chunkSize);
+		this.memoryChunks = Math.max(0, memoryChunks);
+		int capacity = 1;
+		while (capacity < bufferSize) {
+			capacity <<= 1;
+		}
+		this.accounts = new String[capacity];
+		this.counterparties = new String[capacity];
+		this.values = new long[3 * capacity];
+		this.published = new AtomicLongArray(capacity);
+		this.mask = capacity - 1;
+		Files.createDirectories(directory);
+		this.spillFile = FileChannel.open(Files.createTempFile(directory, "ledger-", ".bin"), READ, WRITE,
+				DELETE_ON_CLOSE);
+		this.spiller = new Thread(this::spill, "ledger-spill");
+		this.spiller.setDaemon(true);
+		this.spiller.start();
+		this.writer = new Thread(this::write, "ledger-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Records both sides of every posting of a committed transaction, stamped
+	 * with the time the writer takes them.
+	 */
+	public void record(LedgerPostings postings) {
+		long sequence = claimed.getAndAdd(2L * postings.size());
+		for (int i = 0; i < postings.size(); i++) {
+			String fromAccount = postings.fromAccount(i);
+			String toAccount = postings.toAccount(i);
+			long amount = postings.amount(i);
+			put(sequence++, fromAccount, toAccount, NOW, -amount, postings.fromBalance(i));
+			put(sequence++, toAccount, fromAccount, NOW, amount, postings.toBalance(i));
+		}
+		wakeWriter(sequence);
+	}
+
+	/**
+	 * Records one entry, stamped with the time the writer takes it. Entries of
+	 * an account must be recorded in commit order, by the thread holding the
+	 * account.
+	 */
+	public void record(String accountId, String counterparty, long amount, long balance) {
+		record(accountId, counterparty, amount, balance, NOW);
+	}
+
+	/** Records one entry with the given commit time. */
+	public void record(String accountId, String counterparty, long amount, long balance, long timestamp) {
+		long sequence = claimed.getAndIncrement();
+		put(sequence, accountId, counterparty, timestamp, amount, balance);
+		wakeWriter(sequence + 1);
+	}
+
+	/**
+	 * Returns the given page of the account's entries, newest first; entries
+	 * which were spilled are read back from disk.
+	 */
+	public LedgerPage page(String accountId, int page, int size) {
+		flush();
+		History history = histories.get(accountId);
+		if (history == null) {
+			return new LedgerPage(accountId, page, size, 0, new ArrayList<>());
+		}
+		return history.page(accountId, page, size);
+	}
+
+	public long getEntryCount() {
+		return entries.sum();
+	}
+
+	public long getSpilledChunkCount() {
+		return spilledChunks.sum();
+	}
+
+	public long getMemoryChunkCount() {
+		return memoryChunkCount.sum();
+	}
+
+	public int getSpillQueueDepth() {
+		return spills.size();
+	}
+
+	/** Entries recorded but not yet appended by the writer. */
+	public long getBufferDepth() {
+		return claimed.get() - written;
+	}
+
+	/** Forgets all entries, for tests. */
+	public void clear() {
+		flush();
+		histories.clear();
+	}
+
+	/**
+	 * Writes the entries recorded so far and stops the writer and the
+	 * spiller, then deletes the spill file.
+	 */
+	@Override
+	public void close() throws IOException {
+		running = false;
+		LockSupport.unpark(writer);
+		LockSupport.unpark(spiller);
+		try {
+			writer.join(TimeUnit.SECONDS.toMillis(5));
+			spiller.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		spillFile.close();
+	}
+
+	private void put(long sequence, String accountId, String counterparty, long timestamp, long amount,
+			long balance) {
+		// wait for the writer to free the slot
+		while (sequence - written > mask) {
+			LockSupport.unpark(writer);
+			Thread.yield();
+		}
+		int slot = (int) sequence & mask;
+		accounts[slot] = accountId;
+		counterparties[slot] = counterparty;
+		values[3 * slot] = timestamp;
+		values[3 * slot + 1] = amount;
+		values[3 * slot + 2] = balance;
+		published.lazySet(slot, sequence + 1);
+	}
+
+	private void wakeWriter(long recorded) {
+		if (writerParked && recorded - written > mask >> 1) {
+			LockSupport.unpark(writer);
+		}
+	}
+
+	/** Waits until the writer appended all entries recorded before. */
+	private void flush() {
+		long target = claimed.get();
+		while (written < target && writer.isAlive()) {
+			LockSupport.unpark(writer);
+			Thread.yield();
+		}
+	}
+
+	private void write() {
+		long next = 0;
+		while (running || next < claimed.get()) {
+			int slot = (int) next & mask;
+			if (published.get(slot) != next + 1) {
+				writerParked = true;
+				if (published.get(slot) != next + 1 && running) {
+					LockSupport.parkNanos(this, PARK_NANOS);
+				} else if (next < claimed.get()) {
+					// claimed but not yet stored
+					Thread.yield();
+				}
+				writerParked = false;
+				continue;
+			}
+			long now = System.currentTimeMillis();
+			long end = next + WRITE_BATCH;
+			do {
+				String accountId = accounts[slot];
+				History history = histories.get(accountId);
+				if (history == null) {
+					history = histories.computeIfAbsent(accountId, id -> new History());
+				}
+				long timestamp = values[3 * slot];
+				history.append(timestamp == NOW ? now : timestamp, values[3 * slot + 1], values[3 * slot + 2],
+						counterparties[slot]);
+				entries.increment();
+				next++;
+				slot = (int) next & mask;
+			} while (next < end && published.get(slot) == next + 1);
+			written = next;
+		}
+	}
+
+	private void spill() {
+		SpillBuffer bytes = new SpillBuffer(SPILL_BATCH * chunkSize * 40);
+		DataOutputStream out = new DataOutputStream(bytes);
+		ChunkRef[] batch = new ChunkRef[SPILL_BATCH];
+		int[] starts = new int[SPILL_BATCH];
+		while (running) {
+			if (spills.isEmpty()) {
+				LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(POLL_MS));
+				continue;
+			}
+			int size = 0;
+			try {
+				bytes.reset();
+				for (ChunkRef ref; size < SPILL_BATCH && (ref = spills.poll()) != null; size++) {
+					batch[size] = ref;
+					starts[size] = bytes.size();
+					History history = ref.history;
+					out.writeLong(ref.index);
+					out.writeLong(history.spillTail);
+					out.writeInt(0);
+					ref.chunk.serialize(out, chunkSize);
+					bytes.setLength(starts[size] + SPILL_HEADER - 4, bytes.size() - starts[size] - SPILL_HEADER);
+					history.spillTail = spillEnd + starts[size];
+				}
+				ByteBuffer buffer = bytes.buffer();
+				long position = spillEnd;
+				while (buffer.hasRemaining()) {
+					spillFile.write(buffer, position + buffer.position());
+				}
+				spillEnd += buffer.limit();
+				for (int i = 0; i < size; i++) {
+					batch[i].spilled(position + starts[i]);
+				}
+				spilledChunks.add(size);
+			} catch (IOException e) {
+				// the chunks stay in memory, the next spills link past them
+				for (int i = 0; i < size; i++) {
+					batch[i].history.unspilled();
+				}
+				log.error("Spilling ledger chunks failed", e);
+			}
+			Arrays.fill(batch, 0, size, null);
+		}
+	}
+
+	/**
+	 * Loads the spilled chunks with the given indexes into the empty slots of
+	 * chunks, following the chain of spilled chunks from the given one back.
+	 */
+	private void load(long position, long firstChunk, Chunk[] chunks) {
+		ByteBuffer header = ByteBuffer.allocate(SPILL_HEADER);
+		try {
+			while (position >= 0) {
+				read(header, position);
+				long index = header.getLong(0);
+				if (index < firstChunk) {
+					break;
+				}
+				if (index - firstChunk < chunks.length && chunks[(int) (index - firstChunk)] == null) {
+					ByteBuffer payload = ByteBuffer.allocate(header.getInt(16));
+					read(payload, position + SPILL_HEADER);
+					chunks[(int) (index - firstChunk)] = Chunk.deserialize(payload.array(), chunkSize);
+				}
+				position = header.getLong(8);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void read(ByteBuffer buffer, long position) throws IOException {
+		buffer.clear();
+		while (buffer.hasRemaining()) {
+			if (spillFile.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Ledger spill file ends early");
+			}
+		}
+	}
+
+	/** entries of one account */
+	private final class History {
+
+		// chunks in memory, oldest first
+		private final List<ChunkRef> chunks = new ArrayList<>();
+
+		private Chunk current;
+
+		private long count;
+
+		// index of the oldest chunk not yet handed to the spiller
+		private long firstInMemory;
+
+		// position of the newest spilled chunk, -1 before the first
+		private long lastSpilled = -1;
+
+		// the same, including the chunks of the batch the spiller is writing
+		private long spillTail = -1;
+
+		private synchronized void append(long timestamp, long amount, long balance, String counterparty) {
+			int slot = (int) (count % chunkSize);
+			if (slot == 0) {
+				long index = count / chunkSize;
+				current = new Chunk(chunkSize);
+				chunks.add(new ChunkRef(this, index, current));
+				memoryChunkCount.increment();
+				// every chunk but the one being filled is full, the ones not handed over are the newest
+				while (index - firstInMemory > memoryChunks) {
+					spills.add(chunks.get(chunks.size() - 1 - (int) (index - firstInMemory)));
+					firstInMemory++;
+				}
+			}
+			current.set(slot, timestamp, amount, balance, counterparty);
+			count++;
+		}
+
+		private synchronized void spilled(ChunkRef ref, long position) {
+			chunks.remove(ref);
+			lastSpilled = position;
+			memoryChunkCount.decrement();
+		}
+
+		private synchronized void unspilled() {
+			spillTail = lastSpilled;
+		}
+
+		private LedgerPage page(String accountId, int page, int size) {
+			long total;
+			long newest;
+			long oldest;
+			Chunk[] sources;
+			long firstChunk;
+			long spilled;
+			boolean complete = true;
+			synchronized (this) {
+				total = count;
+				newest = total - 1 - (long) page * size;
+				oldest = Math.max(0, newest - size + 1);
+				if (newest < 0) {
+					return new LedgerPage(accountId, page, size, total, new ArrayList<>());
+				}
+				// capture the chunks in memory and where the spilled ones start, the
+				// spiller may drop the chunks later
+				firstChunk = oldest / chunkSize;
+				sources = new Chunk[(int) (newest / chunkSize - firstChunk + 1)];
+				for (ChunkRef ref : chunks) {
+					if (ref.index >= firstChunk && ref.index - firstChunk < sources.length) {
+						sources[(int) (ref.index - firstChunk)] = ref.chunk;
+					}
+				}
+				spilled = lastSpilled;
+			}
+			for (Chunk source : sources) {
+				complete &= source != null;
+			}
+			if (!complete) {
+				load(spilled, firstChunk, sources);
+			}
+			List<LedgerEntry> entries = new ArrayList<>((int) (newest - oldest + 1));
+			for (long sequence = newest; sequence >= oldest; sequence--) {
+				Chunk chunk = sources[(int) (sequence / chunkSize - firstChunk)];
+				int slot = (int) (sequence % chunkSize);
+				entries.add(new LedgerEntry(sequence, chunk.timestamp(slot), Money.toBigDecimal(chunk.amount(slot)),
+						Money.toBigDecimal(chunk.balance(slot)), chunk.counterparties[slot]));
+			}
+			return new LedgerPage(accountId, page, size, total, entries);
+		}
+	}
+
+	/** a chunk in memory, the spiller gets it once it is full */
+	private static final class ChunkRef {
+
+		private final History history;
+
+		private final long index;
+
+		private final Chunk chunk;
+
+		private ChunkRef(History history, long index, Chunk chunk) {
+			this.history = history;
+			this.index = index;
+			this.chunk = chunk;
+		}
+
+		private void spilled(long position) {
+			history.spilled(this, position);
+		}
+	}
+
+	/** Spill batches are written straight from the stream's array. */
+	private static final class SpillBuffer extends ByteArrayOutputStream {
+
+		private SpillBuffer(int size) {
+			super(size);
+		}
+
+		private ByteBuffer buffer() {
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+
+		// fills in the length of a chunk once it is serialized
+		private void setLength(int offset, int length) {
+			buf[offset] = (byte) (length >>> 24);
+			buf[offset + 1] = (byte) (length >>> 16);
+			buf[offset + 2] = (byte) (length >>> 8);
+			buf[offset + 3] = (byte) length;
+		}
+	}
+
+	private static final class Chunk {
+
+		// timestamp, amount and balance per entry
+		private final long[] values;
+
+		private final String[] counterparties;
+
+		private Chunk(int size) {
+			this.values = new long[3 * size];
+			this.counterparties = new String[size];
+		}
+
+		private void set(int slot, long timestamp, long amount, long balance, String counterparty) {
+			values[3 * slot] = timestamp;
+			values[3 * slot + 1] = amount;
+			values[3 * slot + 2] = balance;
+			counterparties[slot] = counterparty;
+		}
+
+		private long timestamp(int slot) {
+			return values[3 * slot];
+		}
+
+		private long amount(int slot) {
+			return values[3 * slot + 1];
+		}
+
+		private long balance(int slot) {
+			return values[3 * slot + 2];
+		}
+
+		private void serialize(DataOutputStream out, int size) throws IOException {
+			for (int slot = 0; slot < size; slot++) {
+				out.writeLong(values[3 * slot]);
+				out.writeLong(values[3 * slot + 1]);
+				out.writeLong(values[3 * slot + 2]);
+				out.writeUTF(counterparties[slot]);
+			}
+		}
+
+		private static Chunk deserialize(byte[] bytes, int size) throws IOException {
+			Chunk chunk = new Chunk(size);
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+			for (int slot = 0; slot < size; slot++) {
+				chunk.set(slot, in.readLong(), in.readLong(), in.readLong(), in.readUTF());
+			}
+			return chunk;
+		}
+	}
+}
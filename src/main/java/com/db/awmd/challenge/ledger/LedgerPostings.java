@@ -0,0 +1,71 @@
+package com.db.awmd.challenge.ledger;
+
+import java.util.Arrays;
+
+/**
+ * Transfers of a transaction waiting for its commit to be recorded in the
+ * {@link AccountLedger}, with the balances of both accounts after each of
+ * them. The arrays are allocated with the first posting, so transactions
+ * without transfers cost nothing.
+ */
+public class LedgerPostings {
+
+	private String[] fromAccounts;
+
+	private String[] toAccounts;
+
+	// amount, balance of the source and balance of the target per posting
+	private long[] values;
+
+	private int size;
+
+	public void add(String fromAccount, String toAccount, long amount, long fromBalance, long toBalance) {
+		if (fromAccounts == null) {
+			fromAccounts = new String[4];
+			toAccounts = new String[4];
+			values = new long[12];
+		} else if (size == fromAccounts.length) {
+			fromAccounts = Arrays.copyOf(fromAccounts, size * 2);
+			toAccounts = Arrays.copyOf(toAccounts, size * 2);
+			values = Arrays.copyOf(values, size * 6);
+		}
+		fromAccounts[size] = fromAccount;
+		toAccounts[size] = toAccount;
+		values[3 * size] = amount;
+		values[3 * size + 1] = fromBalance;
+		values[3 * size + 2] = toBalance;
+		size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		if (size > 0) {
+			Arrays.fill(fromAccounts, 0, size, null);
+			Arrays.fill(toAccounts, 0, size, null);
+			size = 0;
+		}
+	}
+
+	String fromAccount(int i) {
+		return fromAccounts[i];
+	}
+
+	String toAccount(int i) {
+		return toAccounts[i];
+	}
+
+	long amount(int i) {
+		return values[3 * i];
+	}
+
+	long fromBalance(int i) {
+		return values[3 * i + 1];
+	}
+
+	long toBalance(int i) {
+		return values[3 * i + 2];
+	}
+}
@@ -0,0 +1,144 @@
+package com.db.awmd.challenge.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free latency histogram with HDR style log-linear buckets: every power
+ * of two is split into 16 linear sub-buckets, so a recorded value is off by
+ * at most 1/16 (6.25%) from the bucket it is counted in. Values are in
+ * nanoseconds, from 0 up to about 18 minutes; larger values are counted in
+ * the last bucket.
+ *
+ * Each bucket is a {@link LongAdder}, so concurrent recordings of the same
+ * latency do not contend on one cache line.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private static final int MAX_EXPONENT = 40;
+
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+	private static final String[] PERCENTILE_NAMES = { "p50Nanos", "p90Nanos", "p99Nanos", "p999Nanos" };
+
+	private final LongAdder[] counts = new LongAdder[BUCKETS];
+
+	private final LongAdder total = new LongAdder();
+
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	public LatencyHistogram() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Records the time elapsed since the given {@link System#nanoTime()}.
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts[bucket(value)].increment();
+		total.add(value);
+		max.accumulate(value);
+	}
+
+	public long getCount() {
+		long count = 0;
+		for (LongAdder bucket : counts) {
+			count += bucket.sum();
+		}
+		return count;
+	}
+
+	/**
+	 * Upper bound of the bucket holding the given percentile, 0 if nothing was
+	 * recorded.
+	 */
+	public long getPercentile(double percentile) {
+		long[] snapshot = snapshot();
+		return percentile(snapshot, count(snapshot), percentile);
+	}
+
+	/**
+	 * Count, mean, percentiles and maximum in nanoseconds. Buckets are read one
+	 * by one while recording goes on, so the figures are approximate under
+	 * load.
+	 */
+	public Map<String, Long> summary() {
+		long[] snapshot = snapshot();
+		long count = count(snapshot);
+		Map<String, Long> summary = new LinkedHashMap<>();
+		summary.put("count", count);
+		summary.put("meanNanos", count == 0 ? 0 : total.sum() / count);
+		for (int i = 0; i < PERCENTILES.length; i++) {
+			summary.put(PERCENTILE_NAMES[i], percentile(snapshot, count, PERCENTILES[i]));
+		}
+		summary.put("maxNanos", max.get());
+		return summary;
+	}
+
+	static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+		return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	private long[] snapshot() {
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts[i].sum();
+		}
+		return snapshot;
+	}
+
+	private static long count(long[] snapshot) {
+		long count = 0;
+		for (long bucket : snapshot) {
+			count += bucket;
+		}
+		return count;
+	}
+
+	private static long percentile(long[] snapshot, long count, double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(count * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+			if (seen >= Math.max(1, rank)) {
+				return upperBound(i);
+			}
+		}
+		return upperBound(snapshot.length - 1);
+	}
+}
@@ -0,0 +1,52 @@
+package com.db.awmd.challenge.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Named counters, gauges and latency histograms of the service. Callers look
+ * up their metrics once and keep them, so recording is a {@link LongAdder}
+ * update and never touches the registry maps.
+ */
+@Component
+public class MetricsRegistry {
+
+	private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, Supplier<Number>> gauges = new ConcurrentHashMap<>();
+
+	public LongAdder counter(String name) {
+		// get first, computeIfAbsent locks the bin even when the key is present
+		LongAdder counter = counters.get(name);
+		return counter != null ? counter : counters.computeIfAbsent(name, key -> new LongAdder());
+	}
+
+	public LatencyHistogram histogram(String name) {
+		LatencyHistogram histogram = histograms.get(name);
+		return histogram != null ? histogram : histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+	}
+
+	public void gauge(String name, Supplier<Number> value) {
+		gauges.put(name, value);
+	}
+
+	/**
+	 * Current values by metric name: counters and gauges as numbers,
+	 * histograms as their {@link LatencyHistogram#summary()}.
+	 */
+	public Map<String, Object> snapshot() {
+		Map<String, Object> snapshot = new TreeMap<>();
+		counters.forEach((name, counter) -> snapshot.put(name, counter.sum()));
+		gauges.forEach((name, gauge) -> snapshot.put(name, gauge.get()));
+		histograms.forEach((name, histogram) -> snapshot.put(name, histogram.summary()));
+		return snapshot;
+	}
+}
@@ -0,0 +1,54 @@
+package com.db.awmd.challenge.metrics;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+/**
+ * Records the latency of every controller method as "http.&lt;method name&gt;",
+ * from before the request body is bound until the response is written. Set
+ * against the service and notification latencies it shows the time spent in
+ * JSON binding and serialization.
+ */
+public class RequestTimingInterceptor extends HandlerInterceptorAdapter {
+
+	private static final String START = RequestTimingInterceptor.class.getName() + ".start";
+
+	private final MetricsRegistry metrics;
+
+	private final ConcurrentMap<Method, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+	public RequestTimingInterceptor(MetricsRegistry metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		// the dispatch of an asynchronous result keeps the start of the request
+		if (request.getAttribute(START) == null) {
+			request.setAttribute(START, System.nanoTime());
+		}
+		return true;
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception ex) {
+		Object start = request.getAttribute(START);
+		if (start == null || !(handler instanceof HandlerMethod)) {
+			return;
+		}
+		Method method = ((HandlerMethod) handler).getMethod();
+		LatencyHistogram histogram = histograms.get(method);
+		if (histogram == null) {
+			histogram = histograms.computeIfAbsent(method, key -> metrics.histogram("http." + key.getName()));
+		}
+		histogram.recordSince((Long) start);
+	}
+}
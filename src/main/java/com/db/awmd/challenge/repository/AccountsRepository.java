@@ -1,6 +1,7 @@
 package com.db.awmd.challenge.repository;
 
 import java.math.BigDecimal;
+import java.util.function.Consumer;
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.exception.AmountTransferException;
@@ -12,5 +13,18 @@ public interface AccountsRepository {
 
   Account getAccount(String accountId);
 
+  /**
+   * Returns the account by the dense number it was given on creation, see
+   * {@link Account#getNumber()}, or null. Cheaper than a lookup by id, which
+   * is only needed where ids come in.
+   */
+  Account getAccount(int number);
+
   void clearAccounts();
+
+  /**
+   * Visits every account. Accounts created or changed concurrently may or may
+   * not be seen.
+   */
+  void forEachAccount(Consumer<Account> action);
 }
@@ -2,23 +2,44 @@ package com.db.awmd.challenge.repository;
 
 import static com.db.awmd.challenge.constant.MessageConstants.ACCOUNT_ALREADY_EXIST;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 
 @Repository
+@ConditionalOnProperty(prefix = "accounts.repository", name = "type", havingValue = "in-memory", matchIfMissing = true)
 public class AccountsRepositoryInMemory implements AccountsRepository {
 
+	private static final int SEGMENT_BITS = 16;
+
+	private static final int SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+
 	private final Map<String, Account> accounts = new ConcurrentHashMap<>();
 
+	private final AtomicInteger numbers = new AtomicInteger();
+
+	// accounts by number, in segments which are added as numbers grow and never move
+	private volatile AtomicReferenceArray<Account>[] segments = newSegments(0);
+
 	@Override
 	public void createAccount(Account account) throws DuplicateAccountIdException {
+		// numbered and indexed before it is visible by id; a duplicate leaves a gap
+		int number = numbers.getAndIncrement();
+		account.setNumber(number);
+		AtomicReferenceArray<Account> segment = segment(number);
+		segment.set(number & SEGMENT_MASK, account);
 		Account previousAccount = accounts.putIfAbsent(account.getAccountId(), account);
 		if (previousAccount != null) {
+			segment.set(number & SEGMENT_MASK, null);
 			throw new DuplicateAccountIdException(String.format(ACCOUNT_ALREADY_EXIST,account.getAccountId()));
 		}
 	}
@@ -28,9 +49,53 @@ public class AccountsRepositoryInMemory implements AccountsRepository {
 		return accounts.get(accountId);
 	}
 
+	@Override
+	public Account getAccount(int number) {
+		AtomicReferenceArray<Account>[] current = segments;
+		int segment = number >>> SEGMENT_BITS;
+		if (number < 0 || segment >= current.length) {
+			return null;
+		}
+		return current[segment].get(number & SEGMENT_MASK);
+	}
+
 	@Override
 	public void clearAccounts() {
-		accounts.clear();
+		synchronized (this) {
+			accounts.clear();
+			segments = newSegments(0);
+			numbers.set(0);
+		}
+	}
+
+	private AtomicReferenceArray<Account> segment(int number) {
+		int segment = number >>> SEGMENT_BITS;
+		AtomicReferenceArray<Account>[] current = segments;
+		if (segment < current.length) {
+			return current[segment];
+		}
+		synchronized (this) {
+			current = segments;
+			if (segment >= current.length) {
+				AtomicReferenceArray<Account>[] grown = Arrays.copyOf(current, segment + 1);
+				for (int i = current.length; i < grown.length; i++) {
+					grown[i] = new AtomicReferenceArray<>(1 << SEGMENT_BITS);
+				}
+				segments = grown;
+				current = grown;
+			}
+			return current[segment];
+		}
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static AtomicReferenceArray<Account>[] newSegments(int size) {
+		return new AtomicReferenceArray[size];
+	}
+
+	@Override
+	public void forEachAccount(Consumer<Account> action) {
+		accounts.values().forEach(action);
 	}
 
 }
@@ -0,0 +1,474 @@
+package com.db.awmd.challenge.repository;
+
+import static com.db.awmd.challenge.constant.MessageConstants.ACCOUNT_ALREADY_EXIST;
+import static com.db.awmd.challenge.constant.MessageConstants.ACCOUNT_ID_TOO_LONG;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import com.db.awmd.challenge.config.AccountsProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountVersion;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+
+/**
+ * Repository which keeps the account id index, balances and blocked flags in
+ * direct memory, outside of the Java heap.
+ *
+ * Accounts are stored as variable sized records in an arena of direct buffer
+ * chunks and indexed by an open addressing hash table which also lives in a
+ * direct buffer, and by number through an array of record addresses on the
+ * heap. {@link #getAccount(String)} returns a small view whose getters
+ * and setters read and write the record, so committing a transaction against a
+ * view updates the store. The account passed to
+ * {@link #createAccount(Account)} is copied, later changes to it are not seen
+ * by the store. Views must not be used after {@link #clearAccounts()}.
+ *
+ * The latest two versions of the snapshot reads are kept in the record as
+ * well, so the snapshot depth is capped at {@link #RECORD_VERSIONS}. Only
+ * older versions which a pinned reader still needs go to the heap, and they
+ * are dropped by the next commit of the account once no pin needs them.
+ */
+@Repository
+@ConditionalOnProperty(prefix = "accounts.repository", name = "type", havingValue = "off-heap")
+public class AccountsRepositoryOffHeap implements AccountsRepository {
+
+	/** versions of the snapshot reads held in each record */
+	public static final int RECORD_VERSIONS = 2;
+
+	// record layout: hash, id length, number, blocked flag, blocked flags of
+	// the head and previous version, balance, version, epoch plus one (0 for
+	// none) and balance of the head and previous version, id chars
+	private static final int HASH = 0;
+	private static final int ID_LENGTH = 4;
+	private static final int NUMBER = 8;
+	private static final int BLOCKED = 12;
+	private static final int HISTORY_BLOCKED = 13;
+	private static final int BALANCE = 16;
+	private static final int VERSION = 24;
+	private static final int HEAD_EPOCH = 32;
+	private static final int HEAD_BALANCE = 40;
+	private static final int PREVIOUS_EPOCH = 48;
+	private static final int PREVIOUS_BALANCE = 56;
+	private static final int ID = 64;
+
+	private static final int CHUNK_BITS = 24;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+	private static final int MONITORS = 1024;
+
+	/** longest account id whose record fits into a chunk */
+	public static final int MAX_ID_LENGTH = (CHUNK_SIZE - ID) / 2;
+
+	// guards the index and the arena layout, record fields are guarded by the monitors
+	private final StampedLock lock = new StampedLock();
+
+	private final Object[] monitors = new Object[MONITORS];
+
+	// versions older than the two of the record, kept for pinned readers
+	private final ConcurrentMap<Long, AccountVersion> histories = new ConcurrentHashMap<>();
+
+	private final int initialCapacity;
+
+	private volatile ByteBuffer[] chunks;
+
+	// bytes used in each full chunk, the last one is filled up to chunkPosition
+	private int[] chunkEnds;
+
+	private volatile ByteBuffer index;
+
+	// record addresses by account number
+	private volatile long[] addresses;
+
+	private int chunkPosition;
+
+	private int size;
+
+	@Autowired
+	public AccountsRepositoryOffHeap(AccountsProperties properties) {
+		this(properties.getRepository().getInitialCapacity());
+	}
+
+	public AccountsRepositoryOffHeap(int initialCapacity) {
+		int capacity = 16;
+		while (capacity < initialCapacity * 2) {
+			capacity <<= 1;
+		}
+		this.initialCapacity = capacity;
+		for (int i = 0; i < MONITORS; i++) {
+			monitors[i] = new Object();
+		}
+		reset();
+	}
+
+	@Override
+	public void createAccount(Account account) throws DuplicateAccountIdException {
+		String accountId = account.getAccountId();
+		if (accountId.length() > MAX_ID_LENGTH) {
+			throw new IllegalArgumentException(String.format(ACCOUNT_ID_TOO_LONG, accountId.length(), MAX_ID_LENGTH));
+		}
+		int hash = hash(accountId);
+		long stamp = lock.writeLock();
+		try {
+			if (find(accountId, hash) >= 0) {
+				throw new DuplicateAccountIdException(String.format(ACCOUNT_ALREADY_EXIST, accountId));
+			}
+			if ((size + 1) * 2 > slots(index)) {
+				resize();
+			}
+			long address = allocate(ID + 2 * accountId.length());
+			ByteBuffer chunk = chunks[chunk(address)];
+			int offset = offset(address);
+			chunk.putInt(offset + HASH, hash);
+			chunk.putInt(offset + ID_LENGTH, accountId.length());
+			chunk.put(offset + BLOCKED, (byte) (account.isBlocked() ? 1 : 0));
+			chunk.putLong(offset + BALANCE, account.getBalanceUnits());
+			chunk.putLong(offset + VERSION, account.getVersion());
+			// records are never removed, so their count is the next number
+			chunk.putInt(offset + NUMBER, size);
+			account.setNumber(size);
+			if (size == addresses.length) {
+				addresses = Arrays.copyOf(addresses, size * 2);
+			}
+			addresses[size] = address;
+			for (int i = 0; i < accountId.length(); i++) {
+				chunk.putChar(offset + ID + 2 * i, accountId.charAt(i));
+			}
+			insert(index, hash, address);
+			size++;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public Account getAccount(String accountId) {
+		int hash = hash(accountId);
+		long address = -1;
+		long stamp = lock.tryOptimisticRead();
+		try {
+			address = find(accountId, hash);
+		} catch (IndexOutOfBoundsException e) {
+			// torn read of a concurrent insert, validation fails below
+		}
+		if (!lock.validate(stamp)) {
+			stamp = lock.readLock();
+			try {
+				address = find(accountId, hash);
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		return address < 0 ? null : new OffHeapAccount(accountId, address);
+	}
+
+	@Override
+	public Account getAccount(int number) {
+		long address = -1;
+		long stamp = lock.tryOptimisticRead();
+		long[] current = addresses;
+		if (number >= 0 && number < size && number < current.length) {
+			address = current[number];
+		}
+		if (!lock.validate(stamp)) {
+			stamp = lock.readLock();
+			try {
+				address = number >= 0 && number < size ? addresses[number] : -1;
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		return address < 0 ? null : new OffHeapAccount(accountId(address), address);
+	}
+
+	@Override
+	public void clearAccounts() {
+		long stamp = lock.writeLock();
+		try {
+			reset();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Walks the record arena in creation order. Only the arena bounds are read
+	 * under the lock, records never move, so the visitor runs unlocked.
+	 */
+	@Override
+	public void forEachAccount(Consumer<Account> action) {
+		ByteBuffer[] arena;
+		int[] used;
+		long stamp = lock.readLock();
+		try {
+			arena = chunks;
+			used = Arrays.copyOf(chunkEnds, arena.length);
+			used[arena.length - 1] = chunkPosition;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+		for (int c = 0; c < arena.length; c++) {
+			int offset = 0;
+			while (offset < used[c]) {
+				long address = ((long) c << CHUNK_BITS) | offset;
+				action.accept(new OffHeapAccount(accountId(address), address));
+				offset += aligned(ID + 2 * arena[c].getInt(offset + ID_LENGTH));
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of accounts with versions on the heap.
+	 */
+	public int getHeapHistoryCount() {
+		return histories.size();
+	}
+
+	private void reset() {
+		chunks = new ByteBuffer[] { newBuffer(CHUNK_SIZE) };
+		chunkEnds = new int[1];
+		index = newBuffer(initialCapacity * 8);
+		addresses = new long[initialCapacity / 2];
+		chunkPosition = 0;
+		size = 0;
+		histories.clear();
+	}
+
+	private long find(String accountId, int hash) {
+		ByteBuffer slots = index;
+		ByteBuffer[] arena = chunks;
+		int mask = slots(slots) - 1;
+		for (int i = hash & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+			long slot = slots.getLong(i * 8);
+			if (slot == 0) {
+				return -1;
+			}
+			long address = slot - 1;
+			if (matches(arena[chunk(address)], offset(address), accountId, hash)) {
+				return address;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean matches(ByteBuffer chunk, int offset, String accountId, int hash) {
+		if (chunk.getInt(offset + HASH) != hash || chunk.getInt(offset + ID_LENGTH) != accountId.length()) {
+			return false;
+		}
+		for (int i = 0; i < accountId.length(); i++) {
+			if (chunk.getChar(offset + ID + 2 * i) != accountId.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void insert(ByteBuffer slots, int hash, long address) {
+		int mask = slots(slots) - 1;
+		int i = hash & mask;
+		while (slots.getLong(i * 8) != 0) {
+			i = (i + 1) & mask;
+		}
+		slots.putLong(i * 8, address + 1);
+	}
+
+	private void resize() {
+		ByteBuffer current = index;
+		ByteBuffer resized = newBuffer(current.capacity() * 2);
+		for (int i = 0; i < slots(current); i++) {
+			long slot = current.getLong(i * 8);
+			if (slot != 0) {
+				long address = slot - 1;
+				insert(resized, chunks[chunk(address)].getInt(offset(address) + HASH), address);
+			}
+		}
+		index = resized;
+	}
+
+	private long allocate(int recordSize) {
+		int aligned = aligned(recordSize);
+		if (chunkPosition + aligned > CHUNK_SIZE) {
+			chunkEnds = Arrays.copyOf(chunkEnds, chunks.length + 1);
+			chunkEnds[chunks.length - 1] = chunkPosition;
+			ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+			grown[chunks.length] = newBuffer(CHUNK_SIZE);
+			chunks = grown;
+			chunkPosition = 0;
+		}
+		long address = ((long) (chunks.length - 1) << CHUNK_BITS) | chunkPosition;
+		chunkPosition += aligned;
+		return address;
+	}
+
+	// keep records 8 byte aligned for the long fields
+	private static int aligned(int recordSize) {
+		return (recordSize + 7) & ~7;
+	}
+
+	private String accountId(long address) {
+		ByteBuffer chunk = record(address);
+		int offset = offset(address);
+		char[] accountId = new char[chunk.getInt(offset + ID_LENGTH)];
+		for (int i = 0; i < accountId.length; i++) {
+			accountId[i] = chunk.getChar(offset + ID + 2 * i);
+		}
+		return new String(accountId);
+	}
+
+	private Object monitor(long address) {
+		return monitors[(int) (address >>> 3) & (MONITORS - 1)];
+	}
+
+	private ByteBuffer record(long address) {
+		return chunks[chunk(address)];
+	}
+
+	private static int chunk(long address) {
+		return (int) (address >>> CHUNK_BITS);
+	}
+
+	private static int offset(long address) {
+		return (int) (address & (CHUNK_SIZE - 1));
+	}
+
+	private static int slots(ByteBuffer slots) {
+		return slots.capacity() / 8;
+	}
+
+	private static int hash(String accountId) {
+		int h = accountId.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	private static ByteBuffer newBuffer(int capacity) {
+		return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Account backed by an off heap record.
+	 */
+	private class OffHeapAccount extends Account {
+
+		private final long address;
+
+		OffHeapAccount(String accountId, long address) {
+			super(accountId);
+			this.address = address;
+		}
+
+		@Override
+		public long getBalanceUnits() {
+			synchronized (monitor(address)) {
+				return record(address).getLong(offset(address) + BALANCE);
+			}
+		}
+
+		@Override
+		public void setBalanceUnits(long balanceUnits) {
+			synchronized (monitor(address)) {
+				record(address).putLong(offset(address) + BALANCE, balanceUnits);
+			}
+		}
+
+		@Override
+		public boolean isBlocked() {
+			synchronized (monitor(address)) {
+				return record(address).get(offset(address) + BLOCKED) != 0;
+			}
+		}
+
+		@Override
+		public void setBlocked(boolean blocked) {
+			synchronized (monitor(address)) {
+				record(address).put(offset(address) + BLOCKED, (byte) (blocked ? 1 : 0));
+			}
+		}
+
+		@Override
+		public int getNumber() {
+			return record(address).getInt(offset(address) + NUMBER);
+		}
+
+		@Override
+		public long getVersion() {
+			synchronized (monitor(address)) {
+				return record(address).getLong(offset(address) + VERSION);
+			}
+		}
+
+		@Override
+		public void setVersion(long version) {
+			synchronized (monitor(address)) {
+				record(address).putLong(offset(address) + VERSION, version);
+			}
+		}
+
+		@Override
+		public AccountVersion getHistory() {
+			synchronized (monitor(address)) {
+				ByteBuffer chunk = record(address);
+				int offset = offset(address);
+				long headEpoch = chunk.getLong(offset + HEAD_EPOCH) - 1;
+				if (headEpoch < 0) {
+					return null;
+				}
+				int blocked = chunk.get(offset + HISTORY_BLOCKED);
+				long previousEpoch = chunk.getLong(offset + PREVIOUS_EPOCH) - 1;
+				AccountVersion previous = previousEpoch < 0 ? null
+						: new AccountVersion(previousEpoch, chunk.getLong(offset + PREVIOUS_BALANCE), (blocked & 2) != 0,
+								histories.get(address));
+				return new AccountVersion(headEpoch, chunk.getLong(offset + HEAD_BALANCE), (blocked & 1) != 0, previous);
+			}
+		}
+
+		@Override
+		public void setHistory(AccountVersion history) {
+			synchronized (monitor(address)) {
+				store(history);
+			}
+		}
+
+		@Override
+		public boolean compareAndSetHistory(AccountVersion expected, AccountVersion history) {
+			synchronized (monitor(address)) {
+				long headEpoch = record(address).getLong(offset(address) + HEAD_EPOCH) - 1;
+				if (expected == null ? headEpoch >= 0 : headEpoch != expected.getEpoch()) {
+					return false;
+				}
+				store(history);
+				return true;
+			}
+		}
+
+		private void store(AccountVersion history) {
+			ByteBuffer chunk = record(address);
+			int offset = offset(address);
+			AccountVersion previous = history.getPrevious();
+			chunk.putLong(offset + HEAD_EPOCH, history.getEpoch() + 1);
+			chunk.putLong(offset + HEAD_BALANCE, history.getBalanceUnits());
+			chunk.putLong(offset + PREVIOUS_EPOCH, previous == null ? 0 : previous.getEpoch() + 1);
+			chunk.putLong(offset + PREVIOUS_BALANCE, previous == null ? 0 : previous.getBalanceUnits());
+			chunk.put(offset + HISTORY_BLOCKED, (byte) ((history.isBlocked() ? 1 : 0)
+					| (previous != null && previous.isBlocked() ? 2 : 0)));
+			AccountVersion older = previous == null ? null : previous.getPrevious();
+			if (older == null) {
+				histories.remove(address);
+			} else {
+				histories.put(address, older);
+			}
+		}
+	}
+}
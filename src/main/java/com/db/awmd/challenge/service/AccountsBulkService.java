@@ -0,0 +1,235 @@
+package com.db.awmd.challenge.service;
+
+import static com.db.awmd.challenge.constant.MessageConstants.IMPORT_INVALID_LINE;
+import static com.db.awmd.challenge.constant.MessageConstants.INITIAL_BALANCE_NEGATIVE;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.db.awmd.challenge.config.AccountsProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountVersion;
+import com.db.awmd.challenge.domain.ImportResult;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.transaction.AccountTransactionManager;
+import com.db.awmd.challenge.transaction.VersionClock;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Streaming import and export of accounts as newline delimited JSON, one
+ * account per line in the format of the single account endpoints.
+ *
+ * The import parses and validates line by line and hands batches of
+ * accounts.bulk.batch-size accounts to a pool of writer threads, each batch
+ * being created under one acquisition of its locks and journaled as one
+ * record. At most two batches per writer are pending, so the request body is
+ * never held in memory as a whole.
+ */
+@Service
+public class AccountsBulkService {
+
+	private static final int MAX_REPORTED = 1000;
+
+	private final AccountsService accountsService;
+
+	private final ObjectMapper objectMapper;
+
+	private final ObjectReader accountReader;
+
+	private final int batchSize;
+
+	private final int writers;
+
+	private final ExecutorService executor;
+
+	@Autowired
+	public AccountsBulkService(AccountsService accountsService, AccountsProperties properties,
+			ObjectMapper objectMapper) {
+		this.accountsService = accountsService;
+		this.objectMapper = objectMapper;
+		this.accountReader = objectMapper.readerFor(Account.class);
+		AccountsProperties.Bulk bulk = properties.getBulk();
+		this.batchSize = Math.max(1, bulk.getBatchSize());
+		this.writers = bulk.getWriters() > 0 ? bulk.getWriters() : Runtime.getRuntime().availableProcessors();
+		AtomicInteger threads = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(writers, runnable -> {
+			Thread thread = new Thread(runnable, "account-import-" + threads.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@PreDestroy
+	public void close() {
+		executor.shutdown();
+	}
+
+	public ImportResult importAccounts(InputStream in) throws IOException {
+		AccountTransactionManager transactionManager = accountsService.getTransactionManager();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+		int permits = 2 * writers;
+		Semaphore pending = new Semaphore(permits);
+		LongAdder imported = new LongAdder();
+		LongAdder duplicates = new LongAdder();
+		List<String> duplicateIds = Collections.synchronizedList(new ArrayList<>());
+		List<String> errors = new ArrayList<>();
+		AtomicReference<RuntimeException> failure = new AtomicReference<>();
+		long invalid = 0;
+		long lineNumber = 0;
+		List<Account> batch = new ArrayList<>(batchSize);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null && failure.get() == null) {
+				lineNumber++;
+				if (line.isEmpty()) {
+					continue;
+				}
+				String error = null;
+				Account account = null;
+				try {
+					account = accountReader.readValue(line);
+					error = validate(account);
+				} catch (JsonProcessingException e) {
+					error = e.getOriginalMessage();
+				} catch (ArithmeticException e) {
+					error = e.getMessage();
+				}
+				if (error != null) {
+					invalid++;
+					if (errors.size() < MAX_REPORTED) {
+						errors.add(String.format(IMPORT_INVALID_LINE, lineNumber, error));
+					}
+					continue;
+				}
+				batch.add(account);
+				if (batch.size() == batchSize) {
+					submit(transactionManager, batch, pending, imported, duplicates, duplicateIds, failure);
+					batch = new ArrayList<>(batchSize);
+				}
+			}
+			if (!batch.isEmpty()) {
+				submit(transactionManager, batch, pending, imported, duplicates, duplicateIds, failure);
+			}
+			// all permits are back once every batch is written
+			pending.acquire(permits);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Import interrupted", e);
+		}
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+		return new ImportResult(imported.sum(), duplicates.sum(), invalid, duplicateIds, errors);
+	}
+
+	/**
+	 * The constraints of {@link Account}, checked directly: going through the
+	 * bean validator costs several times more than parsing the line.
+	 */
+	private static String validate(Account account) {
+		if (account.getAccountId() == null || account.getAccountId().isEmpty()) {
+			return "accountId may not be empty";
+		}
+		BigDecimal balance = account.getBalance();
+		if (balance == null) {
+			return "balance may not be null";
+		}
+		if (balance.signum() < 0) {
+			return "balance " + INITIAL_BALANCE_NEGATIVE;
+		}
+		return null;
+	}
+
+	private void submit(AccountTransactionManager transactionManager, List<Account> batch, Semaphore pending,
+			LongAdder imported, LongAdder duplicates, List<String> duplicateIds,
+			AtomicReference<RuntimeException> failure) throws InterruptedException {
+		pending.acquire();
+		executor.execute(() -> {
+			try {
+				List<String> existing = transactionManager.createAccounts(batch);
+				imported.add(batch.size() - existing.size());
+				duplicates.add(existing.size());
+				for (String accountId : existing) {
+					if (duplicateIds.size() >= MAX_REPORTED) {
+						break;
+					}
+					duplicateIds.add(accountId);
+				}
+			} catch (RuntimeException e) {
+				failure.compareAndSet(null, e);
+			} finally {
+				pending.release();
+			}
+		});
+	}
+
+	/**
+	 * Writes all accounts as they were at one published epoch, each as it is
+	 * read. The epoch is pinned for the duration of the export, so transfers go
+	 * on and the histories keep the versions it reads, see
+	 * {@link VersionClock#pin()}. Accounts created after the epoch are left
+	 * out, hot accounts are written with their current state.
+	 */
+	public void exportAccounts(OutputStream out) throws IOException {
+		VersionClock clock = accountsService.getTransactionManager().getClock();
+		long epoch = clock.pin();
+		try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+			generator.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+			boolean[] written = new boolean[1];
+			accountsService.getAccountsRepository().forEachAccount(account -> {
+				long balanceUnits = account.getBalanceUnits();
+				boolean blocked = account.isBlocked();
+				if (account.getStripes() == null) {
+					AccountVersion version = clock.read(account, epoch);
+					if (version == null) {
+						// the pin keeps the versions of all accounts which existed at the epoch
+						return;
+					}
+					balanceUnits = version.getBalanceUnits();
+					blocked = version.isBlocked();
+				}
+				try {
+					generator.writeStartObject();
+					generator.writeStringField("accountId", account.getAccountId());
+					generator.writeNumberField("balance", Money.toBigDecimal(balanceUnits));
+					generator.writeBooleanField("blocked", blocked);
+					generator.writeEndObject();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				written[0] = true;
+			});
+			if (written[0]) {
+				generator.writeRaw('\n');
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			clock.unpin(epoch);
+		}
+	}
+}
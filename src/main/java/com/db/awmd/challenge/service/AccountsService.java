@@ -1,124 +1,975 @@
 package com.db.awmd.challenge.service;
 
-import static com.db.awmd.challenge.constant.MessageConstants.ACCOUNT_DOES_NOT_EXIST;
-import static com.db.awmd.challenge.constant.MessageConstants.ACCOUNT_IS_BLOCKED;
-import static com.db.awmd.challenge.constant.MessageConstants.INSUFFICIENT_BALANCE;
+import static com.db.awmd.challenge.constant.MessageConstants.BATCH_ROLLED_BACK;
+import static com.db.awmd.challenge.constant.MessageConstants.ENGINE_ALL_OR_NOTHING_UNSUPPORTED;
+import static com.db.awmd.challenge.constant.MessageConstants.ENGINE_MULTI_LEG_UNSUPPORTED;
+import static com.db.awmd.challenge.constant.MessageConstants.LEDGER_DISABLED;
+import static com.db.awmd.challenge.constant.MessageConstants.TRANSFER_COMPLETED;
+import static com.db.awmd.challenge.constant.MessageConstants.UNBALANCED_LEGS;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.db.awmd.challenge.config.AccountsProperties;
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountVersion;
+import com.db.awmd.challenge.domain.AccountsSnapshot;
+import com.db.awmd.challenge.domain.AmountTransfer;
+import com.db.awmd.challenge.domain.BalanceStatistics;
+import com.db.awmd.challenge.domain.BatchTransfer;
+import com.db.awmd.challenge.domain.LedgerPage;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.domain.MultiLegResult;
+import com.db.awmd.challenge.domain.MultiLegTransfer;
+import com.db.awmd.challenge.domain.RejectionReason;
+import com.db.awmd.challenge.domain.StatusChangeOutcome;
+import com.db.awmd.challenge.domain.StatusChangeResult;
+import com.db.awmd.challenge.domain.TransferOutcome;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferResult.Status;
+import com.db.awmd.challenge.engine.ShardedTransferEngine;
 import com.db.awmd.challenge.exception.AmountTransferException;
 import com.db.awmd.challenge.exception.StatusChangeException;
+import com.db.awmd.challenge.exception.TransactionConflictException;
+import com.db.awmd.challenge.journal.SnapshotManager;
+import com.db.awmd.challenge.journal.TransactionJournal;
+import com.db.awmd.challenge.ledger.AccountLedger;
+import com.db.awmd.challenge.metrics.LatencyHistogram;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
 import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryOffHeap;
+import com.db.awmd.challenge.transaction.AccountLockManager;
+import com.db.awmd.challenge.transaction.AccountStatusBitmap;
 import com.db.awmd.challenge.transaction.AccountTransactionManager;
+import com.db.awmd.challenge.transaction.TransactionEngine;
+import com.db.awmd.challenge.transaction.TransactionEvent;
+import com.db.awmd.challenge.transaction.TransactionMode;
+import com.db.awmd.challenge.transaction.TransferFunction;
+import com.db.awmd.challenge.transaction.VersionClock;
 
 import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 
+@Slf4j
 @Service
 public class AccountsService {
 
+	// returned by minorUnits for an amount with too many decimal places
+	private static final long INVALID_AMOUNT = Long.MIN_VALUE;
+
 	@Getter
 	private final AccountsRepository accountsRepository;
 
+	@Getter
 	private AccountTransactionManager transactionManager;
 
+	@Getter
+	private SnapshotManager snapshotManager;
+
+	// set when transfers and status changes run on the sharded engine
+	@Getter
+	private ShardedTransferEngine engine;
+
+	@Getter
+	private final IdempotencyCache idempotencyCache;
+
+	private final int batchGroupSize;
+
+	// accounts whose status a bulk status change commits together
+	private final int statusChunkSize;
+
+	private final AccountStatusBitmap statuses;
+
+	private final LatencyHistogram transferLatency;
+
+	private final LatencyHistogram batchLatency;
+
+	private final LatencyHistogram multiLegLatency;
+
+	private final LongAdder transfersCompleted;
+
+	private final LongAdder transfersReplayed;
+
+	private final LongAdder snapshotRetries;
+
+	// indexed by RejectionReason ordinal
+	private final LongAdder[] transfersRejected = new LongAdder[RejectionReason.values().length];
+
+	// bodies of single transfers, bound to their arguments by the transaction context
+	private final TransferFunction<TransferOutcome> move = this::move;
+
+	private final TransferFunction<TransferOutcome> moveToHot = this::moveToHot;
+
+	public AccountsService(AccountsRepository accountsRepository, AccountsProperties properties) {
+		this(accountsRepository, properties, new MetricsRegistry());
+	}
+
 	@Autowired
-	public AccountsService(AccountsRepository accountsRepository) {
+	public AccountsService(AccountsRepository accountsRepository, AccountsProperties properties,
+			MetricsRegistry metrics) {
 		this.accountsRepository = accountsRepository;
-		this.transactionManager = new AccountTransactionManager(accountsRepository);
+		this.batchGroupSize = Math.max(1, properties.getBatch().getGroupSize());
+		this.statusChunkSize = Math.max(1, properties.getBulk().getBatchSize());
+		this.transferLatency = metrics.histogram("service.amountTransfer");
+		this.batchLatency = metrics.histogram("service.amountTransfers");
+		this.multiLegLatency = metrics.histogram("service.multiLegTransfer");
+		this.transfersCompleted = metrics.counter("transfer.completed");
+		this.transfersReplayed = metrics.counter("transfer.replayed");
+		this.snapshotRetries = metrics.counter("snapshot.retries");
+		this.idempotencyCache = new IdempotencyCache(properties.getIdempotency().getMaxKeys(),
+				properties.getIdempotency().getTtlMs());
+		metrics.gauge("idempotency.keys", idempotencyCache::size);
+		for (RejectionReason reason : RejectionReason.values()) {
+			transfersRejected[reason.ordinal()] = metrics.counter("transfer.rejected." + reason.getMetricName());
+		}
+		AccountsProperties.Transaction transaction = properties.getTransaction();
+		int snapshotVersions = transaction.getSnapshotVersions();
+		if (accountsRepository instanceof AccountsRepositoryOffHeap) {
+			// more versions than the record holds would live on the heap
+			snapshotVersions = Math.min(snapshotVersions, AccountsRepositoryOffHeap.RECORD_VERSIONS);
+		}
+		VersionClock clock = new VersionClock(snapshotVersions);
+		this.transactionManager = new AccountTransactionManager(accountsRepository,
+				new AccountLockManager(transaction.getLockStripes()), transaction.getMode(), transaction.getMaxRetries(),
+				clock);
+		this.transactionManager.setMetrics(metrics);
+		this.statuses = transactionManager.getStatuses();
+		if (transaction.getEngine() == TransactionEngine.SHARDED) {
+			if (properties.getJournal().isEnabled()) {
+				throw new IllegalStateException("The sharded transaction engine does not support the journal");
+			}
+			int shards = transaction.getShards() > 0 ? transaction.getShards()
+					: Runtime.getRuntime().availableProcessors();
+			this.engine = new ShardedTransferEngine(accountsRepository, shards, transaction.getShardQueueCapacity(),
+					clock);
+			engine.setStatistics(transactionManager.getStatistics());
+			engine.setStatuses(statuses);
+			metrics.gauge("engine.queue.depth", engine::getQueueDepth);
+		}
+		if (properties.getLedger().isEnabled()) {
+			AccountLedger ledger = openLedger(properties.getLedger());
+			this.transactionManager.setLedger(ledger);
+			if (engine != null) {
+				engine.setLedger(ledger);
+			}
+			metrics.gauge("ledger.entries", ledger::getEntryCount);
+			metrics.gauge("ledger.chunks.spilled", ledger::getSpilledChunkCount);
+			metrics.gauge("ledger.chunks.memory", ledger::getMemoryChunkCount);
+			metrics.gauge("ledger.spill.queue.depth", ledger::getSpillQueueDepth);
+			metrics.gauge("ledger.buffer.depth", ledger::getBufferDepth);
+		}
+		if (properties.getJournal().isEnabled()) {
+			this.transactionManager.setJournal(openJournal(properties.getJournal()));
+		}
+		if (!properties.getHot().getAccounts().isEmpty()) {
+			// the journal records balances, not the credits between them, and the
+			// sharded engine and off heap accounts have no striped balances
+			if (engine != null || properties.getJournal().isEnabled() || transaction.getMode() != TransactionMode.PESSIMISTIC
+					|| "off-heap".equals(properties.getRepository().getType())) {
+				throw new IllegalStateException(
+						"Hot accounts need the pessimistic locking engine, the in-memory repository and no journal");
+			}
+			int stripes = properties.getHot().getStripes() > 0 ? properties.getHot().getStripes()
+					: 2 * Runtime.getRuntime().availableProcessors();
+			transactionManager.setHotAccounts(new HashSet<>(properties.getHot().getAccounts()), stripes);
+		}
+		// counts the accounts recovered from the journal or found in the repository
+		transactionManager.getStatistics().rebuild(accountsRepository);
+		statuses.rebuild(accountsRepository);
+		metrics.gauge("statistics.imbalance.units", transactionManager.getStatistics()::getImbalanceUnits);
+	}
+
+	private static AccountLedger openLedger(AccountsProperties.Ledger properties) {
+		String directory = properties.getDirectory();
+		try {
+			return new AccountLedger(
+					Paths.get(directory == null || directory.isEmpty() ? System.getProperty("java.io.tmpdir") : directory),
+					properties.getChunkSize(), properties.getMemoryChunks(), properties.getBufferSize());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private TransactionJournal openJournal(AccountsProperties.Journal properties) {
+		try {
+			Path directory = Paths.get(properties.getDirectory());
+			TransactionJournal journal = new TransactionJournal(directory, properties.getBufferSize(),
+					properties.getSyncIntervalMs());
+			long fromSegment = SnapshotManager.load(directory, accountsRepository);
+			int records = journal.recover(accountsRepository, fromSegment);
+			log.info("Replayed {} journal records from {}", records, directory);
+			this.snapshotManager = new SnapshotManager(directory, accountsRepository, transactionManager.getLockManager(),
+					journal, properties.getSnapshotIntervalMs());
+			return journal;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@PreDestroy
+	public void close() throws IOException {
+		if (engine != null) {
+			engine.close();
+		}
+		if (snapshotManager != null) {
+			snapshotManager.close();
+		}
+		if (transactionManager.getLedger() != null) {
+			transactionManager.getLedger().close();
+		}
+		if (transactionManager.getJournal() != null) {
+			transactionManager.getJournal().close();
+		}
 	}
 
 	public void createAccount(Account account) {
-		this.accountsRepository.createAccount(account);
+		this.transactionManager.createAccount(account);
 	}
 
 	public Account getAccount(String accountId) {
 		return this.accountsRepository.getAccount(accountId);
 	}
 
-	public boolean blockAccount(final String accountId) throws AmountTransferException {
-		transactionManager.doInTransaction(() -> {
-			this.setAccountBlockedStatus(accountId, true);
-		});
-		transactionManager.commit();
+	/**
+	 * Returns a copy of the committed state of the account, or null if it does
+	 * not exist.
+	 */
+	public Account getAccountSnapshot(String accountId) {
+		List<Account> accounts = getAccounts(Collections.singletonList(accountId)).getAccounts();
+		return accounts.isEmpty() ? null : accounts.get(0);
+	}
+
+	/**
+	 * Returns copies of the accounts as of the latest published commit, so that
+	 * no transfer is seen half applied. Nothing is locked, see
+	 * {@link VersionClock}.
+	 */
+	public AccountsSnapshot getAccounts(List<String> accountIds) {
+		List<Account> accounts = new ArrayList<>(accountIds.size());
+		List<String> missing = new ArrayList<>();
+		for (;;) {
+			long epoch = transactionManager.getClock().current();
+			if (readAt(epoch, accountIds, accounts, missing)) {
+				return new AccountsSnapshot(epoch, accounts, missing);
+			}
+			// an account committed more often than its history keeps meanwhile
+			snapshotRetries.increment();
+			accounts.clear();
+			missing.clear();
+		}
+	}
+
+	private boolean readAt(long epoch, List<String> accountIds, List<Account> accounts, List<String> missing) {
+		for (String accountId : accountIds) {
+			Account account = accountsRepository.getAccount(accountId);
+			if (account == null) {
+				missing.add(accountId);
+				continue;
+			}
+			if (account.getStripes() != null) {
+				// hot accounts have no history, credits commit without an epoch
+				accounts.add(copyOf(accountId, account.getBalanceUnits(), account.isBlocked()));
+				continue;
+			}
+			AccountVersion version = transactionManager.getClock().read(account, epoch);
+			if (version == null) {
+				return false;
+			}
+			accounts.add(copyOf(accountId, version.getBalanceUnits(), version.isBlocked()));
+		}
+		return true;
+	}
+
+	private static Account copyOf(String accountId, long balanceUnits, boolean blocked) {
+		Account copy = new Account(accountId);
+		copy.setBalanceUnits(balanceUnits);
+		copy.setBlocked(blocked);
+		return copy;
+	}
+
+	/**
+	 * Removes all accounts and resets the statistics and status bits kept
+	 * over them. Nothing may commit meanwhile.
+	 */
+	public void clearAccounts() {
+		accountsRepository.clearAccounts();
+		transactionManager.getStatistics().rebuild(accountsRepository);
+		statuses.rebuild(accountsRepository);
+	}
+
+	/**
+	 * Returns the account count, blocked count, total balance and balance
+	 * histogram, maintained by the commits.
+	 */
+	public BalanceStatistics getStatistics() {
+		return transactionManager.getStatistics().summary();
+	}
+
+	/**
+	 * Returns a page of the account's ledger, newest entries first, or null if
+	 * the account does not exist.
+	 *
+	 * @throws IllegalStateException if the ledger is disabled
+	 */
+	public LedgerPage getTransactions(String accountId, int page, int size) {
+		AccountLedger ledger = transactionManager.getLedger();
+		if (ledger == null) {
+			throw new IllegalStateException(LEDGER_DISABLED);
+		}
+		if (accountsRepository.getAccount(accountId) == null) {
+			return null;
+		}
+		return ledger.page(accountId, page, size);
+	}
+
+	public boolean blockAccount(final String accountId) throws StatusChangeException {
+		StatusChangeOutcome outcome = setBlocked(accountId, true);
+		if (outcome != StatusChangeOutcome.COMPLETED) {
+			throw new StatusChangeException(outcome.message(accountId));
+		}
 		return true;
 	}
 
-	public boolean unblockAccount(String accountId) throws AmountTransferException {
-		transactionManager.doInTransaction(() -> {
-			this.setAccountBlockedStatus(accountId, false);
-		});
-		transactionManager.commit();
+	public boolean unblockAccount(String accountId) throws StatusChangeException {
+		StatusChangeOutcome outcome = setBlocked(accountId, false);
+		if (outcome != StatusChangeOutcome.COMPLETED) {
+			throw new StatusChangeException(outcome.message(accountId));
+		}
 		return true;
 	}
 
+	/**
+	 * Blocks or unblocks the account and returns the outcome; a missing
+	 * account is returned, not thrown.
+	 */
+	public StatusChangeOutcome setBlocked(String accountId, boolean blocked) {
+		if (engine != null) {
+			return await(engine.setBlocked(accountId, blocked));
+		}
+		Account account = accountsRepository.getAccount(accountId);
+		if (account == null) {
+			return StatusChangeOutcome.ACCOUNT_MISSING;
+		}
+		if (blocked) {
+			// transfers are rejected from here on, the flag follows with the commit
+			statuses.set(account.getNumber(), true);
+		}
+		int number = account.getNumber();
+		return transactionManager.executeInTransaction(blocked ? TransactionEvent.BLOCK : TransactionEvent.UNBLOCK,
+				() -> this.setAccountBlockedStatus(number, blocked), StatusChangeOutcome.COMPLETED, number);
+	}
+
+	/**
+	 * Blocks or unblocks all of the accounts and returns how many were found.
+	 * A block sets the status bits of all accounts up front, without a lock,
+	 * so transfers to and from them are rejected at once; the flags are then
+	 * committed in chunks of accounts.bulk.batch-size accounts, each waiting
+	 * only for the transfers holding its accounts. An unblock clears the bits
+	 * as its chunks commit.
+	 */
+	public StatusChangeResult setBlocked(Collection<String> accountIds, boolean blocked) {
+		List<String> found = new ArrayList<>(accountIds.size());
+		List<String> missing = new ArrayList<>();
+		int[] numbers = new int[accountIds.size()];
+		for (String accountId : new LinkedHashSet<>(accountIds)) {
+			Account account = accountsRepository.getAccount(accountId);
+			if (account == null) {
+				missing.add(accountId);
+				continue;
+			}
+			numbers[found.size()] = account.getNumber();
+			found.add(accountId);
+			if (blocked && engine == null) {
+				statuses.set(account.getNumber(), true);
+			}
+		}
+		if (engine != null) {
+			List<CompletableFuture<StatusChangeOutcome>> queued = new ArrayList<>(found.size());
+			for (String accountId : found) {
+				queued.add(engine.setBlocked(accountId, blocked));
+			}
+			for (CompletableFuture<StatusChangeOutcome> outcome : queued) {
+				await(outcome);
+			}
+			return new StatusChangeResult(blocked, found.size(), missing);
+		}
+		TransactionEvent event = blocked ? TransactionEvent.BLOCK : TransactionEvent.UNBLOCK;
+		for (int from = 0; from < found.size(); from += statusChunkSize) {
+			int[] chunk = Arrays.copyOfRange(numbers, from, Math.min(found.size(), from + statusChunkSize));
+			transactionManager.executeInTransaction(event, () -> {
+				for (int number : chunk) {
+					setAccountBlockedStatus(number, blocked);
+				}
+				return StatusChangeOutcome.COMPLETED;
+			}, StatusChangeOutcome.COMPLETED, chunk);
+		}
+		return new StatusChangeResult(blocked, found.size(), missing);
+	}
+
 	// @Transactional(propagation=Propagation.REQUIRED, readOnly=false,
 	// rollbackFor=AmountTransferException.class)
 	public void amountTransfer(final String fromAccount, final String toAccount, final BigDecimal transferAmount)
 			throws AmountTransferException {
+		TransferOutcome outcome = transfer(fromAccount, toAccount, transferAmount);
+		if (!outcome.isSuccess()) {
+			throw outcome.rejection(fromAccount, toAccount, null);
+		}
+	}
 
-		transactionManager.doInTransaction(() -> {
+	/**
+	 * Applies the transfer, or, if its idempotency key was seen before, answers
+	 * with the outcome of the first transfer under that key: it returns if that
+	 * one was applied and throws its rejection otherwise. See
+	 * {@link #transfer(AmountTransfer)}.
+	 *
+	 * @return false if the outcome was replayed rather than applied now
+	 */
+	public boolean amountTransfer(AmountTransfer transfer) throws AmountTransferException {
+		TransferOutcome outcome = transfer(transfer);
+		if (!outcome.isSuccess()) {
+			throw outcome.rejection(transfer.getAccountFrom(), transfer.getAccountTo(), transfer.getIdempotencyKey());
+		}
+		return outcome == TransferOutcome.COMPLETED;
+	}
 
-			this.debit(fromAccount, transferAmount);
-			this.credit(toAccount, transferAmount);
-		});
-		transactionManager.commit();
+	/**
+	 * Applies the transfer and returns its outcome, or, if its idempotency key
+	 * was seen before, the outcome of the first transfer under that key,
+	 * {@link TransferOutcome#REPLAYED} if that one was applied. A retry
+	 * arriving while the first transfer is still running waits for its
+	 * outcome. Failures other than rejections, like transaction conflicts, are
+	 * thrown and not remembered, so the retry of such a transfer runs again.
+	 */
+	public TransferOutcome transfer(AmountTransfer transfer) {
+		String fromAccount = transfer.getAccountFrom();
+		String toAccount = transfer.getAccountTo();
+		long amount = minorUnits(transfer.getTransferAmount());
+		if (amount == INVALID_AMOUNT) {
+			return TransferOutcome.INVALID_AMOUNT;
+		}
+		String key = transfer.getIdempotencyKey();
+		if (key == null) {
+			return transfer(fromAccount, toAccount, amount);
+		}
+		IdempotencyCache.Entry entry = new IdempotencyCache.Entry(fromAccount, toAccount, amount);
+		IdempotencyCache.Entry first = idempotencyCache.putIfAbsent(key, entry);
+		if (first != null) {
+			return replay(first, fromAccount, toAccount, amount);
+		}
+		TransferOutcome outcome;
+		try {
+			outcome = transfer(fromAccount, toAccount, amount);
+		} catch (RuntimeException | Error e) {
+			idempotencyCache.remove(key, entry);
+			entry.getOutcome().completeExceptionally(e);
+			throw e;
+		}
+		entry.getOutcome().complete(outcome);
+		return outcome;
+	}
 
+	private TransferOutcome replay(IdempotencyCache.Entry first, String fromAccount, String toAccount, long amount) {
+		if (!first.matches(fromAccount, toAccount, amount)) {
+			countRejection(RejectionReason.IDEMPOTENCY_KEY_REUSED);
+			return TransferOutcome.IDEMPOTENCY_KEY_REUSED;
+		}
+		TransferOutcome outcome;
+		try {
+			outcome = first.getOutcome().join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw (RuntimeException) e.getCause();
+		}
+		transfersReplayed.increment();
+		return outcome.isSuccess() ? TransferOutcome.REPLAYED : outcome;
 	}
 
-	private Account debit(String accountId, BigDecimal amount) throws AmountTransferException {
-		// take repository from transaction manager in order to manage transactions and
-		// rollBack.
-		// But, This method will only be transactional only if this is called within
-		// "transactionManager.doInTransaction()
-		// OR method annotated with @AccountTransaction.
-		final Account account = transactionManager.getRepoProxy().getAccount(accountId);
-		if (account == null) {
-			throw new AmountTransferException(String.format(ACCOUNT_DOES_NOT_EXIST, accountId));
+	/**
+	 * Transfers an amount and returns the outcome; rejections are returned,
+	 * not thrown.
+	 */
+	public TransferOutcome transfer(String fromAccount, String toAccount, BigDecimal transferAmount) {
+		long amount = minorUnits(transferAmount);
+		if (amount == INVALID_AMOUNT) {
+			return TransferOutcome.INVALID_AMOUNT;
+		}
+		return transfer(fromAccount, toAccount, amount);
+	}
+
+	private long minorUnits(BigDecimal transferAmount) {
+		try {
+			return Money.toMinorUnits(transferAmount);
+		} catch (ArithmeticException e) {
+			transfersRejected[RejectionReason.INVALID_AMOUNT.ordinal()].increment();
+			return INVALID_AMOUNT;
+		}
+	}
+
+	/**
+	 * Transfers an amount given in minor units, see {@link Money}, and throws
+	 * the rejection if it is not applied.
+	 */
+	public void amountTransfer(final String fromAccount, final String toAccount, final long transferAmount)
+			throws AmountTransferException {
+		TransferOutcome outcome = transfer(fromAccount, toAccount, transferAmount);
+		if (!outcome.isSuccess()) {
+			throw outcome.rejection(fromAccount, toAccount, null);
+		}
+	}
+
+	/**
+	 * Transfers an amount given in minor units and returns the outcome.
+	 * Transfers which fail the {@link TransferPrecheck} are rejected before
+	 * anything is locked, the others are validated again in their transaction
+	 * or engine command. Only unexpected failures, like a
+	 * {@link TransactionConflictException}, are thrown.
+	 */
+	public TransferOutcome transfer(final String fromAccount, final String toAccount, final long transferAmount) {
+
+		long start = System.nanoTime();
+		try {
+			// the ids are resolved once, the transaction works on the account numbers
+			Account from = accountsRepository.getAccount(fromAccount);
+			Account to = accountsRepository.getAccount(toAccount);
+			TransferOutcome outcome = TransferPrecheck.check(statuses, fromAccount, from, toAccount, to,
+					transferAmount, true);
+			if (outcome == TransferOutcome.COMPLETED) {
+				int fromNumber = from.getNumber();
+				int toNumber = to.getNumber();
+				if (engine != null) {
+					outcome = await(engine.transfer(fromAccount, toAccount, transferAmount));
+				} else if (to.getStripes() != null) {
+					// only the source is locked, the hot target is credited on a stripe
+					outcome = transactionManager.executeTransfer(moveToHot, fromNumber, toNumber, false,
+							transferAmount, TransferOutcome.COMPLETED);
+				} else {
+					// both accounts stay locked from the first read until the commit, so
+					// concurrent transfers on the same accounts cannot overwrite each other
+					outcome = transactionManager.executeTransfer(move, fromNumber, toNumber, true, transferAmount,
+							TransferOutcome.COMPLETED);
+				}
+			}
+			if (outcome == TransferOutcome.COMPLETED) {
+				transfersCompleted.increment();
+			} else {
+				countRejection(outcome.getReason());
+			}
+			return outcome;
+		} catch (TransactionConflictException e) {
+			countRejection(RejectionReason.CONFLICT);
+			throw e;
+		} finally {
+			transferLatency.recordSince(start);
+		}
+
+	}
+
+	/**
+	 * Applies a batch of transfers and returns the result of each of them. The
+	 * amounts are validated, and the transfers prechecked except for the
+	 * balance, in one pass before anything is locked. Transfers
+	 * are then applied in groups: the accounts of a group are locked together
+	 * and the group is committed, and journaled, once. An ALL_OR_NOTHING batch
+	 * is a single group which the first failing transfer rolls back; a
+	 * BEST_EFFORT batch is cut into groups of accounts.batch.group-size
+	 * transfers and skips the failing ones. Idempotency keys of the transfers
+	 * are not looked at, batches carrying them are refused by the controller.
+	 */
+	public List<TransferResult> amountTransfers(List<AmountTransfer> transfers, BatchTransfer.Mode mode) {
+		long start = System.nanoTime();
+		int size = transfers.size();
+		TransferResult[] results = new TransferResult[size];
+		long[] amounts = new long[size];
+		// source and target number of each transfer which passed the precheck
+		int[] numbers = new int[2 * size];
+		int invalid = -1;
+		for (int i = 0; i < size; i++) {
+			AmountTransfer transfer = transfers.get(i);
+			TransferOutcome outcome;
+			try {
+				amounts[i] = Money.toMinorUnits(transfer.getTransferAmount());
+				Account from = accountsRepository.getAccount(transfer.getAccountFrom());
+				Account to = accountsRepository.getAccount(transfer.getAccountTo());
+				outcome = TransferPrecheck.check(statuses, transfer.getAccountFrom(), from, transfer.getAccountTo(), to,
+						amounts[i], false);
+				if (outcome == TransferOutcome.COMPLETED) {
+					numbers[2 * i] = from.getNumber();
+					numbers[2 * i + 1] = to.getNumber();
+				}
+			} catch (ArithmeticException e) {
+				outcome = TransferOutcome.INVALID_AMOUNT;
+			}
+			if (outcome != TransferOutcome.COMPLETED) {
+				results[i] = rejected(i, transfer, outcome);
+				invalid = invalid < 0 ? i : invalid;
+			}
 		}
-		if (account.getBalance().compareTo(amount) == -1) {
-			throw new AmountTransferException(String.format(INSUFFICIENT_BALANCE, accountId));
+		if (engine != null) {
+			applyOnEngine(transfers, amounts, results, mode);
+		} else if (mode == BatchTransfer.Mode.ALL_OR_NOTHING) {
+			if (invalid >= 0) {
+				rollBackBatch(results, 0, size, invalid);
+			} else {
+				applyGroup(transfers, amounts, numbers, results, 0, size, true);
+			}
+		} else {
+			for (int from = 0; from < size; from += batchGroupSize) {
+				applyGroup(transfers, amounts, numbers, results, from, Math.min(size, from + batchGroupSize), false);
+			}
 		}
-		if (account.isBlocked()) {
-			throw new AmountTransferException(String.format(ACCOUNT_IS_BLOCKED, accountId));
+		for (TransferResult result : results) {
+			if (result.isCompleted()) {
+				transfersCompleted.increment();
+			} else if (result.getReason() != null) {
+				countRejection(result.getReason());
+			}
 		}
-		BigDecimal bal = account.getBalance().subtract(amount);
-		account.setBalance(bal);
-		return account;
+		batchLatency.recordSince(start);
+		return Arrays.asList(results);
 	}
 
-	private Account credit(String accountId, BigDecimal amount) throws AmountTransferException {
+	/**
+	 * Applies all legs of the transfer in one transaction and returns its
+	 * outcome. The accounts of all legs are locked together, in stripe order
+	 * like any transaction, and the transfer is committed and journaled once.
+	 * The legs are paired in order into transfers from the debited to the
+	 * credited accounts, which the ledger records; the first of them which is
+	 * rejected rolls back all of them, as does a pair of one account. Debits
+	 * are checked as they are paired, so an account which is debited and also
+	 * credited must cover its debits before the credits which follow them.
+	 * Transaction conflicts are thrown.
+	 */
+	public MultiLegResult transfer(MultiLegTransfer transfer) {
+		long start = System.nanoTime();
+		List<MultiLegTransfer.Leg> debits = transfer.getDebits();
+		List<MultiLegTransfer.Leg> credits = transfer.getCredits();
+		int size = debits.size() + credits.size();
+		// debits first, then credits
+		long[] amounts = new long[size];
+		int[] numbers = new int[size];
+		MultiLegResult result = null;
+		long balance = 0;
+		for (int i = 0; i < size && result == null; i++) {
+			boolean debit = i < debits.size();
+			MultiLegTransfer.Leg leg = debit ? debits.get(i) : credits.get(i - debits.size());
+			TransferOutcome outcome;
+			try {
+				amounts[i] = Money.toMinorUnits(leg.getAmount());
+				balance = debit ? Math.addExact(balance, amounts[i]) : Math.subtractExact(balance, amounts[i]);
+				Account account = accountsRepository.getAccount(leg.getAccountId());
+				if (account == null) {
+					outcome = debit ? TransferOutcome.SOURCE_MISSING : TransferOutcome.TARGET_MISSING;
+				} else if (isBlocked(account)) {
+					outcome = debit ? TransferOutcome.SOURCE_BLOCKED : TransferOutcome.TARGET_BLOCKED;
+				} else {
+					numbers[i] = account.getNumber();
+					outcome = amounts[i] < 0 ? TransferOutcome.INVALID_AMOUNT : TransferOutcome.COMPLETED;
+				}
+			} catch (ArithmeticException e) {
+				outcome = TransferOutcome.INVALID_AMOUNT;
+			}
+			if (outcome != TransferOutcome.COMPLETED) {
+				result = rejected(outcome, leg.getAccountId(), leg.getAccountId());
+			}
+		}
+		if (result == null && balance != 0) {
+			result = new MultiLegResult(Status.REJECTED, RejectionReason.UNBALANCED_LEGS,
+					String.format(UNBALANCED_LEGS, Money.toBigDecimal(Math.abs(balance))));
+		}
+		if (result == null && engine != null) {
+			result = new MultiLegResult(Status.REJECTED, null, ENGINE_MULTI_LEG_UNSUPPORTED);
+		}
+		try {
+			if (result == null) {
+				// debit and credit leg of the rejected transfer
+				int[] failed = new int[2];
+				TransferOutcome outcome = transactionManager.executeInTransaction(TransactionEvent.TRANSFER,
+						() -> this.moveLegs(numbers, amounts, debits.size(), failed), TransferOutcome.COMPLETED,
+						numbers);
+				result = outcome == TransferOutcome.COMPLETED ? new MultiLegResult(Status.COMPLETED, null, TRANSFER_COMPLETED)
+						: rejected(outcome, debits.get(failed[0]).getAccountId(),
+								credits.get(failed[1] - debits.size()).getAccountId());
+			}
+			if (result.isCompleted()) {
+				transfersCompleted.increment();
+			} else {
+				countRejection(result.getReason());
+			}
+			return result;
+		} catch (TransactionConflictException e) {
+			countRejection(RejectionReason.CONFLICT);
+			throw e;
+		} finally {
+			multiLegLatency.recordSince(start);
+		}
+	}
+
+	private static MultiLegResult rejected(TransferOutcome outcome, String fromAccount, String toAccount) {
+		return new MultiLegResult(Status.REJECTED, outcome.getReason(), outcome.message(fromAccount, toAccount, null));
+	}
+
+	/**
+	 * Moves the debits, the legs before the given one, to the credits, taking
+	 * from the first debit and giving to the first credit which have an
+	 * amount left, and returns the first rejection with its legs in failed.
+	 */
+	private TransferOutcome moveLegs(int[] numbers, long[] amounts, int credits, int[] failed) {
+		int debit = 0;
+		int credit = credits;
+		long debitLeft = amounts[debit];
+		long creditLeft = amounts[credit];
+		while (debit < credits && credit < numbers.length) {
+			long amount = Math.min(debitLeft, creditLeft);
+			if (amount > 0) {
+				TransferOutcome moved = numbers[debit] == numbers[credit] ? TransferOutcome.SAME_ACCOUNT
+						: move(numbers[debit], numbers[credit], amount);
+				if (moved != TransferOutcome.COMPLETED) {
+					failed[0] = debit;
+					failed[1] = credit;
+					return moved;
+				}
+			}
+			debitLeft -= amount;
+			creditLeft -= amount;
+			if (debitLeft == 0 && ++debit < credits) {
+				debitLeft = amounts[debit];
+			}
+			if (creditLeft == 0 && ++credit < numbers.length) {
+				creditLeft = amounts[credit];
+			}
+		}
+		return TransferOutcome.COMPLETED;
+	}
+
+	private void applyGroup(List<AmountTransfer> transfers, long[] amounts, int[] numbers, TransferResult[] results,
+			int from, int to, boolean atomic) {
+		// transfers rejected by the validation pass are already decided
+		boolean[] pending = new boolean[to - from];
+		int[] locked = new int[2 * (to - from)];
+		int accounts = 0;
+		for (int i = from; i < to; i++) {
+			if (results[i] == null) {
+				pending[i - from] = true;
+				locked[accounts++] = numbers[2 * i];
+				locked[accounts++] = numbers[2 * i + 1];
+			}
+		}
+		int[] failed = { -1 };
+		try {
+			TransferOutcome outcome = transactionManager.executeInTransaction(TransactionEvent.TRANSFER, () -> {
+				for (int i = from; i < to; i++) {
+					if (!pending[i - from]) {
+						continue;
+					}
+					AmountTransfer transfer = transfers.get(i);
+					TransferOutcome moved = this.move(numbers[2 * i], numbers[2 * i + 1], amounts[i]);
+					if (moved == TransferOutcome.COMPLETED) {
+						results[i] = new TransferResult(i, Status.COMPLETED, null, TRANSFER_COMPLETED);
+					} else {
+						results[i] = rejected(i, transfer, moved);
+						if (atomic) {
+							failed[0] = i;
+							return moved;
+						}
+					}
+				}
+				return TransferOutcome.COMPLETED;
+			}, TransferOutcome.COMPLETED, Arrays.copyOf(locked, accounts));
+			if (outcome != TransferOutcome.COMPLETED) {
+				rollBackBatch(results, from, to, failed[0]);
+			}
+		} catch (TransactionConflictException e) {
+			for (int i = from; i < to; i++) {
+				if (pending[i - from]) {
+					results[i] = new TransferResult(i, Status.REJECTED, RejectionReason.CONFLICT, e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Queues the transfers of a best effort batch on the sharded engine a
+	 * group at a time, so a large batch does not fill the shard queues; the
+	 * engine has no transaction spanning shards, so all-or-nothing batches are
+	 * refused.
+	 */
+	private void applyOnEngine(List<AmountTransfer> transfers, long[] amounts, TransferResult[] results,
+			BatchTransfer.Mode mode) {
+		List<CompletableFuture<TransferOutcome>> queued = new ArrayList<>(Math.min(transfers.size(), batchGroupSize));
+		for (int from = 0; from < transfers.size(); from += batchGroupSize) {
+			int to = Math.min(transfers.size(), from + batchGroupSize);
+			queued.clear();
+			for (int i = from; i < to; i++) {
+				if (results[i] != null) {
+					queued.add(null);
+				} else if (mode == BatchTransfer.Mode.ALL_OR_NOTHING) {
+					results[i] = new TransferResult(i, Status.REJECTED, null, ENGINE_ALL_OR_NOTHING_UNSUPPORTED);
+					queued.add(null);
+				} else {
+					AmountTransfer transfer = transfers.get(i);
+					queued.add(engine.transfer(transfer.getAccountFrom(), transfer.getAccountTo(), amounts[i]));
+				}
+			}
+			for (int i = from; i < to; i++) {
+				if (queued.get(i - from) == null) {
+					continue;
+				}
+				TransferOutcome outcome = await(queued.get(i - from));
+				results[i] = outcome == TransferOutcome.COMPLETED
+						? new TransferResult(i, Status.COMPLETED, null, TRANSFER_COMPLETED)
+						: rejected(i, transfers.get(i), outcome);
+			}
+		}
+	}
+
+	private static TransferResult rejected(int index, AmountTransfer transfer, TransferOutcome outcome) {
+		return new TransferResult(index, Status.REJECTED, outcome.getReason(),
+				outcome.message(transfer.getAccountFrom(), transfer.getAccountTo(), transfer.getIdempotencyKey()));
+	}
+
+	private static <T> T await(CompletableFuture<T> result) {
+		try {
+			return result.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	private static void rollBackBatch(TransferResult[] results, int from, int to, int failed) {
+		for (int i = from; i < to; i++) {
+			if (i != failed && (results[i] == null || results[i].isCompleted())) {
+				results[i] = new TransferResult(i, Status.ROLLED_BACK, null, String.format(BATCH_ROLLED_BACK, failed));
+			}
+		}
+	}
+
+	private void countRejection(RejectionReason reason) {
+		if (reason != null) {
+			transfersRejected[reason.ordinal()].increment();
+		}
+	}
+
+	/**
+	 * Debits and credits the save points of the current transaction, or
+	 * leaves both unchanged and returns the rejection, so that the other
+	 * transfers of a group can still be committed. Both accounts are checked
+	 * before either is changed.
+	 */
+	private TransferOutcome move(int fromAccount, int toAccount, long amount) {
 		// take repository from transaction manager in order to manage transactions and
 		// rollBack.
 		// But, This method will only be transactional only if this is called within
 		// "transactionManager.doInTransaction()
 		// OR method annotated with @AccountTransaction.
-		final Account account = transactionManager.getRepoProxy().getAccount(accountId);
-		if (account == null) {
-			throw new AmountTransferException(String.format(ACCOUNT_DOES_NOT_EXIST, accountId));
+		final Account debited = transactionManager.getRepoProxy().getAccount(fromAccount);
+		TransferOutcome rejection = checkDebit(debited, amount);
+		if (rejection != null) {
+			return rejection;
+		}
+		final Account credited = transactionManager.getRepoProxy().getAccount(toAccount);
+		if (credited == null) {
+			return TransferOutcome.TARGET_MISSING;
+		}
+		if (isBlocked(credited)) {
+			return TransferOutcome.TARGET_BLOCKED;
+		}
+		// a transfer to the same account credits the balance it was debited from
+		long creditedBalance = credited == debited ? debited.getBalanceUnits() - amount : credited.getBalanceUnits();
+		if (Money.addOverflows(creditedBalance, amount)) {
+			return TransferOutcome.TARGET_BALANCE_LIMIT;
+		}
+		debited.setBalanceUnits(debited.getBalanceUnits() - amount);
+		credited.setBalanceUnits(credited.getBalanceUnits() + amount);
+		transactionManager.post(debited.getAccountId(), credited.getAccountId(), amount, debited.getBalanceUnits(),
+				credited.getBalanceUnits());
+		return TransferOutcome.COMPLETED;
+	}
+
+	/**
+	 * Like {@link #move(int, int, long)}, but credits the live hot target
+	 * through {@link AccountTransactionManager#creditHot(Account, long)}, as
+	 * the transaction does not hold its lock.
+	 */
+	private TransferOutcome moveToHot(int fromAccount, int toAccount, long amount) {
+		// the live account, its lock is not held
+		final Account credited = accountsRepository.getAccount(toAccount);
+		final Account debited = transactionManager.getRepoProxy().getAccount(fromAccount);
+		TransferOutcome rejection = checkDebit(debited, amount);
+		if (rejection != null) {
+			return rejection;
+		}
+		if (statuses.isBlocked(credited.getNumber())) {
+			return TransferOutcome.TARGET_BLOCKED;
 		}
-		if (account.isBlocked()) {
-			throw new AmountTransferException(String.format(ACCOUNT_IS_BLOCKED, accountId));
+		// credits landing meanwhile are not seen, the limit is as good as unreachable
+		long creditedBalance = credited.getBalanceUnits();
+		if (Money.addOverflows(creditedBalance, amount)) {
+			return TransferOutcome.TARGET_BALANCE_LIMIT;
 		}
-		BigDecimal bal = account.getBalance().add(amount);
-		account.setBalance(bal);
-		return account;
+		if (!transactionManager.creditHot(credited, amount)) {
+			return TransferOutcome.TARGET_BLOCKED;
+		}
+		debited.setBalanceUnits(debited.getBalanceUnits() - amount);
+		transactionManager.post(debited.getAccountId(), credited.getAccountId(), amount, debited.getBalanceUnits(),
+				creditedBalance + amount);
+		return TransferOutcome.COMPLETED;
+	}
+
+	private TransferOutcome checkDebit(Account debited, long amount) {
+		if (debited == null) {
+			return TransferOutcome.SOURCE_MISSING;
+		}
+		if (debited.getBalanceUnits() < amount) {
+			return TransferOutcome.SOURCE_INSUFFICIENT_BALANCE;
+		}
+		if (isBlocked(debited)) {
+			return TransferOutcome.SOURCE_BLOCKED;
+		}
+		if (Money.subtractOverflows(debited.getBalanceUnits(), amount)) {
+			return TransferOutcome.SOURCE_BALANCE_LIMIT;
+		}
+		return null;
+	}
+
+	/** The status bit is set ahead of the flag by a block in progress. */
+	private boolean isBlocked(Account account) {
+		return account.isBlocked() || statuses.isBlocked(account.getNumber());
 	}
 
-	private Account setAccountBlockedStatus(String accountId, boolean status) throws StatusChangeException {
+	private StatusChangeOutcome setAccountBlockedStatus(int accountNumber, boolean status) {
 		// take repository from transaction manager in order to manage transactions and
 		// rollBack.
 		// But, This method will only be transactional only if this is called within
 		// "transactionManager.doInTransaction()
 		// OR method annotated with @AccountTransaction.
-		final Account account = transactionManager.getRepoProxy().getAccount(accountId);
+		final Account account = transactionManager.getRepoProxy().getAccount(accountNumber);
 		if (account == null) {
-			throw new StatusChangeException(String.format(ACCOUNT_DOES_NOT_EXIST, accountId));
+			return StatusChangeOutcome.ACCOUNT_MISSING;
 		}
 		account.setBlocked(status);
-		return account;
+		return StatusChangeOutcome.COMPLETED;
 	}
 }
@@ -0,0 +1,226 @@
+package com.db.awmd.challenge.service;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.db.awmd.challenge.domain.Account;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@link NotificationService} which queues notifications and delivers them
+ * through the wrapped service on background workers, so that a transfer
+ * returns as soon as it is committed.
+ *
+ * Every account is served by one worker, chosen by the hash of its id, so the
+ * notifications of an account keep their order. A worker drains up to
+ * maxBatch queued notifications at a time and hands the ones of the same
+ * account to the wrapped service as one notification, one description per
+ * line. Each worker has a bounded queue; when it is full the
+ * {@link Backpressure} policy decides what happens to a new notification.
+ */
+@Slf4j
+public class AsyncNotificationService implements NotificationService, Closeable {
+
+	public enum Backpressure {
+		/** the caller waits for room in the queue */
+		BLOCK,
+		/** the notification is dropped and counted */
+		DROP,
+		/** the caller delivers the notification itself, ahead of the queued ones */
+		CALLER_RUNS
+	}
+
+	private static final long POLL_MS = 100;
+
+	private final NotificationService delegate;
+
+	private final Backpressure backpressure;
+
+	private final int maxBatch;
+
+	private final List<BlockingQueue<Notification>> queues = new ArrayList<>();
+
+	private final List<Thread> workers = new ArrayList<>();
+
+	private final LongAdder submitted = new LongAdder();
+
+	private final LongAdder delivered = new LongAdder();
+
+	private final LongAdder dropped = new LongAdder();
+
+	private final LongAdder failed = new LongAdder();
+
+	private final LongAdder batches = new LongAdder();
+
+	private volatile boolean running = true;
+
+	public AsyncNotificationService(NotificationService delegate, int workerCount, int queueCapacity, int maxBatch,
+			Backpressure backpressure) {
+		this.delegate = delegate;
+		this.backpressure = backpressure;
+		this.maxBatch = Math.max(1, maxBatch);
+		int count = Math.max(1, workerCount);
+		for (int i = 0; i < count; i++) {
+			BlockingQueue<Notification> queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity / count));
+			Thread worker = new Thread(() -> work(queue), "notification-" + i);
+			worker.setDaemon(true);
+			queues.add(queue);
+			workers.add(worker);
+			worker.start();
+		}
+	}
+
+	@Override
+	public void notifyAboutTransfer(Account account, String transferDescription) {
+		if (!running) {
+			deliver(account, transferDescription, 1);
+			return;
+		}
+		Notification notification = new Notification(account, transferDescription);
+		BlockingQueue<Notification> queue = queues.get(worker(account.getAccountId()));
+		if (queue.offer(notification)) {
+			submitted.increment();
+			return;
+		}
+		switch (backpressure) {
+		case BLOCK:
+			try {
+				queue.put(notification);
+				submitted.increment();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				dropped.increment();
+			}
+			break;
+		case CALLER_RUNS:
+			deliver(account, transferDescription, 1);
+			break;
+		default:
+			dropped.increment();
+		}
+	}
+
+	/**
+	 * Stops accepting notifications into the queues and waits for the workers
+	 * to deliver the queued ones.
+	 */
+	@Override
+	public void close() {
+		running = false;
+		for (Thread worker : workers) {
+			try {
+				worker.join(TimeUnit.SECONDS.toMillis(5));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	public int getQueueDepth() {
+		int depth = 0;
+		for (BlockingQueue<Notification> queue : queues) {
+			depth += queue.size();
+		}
+		return depth;
+	}
+
+	public long getSubmittedCount() {
+		return submitted.sum();
+	}
+
+	public long getDeliveredCount() {
+		return delivered.sum();
+	}
+
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	public long getFailedCount() {
+		return failed.sum();
+	}
+
+	/** calls of the wrapped service, each delivering one or more notifications */
+	public long getBatchCount() {
+		return batches.sum();
+	}
+
+	private void work(BlockingQueue<Notification> queue) {
+		List<Notification> batch = new ArrayList<>(maxBatch);
+		while (running || !queue.isEmpty()) {
+			try {
+				Notification first = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, maxBatch - 1);
+				deliver(batch);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	private void deliver(List<Notification> batch) {
+		Map<String, List<Notification>> byAccount = new LinkedHashMap<>();
+		for (Notification notification : batch) {
+			byAccount.computeIfAbsent(notification.account.getAccountId(), id -> new ArrayList<>()).add(notification);
+		}
+		for (List<Notification> notifications : byAccount.values()) {
+			Account account = notifications.get(0).account;
+			if (notifications.size() == 1) {
+				deliver(account, notifications.get(0).description, 1);
+				continue;
+			}
+			StringBuilder descriptions = new StringBuilder();
+			for (Notification notification : notifications) {
+				if (descriptions.length() > 0) {
+					descriptions.append('\n');
+				}
+				descriptions.append(notification.description);
+			}
+			deliver(account, descriptions.toString(), notifications.size());
+		}
+	}
+
+	private void deliver(Account account, String description, int count) {
+		batches.increment();
+		try {
+			delegate.notifyAboutTransfer(account, description);
+			delivered.add(count);
+		} catch (RuntimeException e) {
+			failed.add(count);
+			log.error("Notification to owner of {} failed", account.getAccountId(), e);
+		}
+	}
+
+	private int worker(String accountId) {
+		int h = accountId.hashCode();
+		return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % queues.size();
+	}
+
+	private static final class Notification {
+
+		private final Account account;
+
+		private final String description;
+
+		private Notification(Account account, String description) {
+			this.account = account;
+			this.description = description;
+		}
+	}
+}
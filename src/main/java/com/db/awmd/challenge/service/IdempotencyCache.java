@@ -0,0 +1,163 @@
+package com.db.awmd.challenge.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongSupplier;
+
+import com.db.awmd.challenge.domain.TransferOutcome;
+
+/**
+ * Remembers the outcome of transfers by their idempotency key, so that a
+ * retried request is answered with the original outcome instead of being
+ * applied again.
+ *
+ * The keys are spread over segments by hash. Each segment is a
+ * {@link LinkedHashMap} in insertion order, guarded by its own monitor, so a
+ * lookup is one hash probe under an uncontended lock. Entries expire ttlMs
+ * after they were added, as of the clock reading of the latest insert, and
+ * each segment holds at most its share of maxKeys; expired entries and, when
+ * the segment is full, the oldest ones are evicted on insert, so memory stays
+ * bounded however many keys pass through.
+ */
+public class IdempotencyCache {
+
+	private static final int SEGMENT_BITS = 6;
+
+	private static final int SEGMENTS = 1 << SEGMENT_BITS;
+
+	private final Segment[] segments = new Segment[SEGMENTS];
+
+	private final long ttlMs;
+
+	private final LongSupplier clock;
+
+	// clock reading of the latest insert; a known key is found without reading
+	// the clock, which costs more than the lookup itself on some machines
+	private volatile long now;
+
+	public IdempotencyCache(int maxKeys, long ttlMs) {
+		this(maxKeys, ttlMs, System::currentTimeMillis);
+	}
+
+	public IdempotencyCache(int maxKeys, long ttlMs, LongSupplier clock) {
+		this.ttlMs = ttlMs;
+		this.clock = clock;
+		int segmentCapacity = Math.max(1, maxKeys / SEGMENTS);
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(segmentCapacity);
+		}
+	}
+
+	/**
+	 * Adds the entry unless the key is already known, and returns the entry
+	 * already stored for the key, null if the given one was added.
+	 */
+	public Entry putIfAbsent(String key, Entry entry) {
+		Segment segment = segment(key);
+		Entry existing = segment.get(key, now);
+		if (existing != null) {
+			return existing;
+		}
+		long time = clock.getAsLong();
+		now = time;
+		entry.expiresAt = time + ttlMs;
+		return segment.putIfAbsent(key, entry, time);
+	}
+
+	/** Forgets the key if it still maps to the entry. */
+	public void remove(String key, Entry entry) {
+		segment(key).remove(key, entry);
+	}
+
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	private Segment segment(String key) {
+		// the top bits of a multiplicative hash, independent of the low bits the
+		// segment's HashMap picks its bucket with
+		return segments[(key.hashCode() * 0x9E3779B9) >>> (32 - SEGMENT_BITS)];
+	}
+
+	/**
+	 * A transfer seen under a key. Its outcome completes once the transfer
+	 * is applied or rejected.
+	 */
+	public static final class Entry {
+
+		private final String accountFrom;
+
+		private final String accountTo;
+
+		private final long amount;
+
+		private final CompletableFuture<TransferOutcome> outcome = new CompletableFuture<>();
+
+		private long expiresAt;
+
+		public Entry(String accountFrom, String accountTo, long amount) {
+			this.accountFrom = accountFrom;
+			this.accountTo = accountTo;
+			this.amount = amount;
+		}
+
+		/** whether a request with the same key asks for the same transfer */
+		public boolean matches(String accountFrom, String accountTo, long amount) {
+			return this.amount == amount && this.accountFrom.equals(accountFrom) && this.accountTo.equals(accountTo);
+		}
+
+		public CompletableFuture<TransferOutcome> getOutcome() {
+			return outcome;
+		}
+	}
+
+	private static final class Segment {
+
+		private final int capacity;
+
+		private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+		private Segment(int capacity) {
+			this.capacity = capacity;
+		}
+
+		private synchronized Entry get(String key, long now) {
+			Entry existing = entries.get(key);
+			return existing != null && existing.expiresAt > now ? existing : null;
+		}
+
+		private synchronized Entry putIfAbsent(String key, Entry entry, long now) {
+			Entry existing = entries.get(key);
+			if (existing != null && existing.expiresAt > now) {
+				return existing;
+			}
+			if (existing != null) {
+				entries.remove(key);
+			}
+			Iterator<Map.Entry<String, Entry>> oldest = entries.entrySet().iterator();
+			while (oldest.hasNext()) {
+				Entry candidate = oldest.next().getValue();
+				if (candidate.expiresAt > now && entries.size() < capacity) {
+					break;
+				}
+				oldest.remove();
+			}
+			entries.put(key, entry);
+			return null;
+		}
+
+		private synchronized void remove(String key, Entry entry) {
+			entries.remove(key, entry);
+		}
+
+		private synchronized int size() {
+			return entries.size();
+		}
+	}
+}
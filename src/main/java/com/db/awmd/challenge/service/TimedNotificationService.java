@@ -0,0 +1,29 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.metrics.LatencyHistogram;
+
+/**
+ * Records the latency of every call of the wrapped {@link NotificationService}.
+ */
+public class TimedNotificationService implements NotificationService {
+
+	private final NotificationService delegate;
+
+	private final LatencyHistogram latency;
+
+	public TimedNotificationService(NotificationService delegate, LatencyHistogram latency) {
+		this.delegate = delegate;
+		this.latency = latency;
+	}
+
+	@Override
+	public void notifyAboutTransfer(Account account, String transferDescription) {
+		long start = System.nanoTime();
+		try {
+			delegate.notifyAboutTransfer(account, transferDescription);
+		} finally {
+			latency.recordSince(start);
+		}
+	}
+}
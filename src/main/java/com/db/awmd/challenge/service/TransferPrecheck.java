@@ -0,0 +1,51 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferOutcome;
+import com.db.awmd.challenge.transaction.AccountStatusBitmap;
+
+/**
+ * Checks a transfer goes through before a transaction or an engine command
+ * is started for it. They read the current state of the accounts without a
+ * lock, so a transfer which fails one of them is rejected as of the moment of
+ * that read, without save points or locks; the blocked status is also read
+ * from the {@link AccountStatusBitmap}, which a block sets before its commit.
+ * A transfer which passes is still
+ * fully validated in its transaction.
+ */
+final class TransferPrecheck {
+
+	private TransferPrecheck() {
+	}
+
+	/**
+	 * Checks the accounts in the order the transaction would, so that a
+	 * transfer is rejected for the same reason either way, and returns
+	 * {@link TransferOutcome#COMPLETED} if it passes. The balance is only
+	 * checked if checkBalance is set; within a batch an earlier transfer may
+	 * still fund the source. The accounts are looked up by the caller, which
+	 * goes on with their numbers, and are null if missing.
+	 */
+	static TransferOutcome check(AccountStatusBitmap statuses, String fromAccount, Account from, String toAccount,
+			Account to, long amount, boolean checkBalance) {
+		if (fromAccount != null && fromAccount.equals(toAccount)) {
+			return TransferOutcome.SAME_ACCOUNT;
+		}
+		if (from == null) {
+			return TransferOutcome.SOURCE_MISSING;
+		}
+		if (checkBalance && from.getBalanceUnits() < amount) {
+			return TransferOutcome.SOURCE_INSUFFICIENT_BALANCE;
+		}
+		if (from.isBlocked() || statuses.isBlocked(from.getNumber())) {
+			return TransferOutcome.SOURCE_BLOCKED;
+		}
+		if (to == null) {
+			return TransferOutcome.TARGET_MISSING;
+		}
+		if (to.isBlocked() || statuses.isBlocked(to.getNumber())) {
+			return TransferOutcome.TARGET_BLOCKED;
+		}
+		return TransferOutcome.COMPLETED;
+	}
+}
@@ -0,0 +1,154 @@
+package com.db.awmd.challenge.statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceStatistics;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.domain.StripedBalance;
+import com.db.awmd.challenge.repository.AccountsRepository;
+
+/**
+ * Aggregates over all accounts which every commit keeps up to date, so that
+ * reading them takes constant time instead of a walk over the repository:
+ * the number of accounts, of blocked accounts, the total balance and a
+ * histogram of balances by decade. All of them are striped
+ * {@link LongAdder}s, concurrent commits rarely contend on them.
+ *
+ * Transfers only move money, so the total balance equals the balance the
+ * accounts were created with. The difference is a live invariant check: it
+ * is zero at rest, and otherwise only while commits are applied or a
+ * transfer is between shards of the sharded engine.
+ *
+ * Hot accounts are credited concurrently, so no commit knows their balance
+ * before and after its change; they count towards the totals as the others
+ * do, but their histogram buckets are looked up when the summary is taken.
+ */
+public class AccountStatistics {
+
+	// bucket 0 holds empty balances, bucket i those from 10^(i-1) minor units
+	private static final int BUCKETS = 20;
+
+	private static final long[] LOWER_BOUNDS = new long[BUCKETS];
+
+	static {
+		LOWER_BOUNDS[1] = 1;
+		for (int i = 2; i < BUCKETS; i++) {
+			LOWER_BOUNDS[i] = LOWER_BOUNDS[i - 1] * 10;
+		}
+	}
+
+	private final LongAdder accounts = new LongAdder();
+
+	private final LongAdder blocked = new LongAdder();
+
+	private final LongAdder totalBalance = new LongAdder();
+
+	private final LongAdder createdBalance = new LongAdder();
+
+	private final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+	private final List<StripedBalance> hotBalances = new CopyOnWriteArrayList<>();
+
+	public AccountStatistics() {
+		for (int i = 0; i < BUCKETS; i++) {
+			histogram[i] = new LongAdder();
+		}
+	}
+
+	public void created(Account account) {
+		if (account.getStripes() == null) {
+			created(account.getBalanceUnits(), account.isBlocked());
+			return;
+		}
+		hotBalances.add(account.getStripes());
+		accounts.increment();
+		createdBalance.add(account.getBalanceUnits());
+		changedHot(account.getBalanceUnits(), false, account.isBlocked());
+	}
+
+	public void created(long balanceUnits, boolean isBlocked) {
+		accounts.increment();
+		createdBalance.add(balanceUnits);
+		totalBalance.add(balanceUnits);
+		histogram[bucket(balanceUnits)].increment();
+		if (isBlocked) {
+			blocked.increment();
+		}
+	}
+
+	public void changed(long oldBalanceUnits, boolean wasBlocked, long balanceUnits, boolean isBlocked) {
+		if (oldBalanceUnits != balanceUnits) {
+			totalBalance.add(balanceUnits - oldBalanceUnits);
+			int from = bucket(oldBalanceUnits);
+			int to = bucket(balanceUnits);
+			if (from != to) {
+				histogram[from].decrement();
+				histogram[to].increment();
+			}
+		}
+		if (wasBlocked != isBlocked) {
+			blocked.add(isBlocked ? 1 : -1);
+		}
+	}
+
+	/**
+	 * Notes a change of a hot account by its difference only.
+	 */
+	public void changedHot(long deltaUnits, boolean wasBlocked, boolean isBlocked) {
+		totalBalance.add(deltaUnits);
+		if (wasBlocked != isBlocked) {
+			blocked.add(isBlocked ? 1 : -1);
+		}
+	}
+
+	/**
+	 * Recounts all accounts of the repository, which nothing may change
+	 * meanwhile; used after accounts were loaded around the commits.
+	 */
+	public void rebuild(AccountsRepository repository) {
+		accounts.reset();
+		blocked.reset();
+		totalBalance.reset();
+		createdBalance.reset();
+		for (LongAdder bucket : histogram) {
+			bucket.reset();
+		}
+		hotBalances.clear();
+		repository.forEachAccount(this::created);
+	}
+
+	public long getImbalanceUnits() {
+		return totalBalance.sum() - createdBalance.sum();
+	}
+
+	public BalanceStatistics summary() {
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = histogram[i].sum();
+		}
+		for (StripedBalance hot : hotBalances) {
+			counts[bucket(hot.sum())]++;
+		}
+		List<BalanceStatistics.Bucket> buckets = new ArrayList<>(BUCKETS);
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.add(new BalanceStatistics.Bucket(Money.toBigDecimal(LOWER_BOUNDS[i]),
+					i + 1 < BUCKETS ? Money.toBigDecimal(LOWER_BOUNDS[i + 1]) : null, counts[i]));
+		}
+		long total = totalBalance.sum();
+		long created = createdBalance.sum();
+		return new BalanceStatistics(accounts.sum(), blocked.sum(), Money.toBigDecimal(total),
+				Money.toBigDecimal(created), Money.toBigDecimal(total - created), buckets);
+	}
+
+	static int bucket(long balanceUnits) {
+		int bucket = 0;
+		while (bucket + 1 < BUCKETS && balanceUnits >= LOWER_BOUNDS[bucket + 1]) {
+			bucket++;
+		}
+		return bucket;
+	}
+}
@@ -0,0 +1,164 @@
+package com.db.awmd.challenge.transaction;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Striped locks keyed by account number, or by account id for accounts which
+ * are being created and have no number yet.
+ *
+ * Stripes are always acquired in ascending stripe order, so transactions which
+ * touch overlapping accounts can never deadlock, and transactions on accounts
+ * mapped to different stripes never wait on each other. Numbers are dense, so
+ * the first accounts up to the stripe count all get a stripe of their own.
+ * Ids and numbers of one account map to different stripes: id locks only
+ * serialize the creation of accounts with the same id.
+ *
+ * Creations also hold the creation lock shared, from their journal record
+ * until the account is in the repository; a snapshot holds it exclusively
+ * while it rolls the journal, so it finds every account created in the
+ * segments it retires.
+ */
+public class AccountLockManager {
+
+	public static final int DEFAULT_STRIPES = 4096;
+
+	private final ReentrantLock[] stripes;
+
+	private final int mask;
+
+	private final ReadWriteLock creationLock = new ReentrantReadWriteLock();
+
+	public AccountLockManager() {
+		this(DEFAULT_STRIPES);
+	}
+
+	public AccountLockManager(int stripeCount) {
+		int size = 1;
+		while (size < stripeCount) {
+			size <<= 1;
+		}
+		this.stripes = new ReentrantLock[size];
+		for (int i = 0; i < size; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+		this.mask = size - 1;
+	}
+
+	public int getStripeCount() {
+		return stripes.length;
+	}
+
+	public ReadWriteLock getCreationLock() {
+		return creationLock;
+	}
+
+	/**
+	 * Like {@link #doWithLocks(TransactionCallback, String...)}, holding the
+	 * creation lock shared; taken before the stripes, so that a snapshot
+	 * waiting for it holds up no transaction.
+	 */
+	public void doCreation(TransactionCallback callback, String... accountIds) {
+		creationLock.readLock().lock();
+		try {
+			doWithLocks(callback, accountIds);
+		} finally {
+			creationLock.readLock().unlock();
+		}
+	}
+
+	public void doWithLocks(TransactionCallback callback, String... accountIds) {
+		int[] locked = acquire(accountIds);
+		try {
+			callback.process();
+		} finally {
+			release(locked);
+		}
+	}
+
+	/**
+	 * Locks the stripes of the given accounts in order and returns them, to be
+	 * handed back to {@link #release(int[])}.
+	 */
+	public int[] acquire(String... accountIds) {
+		int[] ordered = orderedStripes(accountIds);
+		for (int i = 0; i < ordered.length; i++) {
+			stripes[ordered[i]].lock();
+		}
+		return ordered;
+	}
+
+	/**
+	 * Locks the stripes of the accounts with the given numbers in order, like
+	 * {@link #acquire(String...)}.
+	 */
+	public int[] acquire(int... numbers) {
+		int[] ordered = new int[numbers.length];
+		for (int i = 0; i < numbers.length; i++) {
+			ordered[i] = numbers[i] & mask;
+		}
+		ordered = distinct(ordered);
+		for (int i = 0; i < ordered.length; i++) {
+			stripes[ordered[i]].lock();
+		}
+		return ordered;
+	}
+
+	/**
+	 * Locks the stripes of two accounts in order, like
+	 * {@link #acquire(int...)}, into the given buffer of at least two and
+	 * returns how many it holds, to be handed back to
+	 * {@link #release(int[], int)}. Allocates nothing.
+	 */
+	public int acquire(int first, int second, int[] locked) {
+		int low = Math.min(first & mask, second & mask);
+		int high = Math.max(first & mask, second & mask);
+		locked[0] = low;
+		locked[1] = high;
+		int count = low == high ? 1 : 2;
+		for (int i = 0; i < count; i++) {
+			stripes[locked[i]].lock();
+		}
+		return count;
+	}
+
+	public void release(int[] lockedStripes) {
+		release(lockedStripes, lockedStripes.length);
+	}
+
+	public void release(int[] lockedStripes, int count) {
+		for (int i = count - 1; i >= 0; i--) {
+			stripes[lockedStripes[i]].unlock();
+		}
+	}
+
+	int stripeOf(String accountId) {
+		if (accountId == null) {
+			return 0;
+		}
+		int h = accountId.hashCode();
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	private int[] orderedStripes(String... accountIds) {
+		int[] result = new int[accountIds.length];
+		for (int i = 0; i < accountIds.length; i++) {
+			result[i] = stripeOf(accountIds[i]);
+		}
+		return distinct(result);
+	}
+
+	private static int[] distinct(int[] result) {
+		Arrays.sort(result);
+		// drop duplicates, a stripe is locked only once per transaction
+		int distinct = 0;
+		for (int i = 0; i < result.length; i++) {
+			if (distinct == 0 || result[distinct - 1] != result[i]) {
+				result[distinct++] = result[i];
+			}
+		}
+		return distinct == result.length ? result : Arrays.copyOf(result, distinct);
+	}
+}
@@ -0,0 +1,99 @@
+package com.db.awmd.challenge.transaction;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.db.awmd.challenge.repository.AccountsRepository;
+
+/**
+ * Blocked status of every account as one bit, indexed by the account number
+ * the repository hands out. Bits are set and cleared with a compare and set
+ * of their word, so freezing thousands of accounts takes no lock and never
+ * waits for a transfer; transfers read the bit instead of the flag of their
+ * save point copy.
+ *
+ * The bitmap leads the committed flag of the accounts: a block sets the bit
+ * before it commits the flag, an unblock clears it after, so a set bit covers
+ * every account whose committed flag is set. The bits are kept in segments
+ * which are added as account numbers grow and never move.
+ */
+public class AccountStatusBitmap {
+
+	private static final int SEGMENT_BITS = 16;
+
+	private static final int WORDS_PER_SEGMENT = 1 << (SEGMENT_BITS - 6);
+
+	private volatile AtomicLongArray[] segments = new AtomicLongArray[0];
+
+	public boolean isBlocked(int number) {
+		AtomicLongArray[] current = segments;
+		int segment = number >>> SEGMENT_BITS;
+		if (number < 0 || segment >= current.length) {
+			return false;
+		}
+		return (current[segment].get(word(number)) & bit(number)) != 0;
+	}
+
+	/**
+	 * Sets or clears the bit and returns whether it changed.
+	 */
+	public boolean set(int number, boolean blocked) {
+		if (number < 0) {
+			// not stored in a repository
+			return false;
+		}
+		AtomicLongArray words = segment(number);
+		int word = word(number);
+		long bit = bit(number);
+		for (;;) {
+			long current = words.get(word);
+			long next = blocked ? current | bit : current & ~bit;
+			if (current == next) {
+				return false;
+			}
+			if (words.compareAndSet(word, current, next)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Sets the bits from the committed flags of all accounts in the
+	 * repository, which nothing may change meanwhile; used after accounts were
+	 * loaded around the commits.
+	 */
+	public void rebuild(AccountsRepository repository) {
+		synchronized (this) {
+			segments = new AtomicLongArray[0];
+		}
+		repository.forEachAccount(account -> set(account.getNumber(), account.isBlocked()));
+	}
+
+	private AtomicLongArray segment(int number) {
+		int segment = number >>> SEGMENT_BITS;
+		AtomicLongArray[] current = segments;
+		if (segment < current.length) {
+			return current[segment];
+		}
+		synchronized (this) {
+			current = segments;
+			if (segment >= current.length) {
+				AtomicLongArray[] grown = Arrays.copyOf(current, segment + 1);
+				for (int i = current.length; i < grown.length; i++) {
+					grown[i] = new AtomicLongArray(WORDS_PER_SEGMENT);
+				}
+				segments = grown;
+				current = grown;
+			}
+			return current[segment];
+		}
+	}
+
+	private static int word(int number) {
+		return (number >>> 6) & (WORDS_PER_SEGMENT - 1);
+	}
+
+	private static long bit(int number) {
+		return 1L << (number & 63);
+	}
+}
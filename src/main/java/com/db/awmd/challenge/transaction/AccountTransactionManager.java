@@ -1,12 +1,29 @@
 package com.db.awmd.challenge.transaction;
 
-import java.lang.reflect.Proxy;
-import java.util.Map;
+import static com.db.awmd.challenge.constant.MessageConstants.ACCOUNT_ALREADY_EXIST;
+import static com.db.awmd.challenge.constant.MessageConstants.TRANSACTION_CONFLICT;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.StripedBalance;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.TransactionConflictException;
+import com.db.awmd.challenge.journal.TransactionJournal;
+import com.db.awmd.challenge.ledger.AccountLedger;
+import com.db.awmd.challenge.metrics.LatencyHistogram;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
 import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.statistics.AccountStatistics;
 
 import lombok.Getter;
+import lombok.Setter;
 
 /**
  * @author 
@@ -17,27 +34,92 @@ public class AccountTransactionManager {
 
 	private final AccountsRepository accountsRepository;
 	
-	private TransactionInvocationHandler<Account> handler;
-	
 	@Getter
 	private boolean autoCommit = false;
 	
 	@Getter
-	private AccountsRepository repoProxy;
+	private TransactionalAccountsRepository repoProxy;
+	
+	@Getter
+	private final AccountLockManager lockManager;
+	
+	@Getter
+	private final TransactionMode mode;
+	
+	private final int maxRetries;
+	
+	private final LongAdder retries = new LongAdder();
+	
+	private final LongAdder aborts = new LongAdder();
+	
+	@Getter
+	@Setter
+	private TransactionJournal journal;
+	
+	@Getter
+	@Setter
+	private AccountLedger ledger;
+	
+	@Getter
+	private final VersionClock clock;
+	
+	@Getter
+	private final AccountStatistics statistics = new AccountStatistics();
+	
+	@Getter
+	private final AccountStatusBitmap statuses = new AccountStatusBitmap();
+	
+	// ids of the accounts created with a StripedBalance
+	private Set<String> hotAccounts = Collections.emptySet();
+	
+	private int hotStripes;
+	
+	private LatencyHistogram doInTransactionLatency = new LatencyHistogram();
+	
+	private LatencyHistogram commitLatency = new LatencyHistogram();
+	
+	private LatencyHistogram rollBackLatency = new LatencyHistogram();
 	
 	public AccountTransactionManager(AccountsRepository repository){
+		this(repository, new AccountLockManager());
+	}
+	
+	public AccountTransactionManager(AccountsRepository repository, AccountLockManager lockManager){
+		this(repository, lockManager, TransactionMode.PESSIMISTIC, 0);
+	}
+	
+	public AccountTransactionManager(AccountsRepository repository, AccountLockManager lockManager,
+			TransactionMode mode, int maxRetries){
+		this(repository, lockManager, mode, maxRetries, new VersionClock());
+	}
+	
+	public AccountTransactionManager(AccountsRepository repository, AccountLockManager lockManager,
+			TransactionMode mode, int maxRetries, VersionClock clock){
 		this.accountsRepository = repository;
+		this.lockManager = lockManager;
+		this.mode = mode;
+		this.maxRetries = maxRetries;
+		this.clock = clock;
 		
-		handler = new TransactionInvocationHandler<Account>(accountsRepository);
-		repoProxy = (AccountsRepository)Proxy.newProxyInstance(AccountsRepository.class.getClassLoader()
-				, new Class[] { AccountsRepository.class }, handler);
+		repoProxy = new TransactionalAccountsRepository(accountsRepository);
 		
 	}
 	
+	/**
+	 * Records the latencies of doInTransaction, commit and rollBack and the
+	 * optimistic retry and abort counts in the given registry.
+	 */
+	public void setMetrics(MetricsRegistry metrics) {
+		doInTransactionLatency = metrics.histogram("transaction.doInTransaction");
+		commitLatency = metrics.histogram("transaction.commit");
+		rollBackLatency = metrics.histogram("transaction.rollBack");
+		metrics.gauge("transaction.retries", this::getRetryCount);
+		metrics.gauge("transaction.aborts", this::getAbortCount);
+	}
+	
 	public void doInTransaction(TransactionCallback callback) {
-		TransactionContext<Account, Account> context = new TransactionContext<>();
-		ThreadLocal<TransactionContext<Account, Account>> localContext = handler.getLocalContext();
-		localContext.set(context);
+		long start = System.nanoTime();
+		repoProxy.getContext().begin();
 		try {
 			callback.process();
 			if(autoCommit) {
@@ -47,28 +129,396 @@ public class AccountTransactionManager {
 			rollBack();
 			throw e;
 		}finally {
-			
+			doInTransactionLatency.recordSince(start);
 		}
 		
 	}
 	
 	
+	/**
+	 * Runs the callback in a transaction and commits it. In pessimistic mode the
+	 * locks of the given accounts are held for the whole transaction; in
+	 * optimistic mode only the commit is locked and the callback is retried when
+	 * another transaction committed one of its accounts in between.
+	 */
+	public void executeInTransaction(TransactionCallback callback, String... accountIds) {
+		executeInTransaction(TransactionEvent.TRANSFER, callback, accountIds);
+	}
+	
+	public void executeInTransaction(TransactionEvent event, TransactionCallback callback, String... accountIds) {
+		if (mode == TransactionMode.OPTIMISTIC) {
+			executeOptimistic(event, callback);
+			return;
+		}
+		int[] locked = lockManager.acquire(numbersOf(accountIds));
+		try {
+			doInTransaction(callback);
+			repoProxy.getContext().setEvent(event);
+			commit();
+		} finally {
+			lockManager.release(locked);
+		}
+	}
+	
+	/**
+	 * Runs the function in a transaction, like
+	 * {@link #executeInTransaction(TransactionEvent, TransactionCallback, String...)},
+	 * and commits it if the function returns the committed outcome. Any other
+	 * outcome rolls the transaction back and is returned, so that expected
+	 * rejections need no exception.
+	 */
+	public <R> R executeInTransaction(TransactionEvent event, TransactionFunction<R> function, R committed,
+			String... accountIds) {
+		return executeInTransaction(event, function, committed, numbersOf(accountIds));
+	}
+	
+	/**
+	 * Like {@link #executeInTransaction(TransactionEvent, TransactionFunction, Object, String...)},
+	 * for accounts already resolved to their numbers, see
+	 * {@link TransactionalAccountsRepository#getAccount(int)}.
+	 */
+	public <R> R executeInTransaction(TransactionEvent event, TransactionFunction<R> function, R committed,
+			int... numbers) {
+		if (mode == TransactionMode.OPTIMISTIC) {
+			return executeOptimistic(event, function, committed);
+		}
+		int[] locked = lockManager.acquire(numbers);
+		try {
+			return commitIf(event, function, committed);
+		} finally {
+			lockManager.release(locked);
+		}
+	}
+	
+	/**
+	 * Runs a transfer between the accounts with the given numbers like
+	 * {@link #executeInTransaction(TransactionEvent, TransactionFunction, Object, int...)},
+	 * without allocating: the function is bound to its arguments by the
+	 * transaction context, which also holds the locked stripes and reuses the
+	 * save point copies. The target is only locked if lockTarget is set.
+	 */
+	public <R> R executeTransfer(TransferFunction<R> function, int fromNumber, int toNumber, boolean lockTarget,
+			long amount, R committed) {
+		TransactionContext<Account, Account> context = repoProxy.getContext();
+		TransactionFunction<R> transfer = context.bind(function, fromNumber, toNumber, amount);
+		if (mode == TransactionMode.OPTIMISTIC) {
+			return executeOptimistic(TransactionEvent.TRANSFER, transfer, committed);
+		}
+		int[] locked = context.getLockedStripes();
+		int count = lockManager.acquire(fromNumber, lockTarget ? toNumber : fromNumber, locked);
+		try {
+			return commitIf(TransactionEvent.TRANSFER, transfer, committed);
+		} finally {
+			lockManager.release(locked, count);
+		}
+	}
+	
+	private <R> R commitIf(TransactionEvent event, TransactionFunction<R> function, R committed) {
+		R outcome = doInTransaction(function);
+		if (outcome == committed) {
+			repoProxy.getContext().setEvent(event);
+			commit();
+		} else {
+			rollBack();
+		}
+		return outcome;
+	}
+	
+	// accounts which do not exist are not locked, the transaction finds them missing
+	private int[] numbersOf(String... accountIds) {
+		int[] numbers = new int[accountIds.length];
+		int found = 0;
+		for (String accountId : accountIds) {
+			Account account = accountId == null ? null : accountsRepository.getAccount(accountId);
+			if (account != null) {
+				numbers[found++] = account.getNumber();
+			}
+		}
+		return found == numbers.length ? numbers : Arrays.copyOf(numbers, found);
+	}
+	
+	private <R> R doInTransaction(TransactionFunction<R> function) {
+		long start = System.nanoTime();
+		repoProxy.getContext().begin();
+		try {
+			return function.process();
+		} catch (RuntimeException | Error e) {
+			rollBack();
+			throw e;
+		} finally {
+			doInTransactionLatency.recordSince(start);
+		}
+	}
+	
+	private <R> R executeOptimistic(TransactionEvent event, TransactionFunction<R> function, R committed) {
+		for (int attempt = 0;; attempt++) {
+			R outcome = doInTransaction(function);
+			if (outcome != committed) {
+				rollBack();
+				return outcome;
+			}
+			repoProxy.getContext().setEvent(event);
+			if (tryCommit()) {
+				return outcome;
+			}
+			if (attempt >= maxRetries) {
+				aborts.increment();
+				throw new TransactionConflictException(String.format(TRANSACTION_CONFLICT, attempt + 1));
+			}
+			retries.increment();
+		}
+	}
+	
+	/**
+	 * Makes the given accounts hot once they are created: their balance is
+	 * kept in a {@link StripedBalance} of the given number of stripes, and
+	 * {@link #creditHot(Account, long)} credits them without their lock.
+	 */
+	public void setHotAccounts(Set<String> accountIds, int stripes) {
+		this.hotAccounts = new HashSet<>(accountIds);
+		this.hotStripes = stripes;
+	}
+	
+	public boolean isHot(String accountId) {
+		return !hotAccounts.isEmpty() && hotAccounts.contains(accountId);
+	}
+	
+	/**
+	 * Credits a hot account in the current transaction although the
+	 * transaction does not hold its lock: the credit is reserved on a stripe
+	 * of its balance now and added on commit. Returns false, reserving
+	 * nothing, if the account is blocked.
+	 */
+	public boolean creditHot(Account account, long amount) {
+		int stripe = account.getStripes().reserve();
+		if (stripe < 0) {
+			return false;
+		}
+		repoProxy.getContext().getCredits().add(account, stripe, amount);
+		return true;
+	}
+	
+	/**
+	 * Notes a transfer of the current transaction, with the balances it left,
+	 * for the ledger. It is recorded when the transaction commits.
+	 */
+	public void post(String fromAccount, String toAccount, long amount, long fromBalance, long toBalance) {
+		if (ledger != null) {
+			repoProxy.getContext().getPostings().add(fromAccount, toAccount, amount, fromBalance, toBalance);
+		}
+	}
+	
+	/**
+	 * Creates the account under the lock of its id, which serializes creations
+	 * of the same id, and the creation lock shared. The journal record and the
+	 * statistics are written before the account is visible, so they precede
+	 * any transaction on it. The creation takes an epoch of the clock, snapshot
+	 * readers of an earlier epoch do not see the account.
+	 */
+	public void createAccount(Account account) {
+		lockManager.doCreation(() -> {
+			if (accountsRepository.getAccount(account.getAccountId()) != null) {
+				throw new DuplicateAccountIdException(String.format(ACCOUNT_ALREADY_EXIST, account.getAccountId()));
+			}
+			stripeIfHot(account);
+			if (journal != null) {
+				journal.append(TransactionEvent.CREATE, Collections.singletonList(account));
+			}
+			long epoch = clock.begin();
+			try {
+				statistics.created(account);
+				accountsRepository.createAccount(account);
+				clock.created(epoch, accountsRepository.getAccount(account.getNumber()));
+				statuses.set(account.getNumber(), account.isBlocked());
+			} finally {
+				clock.publish(epoch);
+			}
+		}, account.getAccountId());
+	}
+	
+	/**
+	 * Creates the accounts under one acquisition of their locks and journals
+	 * them as one record. Returns the ids which already existed, all other
+	 * accounts are created.
+	 */
+	public List<String> createAccounts(List<Account> accounts) {
+		String[] accountIds = new String[accounts.size()];
+		for (int i = 0; i < accountIds.length; i++) {
+			accountIds[i] = accounts.get(i).getAccountId();
+		}
+		List<String> duplicates = new ArrayList<>();
+		lockManager.doCreation(() -> {
+			List<Account> created = new ArrayList<>(accounts.size());
+			Set<String> createdIds = new HashSet<>();
+			for (Account account : accounts) {
+				if (accountsRepository.getAccount(account.getAccountId()) != null
+						|| !createdIds.add(account.getAccountId())) {
+					duplicates.add(account.getAccountId());
+				} else {
+					created.add(account);
+				}
+			}
+			if (journal != null && !created.isEmpty()) {
+				journal.append(TransactionEvent.CREATE, created);
+			}
+			long epoch = clock.begin();
+			try {
+				for (Account account : created) {
+					stripeIfHot(account);
+					statistics.created(account);
+					accountsRepository.createAccount(account);
+					clock.created(epoch, accountsRepository.getAccount(account.getNumber()));
+					statuses.set(account.getNumber(), account.isBlocked());
+				}
+			} finally {
+				clock.publish(epoch);
+			}
+		}, accountIds);
+		return duplicates;
+	}
+	
+	private void stripeIfHot(Account account) {
+		if (isHot(account.getAccountId()) && account.getStripes() == null) {
+			account.setStripes(new StripedBalance(account.getBalanceUnits(), account.isBlocked(), hotStripes));
+		}
+	}
+	
+	private void executeOptimistic(TransactionEvent event, TransactionCallback callback) {
+		for (int attempt = 0;; attempt++) {
+			doInTransaction(callback);
+			repoProxy.getContext().setEvent(event);
+			if (tryCommit()) {
+				return;
+			}
+			if (attempt >= maxRetries) {
+				aborts.increment();
+				throw new TransactionConflictException(String.format(TRANSACTION_CONFLICT, attempt + 1));
+			}
+			retries.increment();
+		}
+	}
+	
+	/**
+	 * Validates the version of every save point and applies them all under the
+	 * account locks, or applies nothing if any of them is stale.
+	 */
+	private boolean tryCommit() {
+		TransactionContext<Account, Account> context = repoProxy.getContext();
+		int size = context.size();
+		if (size == 1 || size == 2) {
+			// a transfer, locked into the buffer of the context
+			int[] locked = context.getLockedStripes();
+			int count = lockManager.acquire(context.getNumber(0), context.getNumber(size - 1), locked);
+			try {
+				return validateAndCommit(context);
+			} finally {
+				lockManager.release(locked, count);
+			}
+		}
+		int[] numbers = new int[size];
+		for (int i = 0; i < numbers.length; i++) {
+			numbers[i] = context.getNumber(i);
+		}
+		int[] locked = lockManager.acquire(numbers);
+		try {
+			return validateAndCommit(context);
+		} finally {
+			lockManager.release(locked);
+		}
+	}
+	
+	private boolean validateAndCommit(TransactionContext<Account, Account> context) {
+		for (int i = 0; i < context.size(); i++) {
+			if (context.getCopy(i).getVersion() != context.getOriginal(i).getVersion()) {
+				context.reset();
+				return false;
+			}
+		}
+		commit();
+		return true;
+	}
+	
 	public void commit() {
-		TransactionContext<Account, Account> localContext = handler.getLocalContext().get();
-		Map<Account, Account> savePoints = localContext.getSavePoints();
-		// swap save points value to repository 
-		savePoints.entrySet().forEach(entry -> {
-			Account key = entry.getKey();
-			Account value = entry.getValue();
-			value.setBalance(key.getBalance());
-			value.setBlocked(key.isBlocked());
-		});
+		long start = System.nanoTime();
+		TransactionContext<Account, Account> localContext = repoProxy.getContext();
+		int size = localContext.size();
+		if (journal != null && size > 0) {
+			// write ahead: the record is appended before the repository changes
+			journal.append(localContext.getEvent(), localContext.getCopies());
+		}
+		for (int i = 0; i < size; i++) {
+			StripedBalance stripes = localContext.getOriginal(i).getStripes();
+			if (stripes == null) {
+				clock.history(localContext.getOriginal(i));
+			} else if (stripes.isBlocked() != localContext.getCopy(i).isBlocked()) {
+				// before the epoch is taken, blocking waits for reserved credits
+				stripes.setBlocked(localContext.getCopy(i).isBlocked());
+			}
+		}
+		long epoch = clock.begin();
+		try {
+			// swap save points value to repository 
+			for (int i = 0; i < size; i++) {
+				Account key = localContext.getCopy(i);
+				Account value = localContext.getOriginal(i);
+				boolean unblocked = value.isBlocked() && !key.isBlocked();
+				if (key.isBlocked() && !value.isBlocked()) {
+					// the status bit leads the committed flag
+					statuses.set(value.getNumber(), true);
+				}
+				if (value.getStripes() != null) {
+					// apply the difference, credits landed since the save point was taken
+					long delta = key.getBalanceUnits() - localContext.getBase(i);
+					value.getStripes().add(delta);
+					statistics.changedHot(delta, value.isBlocked(), key.isBlocked());
+					value.setBlocked(key.isBlocked());
+					value.setVersion(value.getVersion() + 1);
+					if (unblocked) {
+						statuses.set(value.getNumber(), false);
+					}
+					continue;
+				}
+				statistics.changed(value.getBalanceUnits(), value.isBlocked(), key.getBalanceUnits(), key.isBlocked());
+				value.setBalanceUnits(key.getBalanceUnits());
+				value.setBlocked(key.isBlocked());
+				// publish the new state to optimistic readers
+				value.setVersion(value.getVersion() + 1);
+				clock.addVersion(epoch, value);
+				if (unblocked) {
+					statuses.set(value.getNumber(), false);
+				}
+			}
+		} finally {
+			// and to snapshot readers
+			clock.publish(epoch);
+		}
+		StripedCredits credits = localContext.getCredits();
+		for (int i = 0; i < credits.size(); i++) {
+			credits.apply(i);
+			statistics.changedHot(credits.amount(i), false, false);
+		}
+		credits.clear();
+		if (ledger != null && localContext.getPostings().size() > 0) {
+			// still under the account locks, so entries of an account are queued in commit order
+			ledger.record(localContext.getPostings());
+		}
+		localContext.reset();
+		commitLatency.recordSince(start);
 	}
 	
 	public void rollBack() {
 		// Destroy Save points within same transactional context
-		TransactionContext<Account, Account> localContext = handler.getLocalContext().get();
-		localContext.getSavePoints().clear();
+		long start = System.nanoTime();
+		repoProxy.getContext().reset();
+		rollBackLatency.recordSince(start);
+	}
+	
+	public long getRetryCount() {
+		return retries.sum();
+	}
+	
+	public long getAbortCount() {
+		return aborts.sum();
 	}
 	
 	
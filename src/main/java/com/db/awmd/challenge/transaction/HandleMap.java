@@ -0,0 +1,79 @@
+package com.db.awmd.challenge.transaction;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing map from account numbers to values, for the lookups by
+ * number in large transactions. Keys are not boxed. Numbers must not be
+ * negative.
+ */
+class HandleMap<V> {
+
+	// -1 marks a free slot
+	private int[] keys = new int[0];
+
+	private Object[] values = new Object[0];
+
+	private int size;
+
+	@SuppressWarnings("unchecked")
+	V get(int number) {
+		if (size == 0) {
+			return null;
+		}
+		int mask = keys.length - 1;
+		for (int i = mix(number) & mask;; i = (i + 1) & mask) {
+			int key = keys[i];
+			if (key == number) {
+				return (V) values[i];
+			}
+			if (key < 0) {
+				return null;
+			}
+		}
+	}
+
+	void put(int number, V value) {
+		if ((size + 1) * 2 > keys.length) {
+			grow();
+		}
+		if (insert(keys, values, number, value)) {
+			size++;
+		}
+	}
+
+	private void grow() {
+		int capacity = Math.max(8, keys.length * 2);
+		int[] grownKeys = new int[capacity];
+		Object[] grownValues = new Object[capacity];
+		Arrays.fill(grownKeys, -1);
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] >= 0) {
+				insert(grownKeys, grownValues, keys[i], values[i]);
+			}
+		}
+		keys = grownKeys;
+		values = grownValues;
+	}
+
+	// returns whether the key was added rather than replaced
+	private static boolean insert(int[] keys, Object[] values, int number, Object value) {
+		int mask = keys.length - 1;
+		for (int i = mix(number) & mask;; i = (i + 1) & mask) {
+			if (keys[i] == number) {
+				values[i] = value;
+				return false;
+			}
+			if (keys[i] < 0) {
+				keys[i] = number;
+				values[i] = value;
+				return true;
+			}
+		}
+	}
+
+	// spreads the high bits of far apart numbers into the slot index
+	private static int mix(int number) {
+		return number * 0x9E3779B9 >>> 16 ^ number;
+	}
+}
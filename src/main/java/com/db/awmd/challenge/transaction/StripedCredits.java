@@ -0,0 +1,65 @@
+package com.db.awmd.challenge.transaction;
+
+import java.util.Arrays;
+
+import com.db.awmd.challenge.domain.Account;
+
+/**
+ * Credits of a transaction to hot accounts, each reserved on a stripe of the
+ * account's {@link com.db.awmd.challenge.domain.StripedBalance} and added to
+ * it on commit. The arrays are allocated with the first credit, so
+ * transactions without them cost nothing.
+ */
+class StripedCredits {
+
+	private Account[] accounts;
+
+	private int[] stripes;
+
+	private long[] amounts;
+
+	private int size;
+
+	void add(Account account, int stripe, long amount) {
+		if (accounts == null) {
+			accounts = new Account[2];
+			stripes = new int[2];
+			amounts = new long[2];
+		} else if (size == accounts.length) {
+			accounts = Arrays.copyOf(accounts, size * 2);
+			stripes = Arrays.copyOf(stripes, size * 2);
+			amounts = Arrays.copyOf(amounts, size * 2);
+		}
+		accounts[size] = account;
+		stripes[size] = stripe;
+		amounts[size] = amount;
+		size++;
+	}
+
+	int size() {
+		return size;
+	}
+
+	long amount(int i) {
+		return amounts[i];
+	}
+
+	void apply(int i) {
+		accounts[i].getStripes().credit(stripes[i], amounts[i]);
+	}
+
+	/** Hands back the reservations which were not applied and forgets all credits. */
+	void cancel() {
+		for (int i = 0; i < size; i++) {
+			accounts[i].getStripes().cancel(stripes[i]);
+		}
+		clear();
+	}
+
+	void clear() {
+		if (size > 0) {
+			Arrays.fill(accounts, 0, size, null);
+			size = 0;
+		}
+	}
+}
@@ -1,11 +1,214 @@
 package com.db.awmd.challenge.transaction;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.db.awmd.challenge.ledger.LedgerPostings;
 
 import lombok.Getter;
+import lombok.Setter;
 
+/**
+ * Save points of the transaction running on a thread: copies of the accounts
+ * it read, each with the live account it is committed to. One context is kept
+ * per thread and reset, not rebuilt, between transactions. The save points
+ * are held in parallel arrays sized for a transfer between two accounts and
+ * looked up by scanning their numbers; only batches grow the arrays, and
+ * index them by number. The copies stay in the arrays on reset and are
+ * reused by the next transactions, see {@link #spare()}, as are the buffer
+ * of the locked stripes and the function running a transfer, so a transfer
+ * between two accounts allocates no context state. A context grown past
+ * {@link #RETAINED} save points is shrunk again on reset, so an idle thread
+ * holds a few small arrays and at most as many copies.
+ */
 public class TransactionContext<K, V> {
+
+	// a transfer between two accounts
+	private static final int INITIAL = 2;
+
+	// save points found by scanning up to this many, by the index beyond
+	private static final int SCANNED = 8;
+
+	static final int RETAINED = 64;
+
+	private int[] numbers = new int[INITIAL];
+
+	private Object[] copies = new Object[INITIAL];
+
+	private Object[] originals = new Object[INITIAL];
+
+	// balances the accounts had when their save points were taken; hot
+	// accounts commit the difference, see StripedBalance
+	private long[] bases = new long[INITIAL];
+
+	private int size;
+
+	// stripes locked by a transfer, see AccountLockManager#acquire(int, int, int[])
 	@Getter
-	private Map<K, V> savePoints = new HashMap<>();	
+	private final int[] lockedStripes = new int[2];
+
+	// the transfer bound by bind() and its arguments
+	private TransferFunction<?> transfer;
+
+	private int fromNumber;
+
+	private int toNumber;
+
+	private long amount;
+
+	private final TransactionFunction<Object> transferCall = () -> transfer.process(fromNumber, toNumber, amount);
+
+	// save point copies by number once there are more than SCANNED of them
+	private HandleMap<K> index;
+
+	private final List<K> copyList = new AbstractList<K>() {
+
+		@Override
+		public K get(int i) {
+			return getCopy(i);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	};
+
+	@Getter
+	private boolean active;
+
+	@Getter
+	@Setter
+	private TransactionEvent event = TransactionEvent.TRANSFER;
+
+	// transfers to record in the ledger on commit
+	@Getter
+	private LedgerPostings postings = new LedgerPostings();
+
+	// credits to hot accounts which are not locked by the transaction
+	@Getter
+	private StripedCredits credits = new StripedCredits();
+
+	/**
+	 * Starts a transaction on the context, dropping what a transaction which
+	 * failed in its commit left behind.
+	 */
+	public void begin() {
+		if (active) {
+			reset();
+		}
+		active = true;
+		event = TransactionEvent.TRANSFER;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getNumber(int i) {
+		return numbers[i];
+	}
+
+	@SuppressWarnings("unchecked")
+	public K getCopy(int i) {
+		return (K) copies[i];
+	}
+
+	@SuppressWarnings("unchecked")
+	public V getOriginal(int i) {
+		return (V) originals[i];
+	}
+
+	public long getBase(int i) {
+		return bases[i];
+	}
+
+	/** The copies of all save points, a view which is valid until the reset. */
+	public List<K> getCopies() {
+		return copyList;
+	}
+
+	/**
+	 * Returns the copy an earlier transaction left in the slot of the next
+	 * save point, to be overwritten and added again, or null.
+	 */
+	@SuppressWarnings("unchecked")
+	public K spare() {
+		return size < copies.length ? (K) copies[size] : null;
+	}
+
+	/**
+	 * Binds the transfer to its arguments and returns the one function of the
+	 * context which runs it, valid until the next bind on the thread.
+	 */
+	@SuppressWarnings("unchecked")
+	public <R> TransactionFunction<R> bind(TransferFunction<R> function, int fromNumber, int toNumber,
+			long amount) {
+		this.transfer = function;
+		this.fromNumber = fromNumber;
+		this.toNumber = toNumber;
+		this.amount = amount;
+		return (TransactionFunction<R>) transferCall;
+	}
+
+	/** Returns the copy of the account with the given number, or null. */
+	@SuppressWarnings("unchecked")
+	public K find(int number) {
+		if (index != null) {
+			return index.get(number);
+		}
+		for (int i = 0; i < size; i++) {
+			if (numbers[i] == number) {
+				return (K) copies[i];
+			}
+		}
+		return null;
+	}
+
+	public void add(int number, K copy, V original, long base) {
+		if (size == numbers.length) {
+			int capacity = size * 2;
+			numbers = Arrays.copyOf(numbers, capacity);
+			copies = Arrays.copyOf(copies, capacity);
+			originals = Arrays.copyOf(originals, capacity);
+			bases = Arrays.copyOf(bases, capacity);
+		}
+		numbers[size] = number;
+		copies[size] = copy;
+		originals[size] = original;
+		bases[size] = base;
+		size++;
+		if (index != null) {
+			index.put(number, copy);
+		} else if (size > SCANNED) {
+			index = new HandleMap<>();
+			for (int i = 0; i < size; i++) {
+				index.put(numbers[i], getCopy(i));
+			}
+		}
+	}
+
+	/**
+	 * Drops the save points and pending side effects and ends the
+	 * transaction, leaving the context ready for the next one.
+	 */
+	public void reset() {
+		credits.cancel();
+		if (size > RETAINED || postings.size() > RETAINED) {
+			numbers = new int[INITIAL];
+			copies = new Object[INITIAL];
+			originals = new Object[INITIAL];
+			bases = new long[INITIAL];
+			postings = new LedgerPostings();
+			credits = new StripedCredits();
+		} else {
+			// the copies are kept as spares
+			Arrays.fill(originals, 0, size, null);
+			postings.clear();
+		}
+		size = 0;
+		index = null;
+		active = false;
+	}
 }
@@ -0,0 +1,13 @@
+package com.db.awmd.challenge.transaction;
+
+public enum TransactionEngine {
+
+	/** transactions of the {@link AccountTransactionManager} under account locks */
+	LOCKING,
+
+	/**
+	 * single writer shards of the
+	 * {@link com.db.awmd.challenge.engine.ShardedTransferEngine}, without locks
+	 */
+	SHARDED
+}
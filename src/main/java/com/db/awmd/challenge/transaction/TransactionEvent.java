@@ -0,0 +1,15 @@
+package com.db.awmd.challenge.transaction;
+
+/**
+ * Business event a transaction commits, recorded with its changes.
+ */
+public enum TransactionEvent {
+
+	CREATE,
+
+	TRANSFER,
+
+	BLOCK,
+
+	UNBLOCK
+}
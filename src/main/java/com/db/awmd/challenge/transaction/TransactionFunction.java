@@ -0,0 +1,11 @@
+package com.db.awmd.challenge.transaction;
+
+/**
+ * Transaction body which reports its outcome as a value; see
+ * {@link AccountTransactionManager#executeInTransaction(TransactionEvent, TransactionFunction, Object, String...)}.
+ */
+@FunctionalInterface
+public interface TransactionFunction<R> {
+
+	public R process();
+}
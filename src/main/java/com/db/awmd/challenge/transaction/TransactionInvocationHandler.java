@@ -1,6 +1,7 @@
 package com.db.awmd.challenge.transaction;
 
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
 
@@ -21,27 +22,35 @@ public class TransactionInvocationHandler<E> implements InvocationHandler {
 	}
 
 	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-		// do something "dynamic"
-		String methodName = method.getName();
-		if (methodName.startsWith("get")) {
-			Account account = accountsRepository.getAccount((String) args[0]);
+		// only the reads by id or number are transactional, the rest is passed on
+		if (method.getName().equals("getAccount") && method.getParameterCount() == 1) {
+			Class<?> parameter = method.getParameterTypes()[0];
+			Account account = parameter == int.class ? accountsRepository.getAccount((int) args[0])
+					: accountsRepository.getAccount((String) args[0]);
 			if (account != null) {
+				// version is read before the state it guards
+				long version = account.getVersion();
 				BigDecimal balanceCopy = BigDecimal.ZERO;
 				Account proxyAccount = new Account(account.getAccountId(), balanceCopy.add(account.getBalance()),
 						account.isBlocked());
+				proxyAccount.setVersion(version);
+				proxyAccount.setNumber(account.getNumber());
 
 				TransactionContext<Account, Account> context = localContext.get();
-				if (context != null) {
-					context.getSavePoints().put(proxyAccount, account);
+				if (context != null && context.isActive()) {
+					context.add(account.getNumber(), proxyAccount, account, account.getBalanceUnits());
 					return proxyAccount;
 				} else {
 					// Non Transactional
 					return account;
 				}
 			}
-
+			return null;
+		}
+		try {
+			return method.invoke(accountsRepository, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
 		}
-
-		return null;
 	}
 }
\ No newline at end of file
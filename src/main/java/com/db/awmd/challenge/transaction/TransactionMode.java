@@ -0,0 +1,13 @@
+package com.db.awmd.challenge.transaction;
+
+public enum TransactionMode {
+
+	/** account locks are held from the first read until the commit */
+	PESSIMISTIC,
+
+	/**
+	 * reads are unlocked, the commit validates account versions under the locks
+	 * and retries the transaction on conflict
+	 */
+	OPTIMISTIC
+}
@@ -0,0 +1,94 @@
+package com.db.awmd.challenge.transaction;
+
+import java.util.function.Consumer;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+
+/**
+ * Transactional view of an {@link AccountsRepository}.
+ *
+ * Inside a transaction {@link #getAccount(String)} hands out a copy of the live
+ * account and registers it as a save point of the current thread's
+ * {@link TransactionContext}; repeated reads of the same account, by id or by
+ * number, return the same copy. Outside a transaction the live account is returned. This is the direct
+ * replacement of the dynamic proxy built on {@link TransactionInvocationHandler}.
+ */
+public class TransactionalAccountsRepository implements AccountsRepository {
+
+	private final AccountsRepository accountsRepository;
+
+	// one context per thread, reset between transactions
+	private final ThreadLocal<TransactionContext<Account, Account>> localContext = ThreadLocal
+			.withInitial(TransactionContext::new);
+
+	public TransactionalAccountsRepository(AccountsRepository accountsRepository) {
+		this.accountsRepository = accountsRepository;
+	}
+
+	/**
+	 * Returns the context of the current thread, which is active while a
+	 * transaction runs on it.
+	 */
+	public TransactionContext<Account, Account> getContext() {
+		return localContext.get();
+	}
+
+	@Override
+	public void createAccount(Account account) throws DuplicateAccountIdException {
+		accountsRepository.createAccount(account);
+	}
+
+	@Override
+	public Account getAccount(String accountId) {
+		Account account = accountsRepository.getAccount(accountId);
+		TransactionContext<Account, Account> context = localContext.get();
+		if (!context.isActive() || account == null) {
+			// Non Transactional
+			return account;
+		}
+		Account saved = context.find(account.getNumber());
+		return saved != null ? saved : savePoint(context, account);
+	}
+
+	/**
+	 * Like {@link #getAccount(String)}, by the account's number; a repeated
+	 * read of an account in a transaction costs no repository lookup.
+	 */
+	@Override
+	public Account getAccount(int number) {
+		TransactionContext<Account, Account> context = localContext.get();
+		if (!context.isActive()) {
+			// Non Transactional
+			return accountsRepository.getAccount(number);
+		}
+		Account saved = context.find(number);
+		if (saved != null) {
+			return saved;
+		}
+		Account account = accountsRepository.getAccount(number);
+		return account == null ? null : savePoint(context, account);
+	}
+
+	private static Account savePoint(TransactionContext<Account, Account> context, Account account) {
+		// a copy left by an earlier transaction of the thread is overwritten
+		Account copy = context.spare();
+		if (copy == null) {
+			copy = new Account(account.getAccountId());
+		}
+		copy.copyFrom(account);
+		context.add(copy.getNumber(), copy, account, copy.getBalanceUnits());
+		return copy;
+	}
+
+	@Override
+	public void clearAccounts() {
+		accountsRepository.clearAccounts();
+	}
+
+	@Override
+	public void forEachAccount(Consumer<Account> action) {
+		accountsRepository.forEachAccount(action);
+	}
+}
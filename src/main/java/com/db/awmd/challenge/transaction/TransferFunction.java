@@ -0,0 +1,12 @@
+package com.db.awmd.challenge.transaction;
+
+/**
+ * Transaction body of a transfer, handed its accounts and amount instead of
+ * capturing them, so that one instance serves every transfer; see
+ * {@link AccountTransactionManager#executeTransfer(TransferFunction, int, int, boolean, long, Object)}.
+ */
+@FunctionalInterface
+public interface TransferFunction<R> {
+
+	public R process(int fromNumber, int toNumber, long amount);
+}
@@ -0,0 +1,171 @@
+package com.db.awmd.challenge.transaction;
+
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountVersion;
+
+/**
+ * Commit clock of the snapshot reads.
+ *
+ * A commit takes the next epoch with {@link #begin()}, adds a version stamped
+ * with it to the history of every account it changed and then marks the
+ * epoch done. The published epoch only advances over epochs which are done,
+ * whichever commit finishes last moves it on, so once an epoch is published
+ * the versions of all commits up to it are in place and no commit waits for
+ * another one which is slower to finish. A reader
+ * takes the published epoch and, for every account, the newest version not
+ * after it: a consistent state of any number of accounts, read without a lock
+ * and without holding up writers. Each history keeps the latest depth
+ * versions; a reader whose epoch is older than that finds no version and
+ * starts over with a newer epoch. A long reader pins its epoch instead, the
+ * histories then keep the versions it reads until it unpins.
+ */
+public class VersionClock {
+
+	public static final int DEFAULT_DEPTH = 8;
+
+	// epochs taken but not yet published at most
+	private static final int IN_FLIGHT = 1024;
+
+	private final AtomicLong epochs = new AtomicLong();
+
+	private final AtomicLong published = new AtomicLong();
+
+	// the epoch last done in each slot, slot of an epoch is epoch % IN_FLIGHT
+	private final AtomicLongArray done = new AtomicLongArray(IN_FLIGHT);
+
+	private final int depth;
+
+	// pinned epoch -> readers holding it
+	private final TreeMap<Long, Integer> pins = new TreeMap<>();
+
+	private volatile long oldestPin = Long.MAX_VALUE;
+
+	public VersionClock() {
+		this(DEFAULT_DEPTH);
+	}
+
+	public VersionClock(int depth) {
+		// the version of a commit in progress and the one before it
+		this.depth = Math.max(2, depth);
+	}
+
+	/**
+	 * Returns the history of the account, seeding it with the current state if
+	 * no commit changed the account yet. Writers call it before they change
+	 * the account, so that the seed is the state before their change.
+	 */
+	public AccountVersion history(Account account) {
+		AccountVersion history = account.getHistory();
+		if (history == null) {
+			AccountVersion seed = new AccountVersion(0, account.getBalanceUnits(), account.isBlocked(), null);
+			history = account.compareAndSetHistory(null, seed) ? seed : account.getHistory();
+		}
+		return history;
+	}
+
+	/**
+	 * Starts the history of a new account with its initial state at the epoch
+	 * of its creation, before the epoch is published. Hot accounts keep no
+	 * history.
+	 */
+	public void created(long epoch, Account account) {
+		if (account.getStripes() == null) {
+			account.compareAndSetHistory(null,
+					new AccountVersion(epoch, account.getBalanceUnits(), account.isBlocked(), null));
+		}
+	}
+
+	public long begin() {
+		long epoch = epochs.incrementAndGet();
+		while (epoch - published.get() > IN_FLIGHT) {
+			// the slot is still taken by an epoch not yet published
+			Thread.yield();
+		}
+		return epoch;
+	}
+
+	/**
+	 * Adds the current state of the account as its version of the epoch. The
+	 * caller is the only writer of the account.
+	 */
+	public void addVersion(long epoch, Account account) {
+		account.setHistory(
+				history(account).next(epoch, account.getBalanceUnits(), account.isBlocked(), depth, oldestPin));
+	}
+
+	/**
+	 * Marks the epoch done and publishes it together with the following done
+	 * ones, once all epochs before it are done.
+	 */
+	public void publish(long epoch) {
+		done.set((int) (epoch % IN_FLIGHT), epoch);
+		for (long current = published.get(); done.get((int) ((current + 1) % IN_FLIGHT)) == current + 1;
+				current = published.get()) {
+			published.compareAndSet(current, current + 1);
+		}
+	}
+
+	public long current() {
+		return published.get();
+	}
+
+	/**
+	 * Returns the published epoch and keeps the versions read at it in the
+	 * histories until {@link #unpin(long)}. Epoch 0 keeps every version while
+	 * the commits which may have missed the pin finish.
+	 */
+	public long pin() {
+		addPin(0);
+		long epoch;
+		try {
+			long taken = epochs.get();
+			while (published.get() < taken) {
+				Thread.yield();
+			}
+			epoch = published.get();
+			addPin(epoch);
+		} finally {
+			unpin(0);
+		}
+		return epoch;
+	}
+
+	public void unpin(long epoch) {
+		synchronized (pins) {
+			Integer readers = pins.get(epoch);
+			if (readers == null) {
+				throw new IllegalStateException("Epoch " + epoch + " is not pinned");
+			}
+			if (readers == 1) {
+				pins.remove(epoch);
+			} else {
+				pins.put(epoch, readers - 1);
+			}
+			oldestPin = pins.isEmpty() ? Long.MAX_VALUE : pins.firstKey();
+		}
+	}
+
+	private void addPin(long epoch) {
+		synchronized (pins) {
+			pins.merge(epoch, 1, Integer::sum);
+			oldestPin = pins.firstKey();
+		}
+	}
+
+	/**
+	 * Returns the state of the account at the epoch, or null if it is no
+	 * longer in the history or the account was created after the epoch.
+	 */
+	public AccountVersion read(Account account, long epoch) {
+		for (AccountVersion version = history(account); version != null; version = version.getPrevious()) {
+			if (version.getEpoch() <= epoch) {
+				return version;
+			}
+		}
+		return null;
+	}
+}
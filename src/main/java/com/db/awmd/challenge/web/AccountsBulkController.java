@@ -0,0 +1,53 @@
+package com.db.awmd.challenge.web;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.db.awmd.challenge.domain.ImportResult;
+import com.db.awmd.challenge.service.AccountsBulkService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bulk import and export of accounts as newline delimited JSON. Both stream
+ * the body instead of binding it as a whole.
+ */
+@RestController
+@RequestMapping("/v1/accounts")
+@Slf4j
+public class AccountsBulkController {
+
+	public static final String NDJSON = "application/x-ndjson";
+
+	private final AccountsBulkService bulkService;
+
+	@Autowired
+	public AccountsBulkController(AccountsBulkService bulkService) {
+		this.bulkService = bulkService;
+	}
+
+	@PostMapping(path = "/import", consumes = NDJSON)
+	public ResponseEntity<Object> importAccounts(HttpServletRequest request) throws IOException {
+		ImportResult result = bulkService.importAccounts(request.getInputStream());
+		log.info("Imported {} accounts, {} duplicates, {} invalid", result.getImported(), result.getDuplicates(),
+				result.getInvalid());
+		return new ResponseEntity<>(result, HttpStatus.OK);
+	}
+
+	@GetMapping(path = "/export")
+	public void exportAccounts(HttpServletResponse response) throws IOException {
+		response.setContentType(NDJSON);
+		response.setCharacterEncoding("UTF-8");
+		bulkService.exportAccounts(response.getOutputStream());
+	}
+}
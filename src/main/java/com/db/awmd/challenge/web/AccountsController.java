@@ -2,10 +2,12 @@ package com.db.awmd.challenge.web;
 
 import static com.db.awmd.challenge.constant.MessageConstants.*;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.validation.Valid;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Scope;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -15,12 +17,24 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.domain.AmountTransfer;
-import com.db.awmd.challenge.exception.AmountTransferException;
+import com.db.awmd.challenge.domain.BatchTransfer;
+import com.db.awmd.challenge.domain.LedgerPage;
+import com.db.awmd.challenge.domain.MessageTemplate;
+import com.db.awmd.challenge.domain.MultiLegResult;
+import com.db.awmd.challenge.domain.MultiLegTransfer;
+import com.db.awmd.challenge.domain.StatusChangeOutcome;
+import com.db.awmd.challenge.domain.StatusChangeResult;
+import com.db.awmd.challenge.domain.TransferOutcome;
+import com.db.awmd.challenge.domain.TransferResult;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.TransactionConflictException;
+import com.db.awmd.challenge.metrics.LatencyHistogram;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
 import com.db.awmd.challenge.service.AccountsService;
 import com.db.awmd.challenge.service.NotificationService;
 
@@ -29,16 +43,34 @@ import lombok.extern.slf4j.Slf4j;
 @RestController
 @RequestMapping("/v1/accounts")
 @Slf4j
-@Scope("request")
 public class AccountsController {
 
+	private static final int MAX_PAGE_SIZE = 1000;
+
+	private static final int MAX_SNAPSHOT_ACCOUNTS = 1000;
+
+	// responses are immutable, so the common ones are built once
+	private static final ResponseEntity<Object> TRANSFER_ACCEPTED = new ResponseEntity<>(TRANSFER_COMPLETED,
+			HttpStatus.ACCEPTED);
+
+	private static final MessageTemplate BLOCKED = new MessageTemplate(ACCOUNT_BLOCKED_SUCCESSFUL);
+
+	private static final MessageTemplate BLOCK_FAILED = new MessageTemplate(ACCOUNT_BLOCKED_UNSUCCESSFUL);
+
+	private static final MessageTemplate UNBLOCKED = new MessageTemplate(ACCOUNT_UNBLOCKED_SUCCESSFUL);
+
+	private static final MessageTemplate UNBLOCK_FAILED = new MessageTemplate(ACCOUNT_UNBLOCKED_UNSUCCESSFUL);
+
 	private final AccountsService accountsService;
 	private final NotificationService notificationService;
+	private final LatencyHistogram notificationLatency;
 
 	@Autowired
-	public AccountsController(AccountsService accountsService, NotificationService notificationService) {
+	public AccountsController(AccountsService accountsService, NotificationService notificationService,
+			MetricsRegistry metrics) {
 		this.accountsService = accountsService;
 		this.notificationService = notificationService;
+		this.notificationLatency = metrics.histogram("notification.submit");
 	}
 
 	@PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
@@ -57,60 +89,176 @@ public class AccountsController {
 	@GetMapping(path = "/{accountId}")
 	public ResponseEntity<Object> getAccount(@PathVariable String accountId) {
 		log.info("Retrieving account for id {}", accountId);
-		Account account = this.accountsService.getAccount(accountId);
+		Account account = this.accountsService.getAccountSnapshot(accountId);
 		if (account == null) {
 			return new ResponseEntity<>(String.format(ACCOUNT_DOES_NOT_EXIST, accountId), HttpStatus.NOT_FOUND);
 		}
 		return new ResponseEntity<>(account, HttpStatus.OK);
 	}
 
+	@GetMapping
+	public ResponseEntity<Object> getAccounts(@RequestParam List<String> ids) {
+		if (ids.size() > MAX_SNAPSHOT_ACCOUNTS) {
+			return new ResponseEntity<>(String.format(TOO_MANY_ACCOUNTS, MAX_SNAPSHOT_ACCOUNTS),
+					HttpStatus.BAD_REQUEST);
+		}
+		return new ResponseEntity<>(this.accountsService.getAccounts(ids), HttpStatus.OK);
+	}
+
+	@GetMapping(path = "/{accountId}/transactions")
+	public ResponseEntity<Object> getTransactions(@PathVariable String accountId,
+			@RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "50") int size) {
+		if (page < 0 || size < 1 || size > MAX_PAGE_SIZE) {
+			return new ResponseEntity<>(String.format(INVALID_PAGE, MAX_PAGE_SIZE), HttpStatus.BAD_REQUEST);
+		}
+		LedgerPage transactions;
+		try {
+			transactions = this.accountsService.getTransactions(accountId, page, size);
+		} catch (IllegalStateException e) {
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+		}
+		if (transactions == null) {
+			return new ResponseEntity<>(String.format(ACCOUNT_DOES_NOT_EXIST, accountId), HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<>(transactions, HttpStatus.OK);
+	}
+
 	@PutMapping(path = "/block/{accountId}")
 	public ResponseEntity<Object> blockAccount(@PathVariable String accountId) {
 		log.info("Blocking account for id {}", accountId);
-		try {
-			this.accountsService.blockAccount(accountId);
-		} catch (Exception e) {
-			return new ResponseEntity<>(String.format(ACCOUNT_BLOCKED_UNSUCCESSFUL, accountId) + "\n" + e.getMessage(),
-					HttpStatus.INTERNAL_SERVER_ERROR);
-		}
-		return new ResponseEntity<>(String.format(ACCOUNT_BLOCKED_SUCCESSFUL, accountId), HttpStatus.OK);
+		return changeStatus(accountId, true, BLOCKED, BLOCK_FAILED);
 	}
 
 	@PutMapping(path = "/unblock/{accountId}")
 	public ResponseEntity<Object> unblockAccount(@PathVariable String accountId) {
 		log.info("Unblocking account for id {}", accountId);
+		return changeStatus(accountId, false, UNBLOCKED, UNBLOCK_FAILED);
+	}
+
+	@PutMapping(path = "/block", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> blockAccounts(@RequestBody List<String> accountIds) {
+		return changeStatus(accountIds, true);
+	}
+
+	@PutMapping(path = "/unblock", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> unblockAccounts(@RequestBody List<String> accountIds) {
+		return changeStatus(accountIds, false);
+	}
+
+	private ResponseEntity<Object> changeStatus(List<String> accountIds, boolean blocked) {
+		if (accountIds == null || accountIds.isEmpty() || accountIds.contains(null)) {
+			return new ResponseEntity<>(ACCOUNT_IDS_REQUIRED, HttpStatus.BAD_REQUEST);
+		}
+		log.info("{} {} accounts", blocked ? "Blocking" : "Unblocking", accountIds.size());
+		StatusChangeResult result = this.accountsService.setBlocked(accountIds, blocked);
+		return new ResponseEntity<>(result, HttpStatus.OK);
+	}
+
+	private ResponseEntity<Object> changeStatus(String accountId, boolean blocked, MessageTemplate completed,
+			MessageTemplate failed) {
+		StatusChangeOutcome outcome;
 		try {
-			this.accountsService.unblockAccount(accountId);
+			outcome = this.accountsService.setBlocked(accountId, blocked);
 		} catch (Exception e) {
-			return new ResponseEntity<>(
-					String.format(ACCOUNT_UNBLOCKED_UNSUCCESSFUL, accountId) + "\n" + e.getMessage(),
+			return new ResponseEntity<>(failed.with(accountId) + "\n" + e.getMessage(),
 					HttpStatus.INTERNAL_SERVER_ERROR);
 		}
-		return new ResponseEntity<>(String.format(ACCOUNT_UNBLOCKED_SUCCESSFUL, accountId), HttpStatus.OK);
+		if (outcome != StatusChangeOutcome.COMPLETED) {
+			return new ResponseEntity<>(failed.with(accountId) + "\n" + outcome.message(accountId),
+					HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+		return new ResponseEntity<>(completed.with(accountId), HttpStatus.OK);
 	}
 
 	@PostMapping(path = "/transfer", consumes = MediaType.APPLICATION_JSON_VALUE)
 	public ResponseEntity<Object> amountTransfer(@RequestBody @Valid AmountTransfer amountTransfer) {
+		TransferOutcome outcome;
 		try {
-			
-			this.accountsService.amountTransfer(amountTransfer.getAccountFrom(), amountTransfer.getAccountTo(),
-					amountTransfer.getTransferAmount());
+			outcome = this.accountsService.transfer(amountTransfer);
+		} catch (TransactionConflictException e) {
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.CONFLICT);
+		}
+		if (!outcome.isSuccess()) {
+			return new ResponseEntity<>(outcome.message(amountTransfer.getAccountFrom(), amountTransfer.getAccountTo(),
+					amountTransfer.getIdempotencyKey()), HttpStatus.BAD_REQUEST);
+		}
+		// a replayed transfer was notified when it was applied
+		if (outcome == TransferOutcome.COMPLETED) {
+			notifyAboutTransfer(amountTransfer);
+		}
+		return TRANSFER_ACCEPTED;
+	}
 
-			Account fromAccount = accountsService.getAccount(amountTransfer.getAccountFrom());
-			Account toAccount = accountsService.getAccount(amountTransfer.getAccountTo());
+	@PostMapping(path = "/transfer/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> amountTransfers(@RequestBody @Valid BatchTransfer batchTransfer) {
+		// a retried batch would apply its keyed transfers again
+		for (int i = 0; i < batchTransfer.getTransfers().size(); i++) {
+			if (batchTransfer.getTransfers().get(i).getIdempotencyKey() != null) {
+				return new ResponseEntity<>(String.format(BATCH_IDEMPOTENCY_KEY_UNSUPPORTED, i), HttpStatus.BAD_REQUEST);
+			}
+		}
+		log.info("Applying {} batch of {} transfers", batchTransfer.getMode(), batchTransfer.getTransfers().size());
+		List<TransferResult> results = this.accountsService.amountTransfers(batchTransfer.getTransfers(),
+				batchTransfer.getMode());
 
-			String fromAccountDescr = String.format(FROM_ACCOUNT_NOTIFICATION, amountTransfer.getTransferAmount(),
-					toAccount.getAccountId());
-			String toAccountDescr = String.format(TO_ACCOUNT_NOTIFICATION, amountTransfer.getTransferAmount(),
-					fromAccount.getAccountId());
+		boolean completed = true;
+		for (TransferResult result : results) {
+			if (result.isCompleted()) {
+				notifyAboutTransfer(batchTransfer.getTransfers().get(result.getIndex()));
+			} else {
+				completed = false;
+			}
+		}
+		if (!completed && batchTransfer.getMode() == BatchTransfer.Mode.ALL_OR_NOTHING) {
+			return new ResponseEntity<>(results, HttpStatus.BAD_REQUEST);
+		}
+		return new ResponseEntity<>(results, HttpStatus.ACCEPTED);
+	}
 
-			notificationService.notifyAboutTransfer(fromAccount, fromAccountDescr);
-			notificationService.notifyAboutTransfer(toAccount, toAccountDescr);
+	@PostMapping(path = "/transfer/multi-leg", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> multiLegTransfer(@RequestBody @Valid MultiLegTransfer multiLegTransfer) {
+		MultiLegResult result;
+		try {
+			result = this.accountsService.transfer(multiLegTransfer);
+		} catch (TransactionConflictException e) {
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.CONFLICT);
+		}
+		if (!result.isCompleted()) {
+			return new ResponseEntity<>(result.getMessage(), HttpStatus.BAD_REQUEST);
+		}
+		notifyAboutTransfer(multiLegTransfer);
+		return TRANSFER_ACCEPTED;
+	}
 
-		} catch (AmountTransferException e) {
-			return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+	private void notifyAboutTransfer(MultiLegTransfer multiLegTransfer) {
+		long start = System.nanoTime();
+		List<String> debited = new ArrayList<>(multiLegTransfer.getDebits().size());
+		for (MultiLegTransfer.Leg leg : multiLegTransfer.getDebits()) {
+			debited.add(leg.getAccountId());
+			notificationService.notifyAboutTransfer(accountsService.getAccount(leg.getAccountId()),
+					String.format(MULTI_LEG_DEBIT_NOTIFICATION, leg.getAmount(), multiLegTransfer.getCredits().size()));
+		}
+		String debitedDescr = String.join(", ", debited);
+		for (MultiLegTransfer.Leg leg : multiLegTransfer.getCredits()) {
+			notificationService.notifyAboutTransfer(accountsService.getAccount(leg.getAccountId()),
+					String.format(TO_ACCOUNT_NOTIFICATION, leg.getAmount(), debitedDescr));
 		}
-		return new ResponseEntity<>("Transfer Completed", HttpStatus.ACCEPTED);
+		notificationLatency.recordSince(start);
+	}
+
+	private void notifyAboutTransfer(AmountTransfer amountTransfer) {
+		long start = System.nanoTime();
+		Account fromAccount = accountsService.getAccount(amountTransfer.getAccountFrom());
+		Account toAccount = accountsService.getAccount(amountTransfer.getAccountTo());
+
+		String fromAccountDescr = String.format(FROM_ACCOUNT_NOTIFICATION, amountTransfer.getTransferAmount(),
+				toAccount.getAccountId());
+		String toAccountDescr = String.format(TO_ACCOUNT_NOTIFICATION, amountTransfer.getTransferAmount(),
+				fromAccount.getAccountId());
+
+		notificationService.notifyAboutTransfer(fromAccount, fromAccountDescr);
+		notificationService.notifyAboutTransfer(toAccount, toAccountDescr);
+		notificationLatency.recordSince(start);
 	}
 
 }
@@ -0,0 +1,113 @@
+package com.db.awmd.challenge.web;
+
+import static com.db.awmd.challenge.constant.MessageConstants.SERVER_BUSY;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+import javax.validation.Valid;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AmountTransfer;
+import com.db.awmd.challenge.domain.BatchTransfer;
+import com.db.awmd.challenge.domain.MultiLegTransfer;
+
+/**
+ * Asynchronous variant of the {@link AccountsController} endpoints. The
+ * request is bound and validated on the container thread, which is then
+ * released; the call runs on the bounded accounts executor and the response
+ * is written when it completes. A full executor answers 503 right away.
+ */
+@RestController
+@RequestMapping("/v2/accounts")
+public class AsyncAccountsController {
+
+	private final AccountsController accountsController;
+
+	private final Executor executor;
+
+	@Autowired
+	public AsyncAccountsController(AccountsController accountsController,
+			@Qualifier("accountsExecutor") Executor executor) {
+		this.accountsController = accountsController;
+		this.executor = executor;
+	}
+
+	@PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+	public CompletableFuture<ResponseEntity<Object>> createAccount(@RequestBody @Valid Account account) {
+		return submit(() -> accountsController.createAccount(account));
+	}
+
+	@GetMapping(path = "/{accountId}")
+	public CompletableFuture<ResponseEntity<Object>> getAccount(@PathVariable String accountId) {
+		return submit(() -> accountsController.getAccount(accountId));
+	}
+
+	@GetMapping
+	public CompletableFuture<ResponseEntity<Object>> getAccounts(@RequestParam List<String> ids) {
+		return submit(() -> accountsController.getAccounts(ids));
+	}
+
+	@PutMapping(path = "/block/{accountId}")
+	public CompletableFuture<ResponseEntity<Object>> blockAccount(@PathVariable String accountId) {
+		return submit(() -> accountsController.blockAccount(accountId));
+	}
+
+	@PutMapping(path = "/unblock/{accountId}")
+	public CompletableFuture<ResponseEntity<Object>> unblockAccount(@PathVariable String accountId) {
+		return submit(() -> accountsController.unblockAccount(accountId));
+	}
+
+	@PutMapping(path = "/block", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public CompletableFuture<ResponseEntity<Object>> blockAccounts(@RequestBody List<String> accountIds) {
+		return submit(() -> accountsController.blockAccounts(accountIds));
+	}
+
+	@PutMapping(path = "/unblock", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public CompletableFuture<ResponseEntity<Object>> unblockAccounts(@RequestBody List<String> accountIds) {
+		return submit(() -> accountsController.unblockAccounts(accountIds));
+	}
+
+	@PostMapping(path = "/transfer", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public CompletableFuture<ResponseEntity<Object>> amountTransfer(
+			@RequestBody @Valid AmountTransfer amountTransfer) {
+		return submit(() -> accountsController.amountTransfer(amountTransfer));
+	}
+
+	@PostMapping(path = "/transfer/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public CompletableFuture<ResponseEntity<Object>> amountTransfers(
+			@RequestBody @Valid BatchTransfer batchTransfer) {
+		return submit(() -> accountsController.amountTransfers(batchTransfer));
+	}
+
+	@PostMapping(path = "/transfer/multi-leg", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public CompletableFuture<ResponseEntity<Object>> multiLegTransfer(
+			@RequestBody @Valid MultiLegTransfer multiLegTransfer) {
+		return submit(() -> accountsController.multiLegTransfer(multiLegTransfer));
+	}
+
+	private CompletableFuture<ResponseEntity<Object>> submit(Supplier<ResponseEntity<Object>> call) {
+		try {
+			return CompletableFuture.supplyAsync(call, executor);
+		} catch (RejectedExecutionException e) {
+			return CompletableFuture.completedFuture(new ResponseEntity<>(SERVER_BUSY, HttpStatus.SERVICE_UNAVAILABLE));
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package com.db.awmd.challenge.web;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+
+@RestController
+@RequestMapping("/v1/metrics")
+public class MetricsController {
+
+	private final MetricsRegistry metrics;
+
+	@Autowired
+	public MetricsController(MetricsRegistry metrics) {
+		this.metrics = metrics;
+	}
+
+	@GetMapping
+	public ResponseEntity<Object> getMetrics() {
+		return new ResponseEntity<>(metrics.snapshot(), HttpStatus.OK);
+	}
+}
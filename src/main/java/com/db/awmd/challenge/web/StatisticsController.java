@@ -0,0 +1,27 @@
+package com.db.awmd.challenge.web;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.db.awmd.challenge.service.AccountsService;
+
+@RestController
+@RequestMapping("/v1/statistics")
+public class StatisticsController {
+
+	private final AccountsService accountsService;
+
+	@Autowired
+	public StatisticsController(AccountsService accountsService) {
+		this.accountsService = accountsService;
+	}
+
+	@GetMapping
+	public ResponseEntity<Object> getStatistics() {
+		return new ResponseEntity<>(accountsService.getStatistics(), HttpStatus.OK);
+	}
+}
@@ -0,0 +1,143 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.db.awmd.challenge.config.AccountsProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.LedgerEntry;
+import com.db.awmd.challenge.domain.LedgerPage;
+import com.db.awmd.challenge.exception.AmountTransferException;
+import com.db.awmd.challenge.ledger.AccountLedger;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.transaction.TransactionEngine;
+
+public class AccountLedgerTest {
+
+	private Path directory;
+
+	@Before
+	public void createDirectory() throws Exception {
+		directory = Files.createTempDirectory("ledger-test");
+	}
+
+	@After
+	public void deleteDirectory() throws Exception {
+		Files.deleteIfExists(directory);
+	}
+
+	@Test
+	public void pagesNewestFirstAcrossSpilledChunks() throws Exception {
+		try (AccountLedger ledger = new AccountLedger(directory, 4, 1)) {
+			for (int i = 0; i < 50; i++) {
+				ledger.record("Id-1", "Id-" + (i + 2), i % 2 == 0 ? -100 : 250, 1000 + i, 1000000L + i);
+			}
+			// 12 full chunks, one of them kept in memory
+			long deadline = System.currentTimeMillis() + 5000;
+			while (ledger.getSpilledChunkCount() < 11 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertThat(ledger.getSpilledChunkCount()).isEqualTo(11);
+			// the full chunk kept and the one being filled
+			assertThat(ledger.getMemoryChunkCount()).isEqualTo(2);
+
+			LedgerPage newest = ledger.page("Id-1", 0, 10);
+			assertThat(newest.getTotal()).isEqualTo(50);
+			assertThat(newest.getEntries()).extracting(LedgerEntry::getSequence).containsExactly(49L, 48L, 47L, 46L,
+					45L, 44L, 43L, 42L, 41L, 40L);
+
+			LedgerPage oldest = ledger.page("Id-1", 4, 10);
+			assertThat(oldest.getEntries()).extracting(LedgerEntry::getSequence).containsExactly(9L, 8L, 7L, 6L, 5L,
+					4L, 3L, 2L, 1L, 0L);
+			LedgerEntry first = oldest.getEntries().get(9);
+			assertThat(first.getAmount()).isEqualByComparingTo("-1");
+			assertThat(first.getBalance()).isEqualByComparingTo("10");
+			assertThat(first.getCounterparty()).isEqualTo("Id-2");
+			assertThat(first.getTimestamp()).isEqualTo(1000000L);
+			assertThat(oldest.getEntries().get(0).getAmount()).isEqualByComparingTo("2.5");
+
+			assertThat(ledger.page("Id-1", 5, 10).getEntries()).isEmpty();
+			assertThat(ledger.page("Id-unknown", 0, 10).getTotal()).isZero();
+		}
+	}
+
+	@Test
+	public void pagesSpilledChunksOfInterleavedAccounts() throws Exception {
+		try (AccountLedger ledger = new AccountLedger(directory, 4, 0)) {
+			for (int i = 0; i < 40; i++) {
+				ledger.record("Id-" + i % 2, "Id-" + (i + 2), 100, i);
+			}
+			long deadline = System.currentTimeMillis() + 5000;
+			while (ledger.getSpilledChunkCount() < 8 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertThat(ledger.getSpilledChunkCount()).isEqualTo(8);
+
+			for (int account = 0; account < 2; account++) {
+				LedgerPage oldest = ledger.page("Id-" + account, 3, 5);
+				assertThat(oldest.getEntries()).extracting(LedgerEntry::getSequence).containsExactly(4L, 3L, 2L, 1L,
+						0L);
+				assertThat(oldest.getEntries()).extracting(LedgerEntry::getCounterparty).containsExactly(
+						"Id-" + (account + 10), "Id-" + (account + 8), "Id-" + (account + 6), "Id-" + (account + 4),
+						"Id-" + (account + 2));
+			}
+		}
+	}
+
+	@Test
+	public void recordsCommittedTransfersOnly() throws Exception {
+		recordsCommittedTransfersOnly(TransactionEngine.LOCKING);
+	}
+
+	@Test
+	public void recordsCommittedTransfersOnly_ShardedEngine() throws Exception {
+		recordsCommittedTransfersOnly(TransactionEngine.SHARDED);
+	}
+
+	private void recordsCommittedTransfersOnly(TransactionEngine engine) throws Exception {
+		AccountsProperties properties = new AccountsProperties();
+		properties.getLedger().setDirectory(directory.toString());
+		properties.getTransaction().setEngine(engine);
+		AccountsService accountsService = new AccountsService(new AccountsRepositoryInMemory(), properties);
+		try {
+			accountsService.createAccount(new Account("Id-1", new BigDecimal(100)));
+			accountsService.createAccount(new Account("Id-2", new BigDecimal(100)));
+			accountsService.createAccount(new Account("Id-3", new BigDecimal(100)));
+			accountsService.blockAccount("Id-3");
+			accountsService.amountTransfer("Id-1", "Id-2", new BigDecimal(30));
+			try {
+				accountsService.amountTransfer("Id-1", "Id-2", new BigDecimal(500));
+			} catch (AmountTransferException e) {
+				// not recorded
+			}
+			try {
+				accountsService.amountTransfer("Id-2", "Id-3", new BigDecimal(10));
+			} catch (AmountTransferException e) {
+				// not recorded by the locking engine, debit and refund by the sharded one
+			}
+			accountsService.amountTransfer("Id-2", "Id-1", new BigDecimal("5.5"));
+
+			LedgerPage page = accountsService.getTransactions("Id-1", 0, 10);
+			assertThat(page.getEntries()).extracting(LedgerEntry::getAmount).containsExactly(new BigDecimal("5.5"),
+					new BigDecimal(-30));
+			assertThat(page.getEntries()).extracting(LedgerEntry::getBalance).containsExactly(new BigDecimal("75.5"),
+					new BigDecimal(70));
+			assertThat(page.getEntries()).extracting(LedgerEntry::getCounterparty).containsExactly("Id-2", "Id-2");
+
+			LedgerPage target = accountsService.getTransactions("Id-2", 0, 10);
+			assertThat(target.getEntries().get(0).getBalance()).isEqualByComparingTo("124.5");
+			assertThat(accountsService.getTransactions("Id-3", 0, 10).getTotal()).isZero();
+			assertThat(accountsService.getTransactions("Id-missing", 0, 10)).isNull();
+		} finally {
+			accountsService.close();
+		}
+	}
+}
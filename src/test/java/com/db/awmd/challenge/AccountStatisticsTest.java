@@ -0,0 +1,82 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+import com.db.awmd.challenge.config.AccountsProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceStatistics;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.transaction.TransactionEngine;
+
+public class AccountStatisticsTest {
+
+	@Test
+	public void maintainedByCommits() throws Exception {
+		maintainedByCommits(TransactionEngine.LOCKING);
+	}
+
+	@Test
+	public void maintainedByCommits_ShardedEngine() throws Exception {
+		maintainedByCommits(TransactionEngine.SHARDED);
+	}
+
+	private void maintainedByCommits(TransactionEngine engine) throws Exception {
+		AccountsProperties properties = new AccountsProperties();
+		properties.getTransaction().setEngine(engine);
+		properties.getLedger().setEnabled(false);
+		AccountsService accountsService = new AccountsService(new AccountsRepositoryInMemory(), properties);
+		try {
+			accountsService.createAccount(new Account("Id-1", new BigDecimal("150")));
+			accountsService.createAccount(new Account("Id-2", new BigDecimal("0.05")));
+			accountsService.createAccount(new Account("Id-3", BigDecimal.ZERO));
+			accountsService.amountTransfer("Id-1", "Id-3", new BigDecimal("60"));
+			accountsService.blockAccount("Id-2");
+			accountsService.blockAccount("Id-2");
+
+			BalanceStatistics statistics = accountsService.getStatistics();
+			assertThat(statistics.getAccounts()).isEqualTo(3);
+			assertThat(statistics.getBlockedAccounts()).isEqualTo(1);
+			assertThat(statistics.getTotalBalance()).isEqualByComparingTo("150.05");
+			assertThat(statistics.getImbalance()).isEqualByComparingTo("0");
+			assertThat(statistics.getHistogram()).hasSize(20);
+			// 0.05 is 5 minor units, 60 and 90 are 6000 and 9000
+			assertThat(statistics.getHistogram().get(1).getAccounts()).isEqualTo(1);
+			assertThat(statistics.getHistogram().get(1).getFrom()).isEqualByComparingTo("0.01");
+			assertThat(statistics.getHistogram().get(4).getAccounts()).isEqualTo(2);
+			assertThat(statistics.getHistogram().get(4).getTo()).isEqualByComparingTo("100");
+			assertThat(statistics.getHistogram().get(19).getTo()).isNull();
+
+			accountsService.unblockAccount("Id-2");
+			accountsService.amountTransfer("Id-3", "Id-1", new BigDecimal("60"));
+			statistics = accountsService.getStatistics();
+			assertThat(statistics.getBlockedAccounts()).isZero();
+			assertThat(statistics.getHistogram().get(0).getAccounts()).isEqualTo(1);
+			assertThat(statistics.getHistogram().get(5).getAccounts()).isEqualTo(1);
+		} finally {
+			accountsService.close();
+		}
+	}
+
+	@Test
+	public void rebuiltFromRepository() throws Exception {
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+		repository.createAccount(new Account("Id-1", new BigDecimal("10"), true));
+		repository.createAccount(new Account("Id-2", new BigDecimal("20")));
+		AccountsProperties properties = new AccountsProperties();
+		properties.getLedger().setEnabled(false);
+		AccountsService accountsService = new AccountsService(repository, properties);
+		try {
+			BalanceStatistics statistics = accountsService.getStatistics();
+			assertThat(statistics.getAccounts()).isEqualTo(2);
+			assertThat(statistics.getBlockedAccounts()).isEqualTo(1);
+			assertThat(statistics.getCreatedBalance()).isEqualByComparingTo("30");
+		} finally {
+			accountsService.close();
+		}
+	}
+}
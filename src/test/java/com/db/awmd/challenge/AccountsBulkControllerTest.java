@@ -0,0 +1,90 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.web.AccountsBulkController;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@WebAppConfiguration
+public class AccountsBulkControllerTest {
+
+	private MockMvc mockMvc;
+
+	@Autowired
+	private AccountsService accountsService;
+
+	@Autowired
+	private WebApplicationContext webApplicationContext;
+
+	@Before
+	public void prepareMockMvc() {
+		this.mockMvc = webAppContextSetup(this.webApplicationContext).build();
+		accountsService.clearAccounts();
+	}
+
+	@Test
+	public void importAccounts() throws Exception {
+		StringBuilder body = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			body.append("{\"accountId\":\"Id-").append(i).append("\",\"balance\":").append(i).append(".5}\n");
+		}
+		body.append("{\"accountId\":\"Id-7\",\"balance\":1}\n");
+		body.append("\n");
+		body.append("{\"accountId\":\"\",\"balance\":1}\n");
+		body.append("{\"accountId\":\"Id-negative\",\"balance\":-1}\n");
+		body.append("not json\n");
+
+		this.mockMvc.perform(post("/v1/accounts/import").contentType(AccountsBulkController.NDJSON)
+				.content(body.toString()))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.imported").value(5000))
+				.andExpect(jsonPath("$.duplicates").value(1))
+				.andExpect(jsonPath("$.duplicateIds[0]").value("Id-7"))
+				.andExpect(jsonPath("$.invalid").value(3))
+				.andExpect(jsonPath("$.errors[0]", startsWith("line 5003: ")))
+				.andExpect(jsonPath("$.errors[2]", startsWith("line 5005: ")));
+
+		assertThat(accountsService.getAccount("Id-7").getBalance()).isEqualByComparingTo("7.5");
+		assertThat(accountsService.getAccount("Id-4999").getBalance()).isEqualByComparingTo("4999.5");
+	}
+
+	@Test
+	public void exportAccounts() throws Exception {
+		accountsService.createAccount(new Account("Id-1", new BigDecimal("10.25")));
+		accountsService.createAccount(new Account("Id-2", BigDecimal.ZERO, true));
+
+		String body = this.mockMvc.perform(get("/v1/accounts/export"))
+				.andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith(AccountsBulkController.NDJSON))
+				.andReturn().getResponse().getContentAsString();
+
+		List<String> lines = Arrays.asList(body.split("\n"));
+		assertThat(body).endsWith("\n");
+		assertThat(lines).containsExactlyInAnyOrder("{\"accountId\":\"Id-1\",\"balance\":10.25,\"blocked\":false}",
+				"{\"accountId\":\"Id-2\",\"balance\":0,\"blocked\":true}");
+	}
+}
@@ -2,10 +2,12 @@ package com.db.awmd.challenge;
 
 import static com.db.awmd.challenge.constant.MessageConstants.*;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
@@ -41,7 +43,7 @@ public class AccountsControllerTest {
     this.mockMvc = webAppContextSetup(this.webApplicationContext).build();
 
     // Reset the existing accounts before each test.
-    accountsService.getAccountsRepository().clearAccounts();
+    accountsService.clearAccounts();
   }
 
   @Test
@@ -126,6 +128,66 @@ public class AccountsControllerTest {
 	    	      .content("{\"accountFrom\":\"Id-360\",\"accountTo\":\"Id-361\",\"transferAmount\":100}")).andExpect(status().isAccepted());
   }
   
+  @Test
+  public void amountTransfer_RetryWithIdempotencyKey() throws Exception {
+    this.accountsService.createAccount(new Account("Id-370", new BigDecimal("123.45")));
+    this.accountsService.createAccount(new Account("Id-371", new BigDecimal("123.45")));
+    String body = "{\"accountFrom\":\"Id-370\",\"accountTo\":\"Id-371\",\"transferAmount\":100,"
+      + "\"idempotencyKey\":\"retry-370\"}";
+
+    for (int i = 0; i < 2; i++) {
+      this.mockMvc.perform(post("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON).content(body))
+        .andExpect(status().isAccepted());
+    }
+    assertThat(accountsService.getAccount("Id-370").getBalance()).isEqualByComparingTo("23.45");
+  }
+
+  @Test
+  public void getAccounts() throws Exception {
+    this.accountsService.createAccount(new Account("Id-390", new BigDecimal("100")));
+    this.accountsService.createAccount(new Account("Id-391", new BigDecimal("50.5")));
+    this.accountsService.amountTransfer("Id-390", "Id-391", new BigDecimal("20"));
+
+    this.mockMvc.perform(get("/v1/accounts?ids=Id-390,Id-391,Id-unknown"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.accounts[0].accountId").value("Id-390"))
+      .andExpect(jsonPath("$.accounts[0].balance").value(80))
+      .andExpect(jsonPath("$.accounts[1].balance").value(70.5))
+      .andExpect(jsonPath("$.missing[0]").value("Id-unknown"));
+  }
+
+  @Test
+  public void getStatistics() throws Exception {
+    this.accountsService.createAccount(new Account("Id-395", new BigDecimal("100")));
+    this.accountsService.blockAccount("Id-395");
+
+    this.mockMvc.perform(get("/v1/statistics"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.accounts").value(1))
+      .andExpect(jsonPath("$.blockedAccounts").value(1))
+      .andExpect(jsonPath("$.totalBalance").value(100))
+      .andExpect(jsonPath("$.imbalance").value(0))
+      .andExpect(jsonPath("$.histogram.length()").value(20))
+      .andExpect(jsonPath("$.histogram[5].accounts").value(1));
+  }
+
+  @Test
+  public void getTransactions() throws Exception {
+    this.accountsService.createAccount(new Account("Id-380", new BigDecimal("100")));
+    this.accountsService.createAccount(new Account("Id-381", new BigDecimal("100")));
+    this.accountsService.amountTransfer("Id-380", "Id-381", new BigDecimal("12.5"));
+
+    this.mockMvc.perform(get("/v1/accounts/Id-381/transactions?page=0&size=10"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.total").value(1))
+      .andExpect(jsonPath("$.entries[0].sequence").value(0))
+      .andExpect(jsonPath("$.entries[0].amount").value(12.5))
+      .andExpect(jsonPath("$.entries[0].balance").value(112.5))
+      .andExpect(jsonPath("$.entries[0].counterparty").value("Id-380"));
+    this.mockMvc.perform(get("/v1/accounts/Id-unknown/transactions")).andExpect(status().isNotFound());
+    this.mockMvc.perform(get("/v1/accounts/Id-381/transactions?size=0")).andExpect(status().isBadRequest());
+  }
+
   @Test
   public void amountTransfer_InvalidAmount() throws Exception {
 	  	String accountIdFrom = "Id-360";
@@ -171,4 +233,112 @@ public class AccountsControllerTest {
 	    .andExpect(status().isInternalServerError()).andExpect(content().string(String.format(ACCOUNT_UNBLOCKED_UNSUCCESSFUL+"\n"+ACCOUNT_DOES_NOT_EXIST, accountId,accountId)));
   }
   
+  @Test
+  public void blockAccounts() throws Exception {
+	    this.accountsService.createAccount(new Account("Id-367", new BigDecimal("123.45")));
+	    this.accountsService.createAccount(new Account("Id-368", new BigDecimal("123.45")));
+	    this.mockMvc.perform(put("/v1/accounts/block").contentType(MediaType.APPLICATION_JSON)
+	    		.content("[\"Id-367\",\"Id-368\",\"Id-369\"]"))
+	    		.andExpect(status().isOk()).andExpect(jsonPath("$.blocked").value(true))
+	    		.andExpect(jsonPath("$.accounts").value(2)).andExpect(jsonPath("$.missing[0]").value("Id-369"));
+	    assertThat(this.accountsService.getAccount("Id-368").isBlocked()).isTrue();
+
+	    this.mockMvc.perform(put("/v1/accounts/unblock").contentType(MediaType.APPLICATION_JSON)
+	    		.content("[\"Id-367\"]")).andExpect(status().isOk()).andExpect(jsonPath("$.accounts").value(1));
+	    assertThat(this.accountsService.getAccount("Id-367").isBlocked()).isFalse();
+	    this.mockMvc.perform(put("/v1/accounts/block").contentType(MediaType.APPLICATION_JSON).content("[]"))
+	    		.andExpect(status().isBadRequest()).andExpect(content().string(ACCOUNT_IDS_REQUIRED));
+  }
+  
+  @Test
+  public void amountTransfers_BestEffort() throws Exception {
+	    this.accountsService.createAccount(new Account("Id-366", new BigDecimal("123.45")));
+	    this.accountsService.createAccount(new Account("Id-367", new BigDecimal("123.45")));
+	    this.mockMvc.perform(post("/v1/accounts/transfer/batch").contentType(MediaType.APPLICATION_JSON)
+	    	      .content("{\"mode\":\"BEST_EFFORT\",\"transfers\":["
+	    	      + "{\"accountFrom\":\"Id-366\",\"accountTo\":\"Id-367\",\"transferAmount\":100},"
+	    	      + "{\"accountFrom\":\"Id-366\",\"accountTo\":\"Id-368\",\"transferAmount\":10}]}"))
+	    	      .andExpect(status().isAccepted())
+	    	      .andExpect(jsonPath("$[0].status").value("COMPLETED"))
+	    	      .andExpect(jsonPath("$[1].status").value("REJECTED"))
+	    	      .andExpect(jsonPath("$[1].message").value(String.format(ACCOUNT_DOES_NOT_EXIST, "Id-368")));
+	    assertThat(this.accountsService.getAccount("Id-366").getBalance()).isEqualTo(new BigDecimal("23.45"));
+  }
+  
+  @Test
+  public void amountTransfers_AllOrNothingFailure() throws Exception {
+	    this.accountsService.createAccount(new Account("Id-366", new BigDecimal("123.45")));
+	    this.accountsService.createAccount(new Account("Id-367", new BigDecimal("123.45")));
+	    this.mockMvc.perform(post("/v1/accounts/transfer/batch").contentType(MediaType.APPLICATION_JSON)
+	    	      .content("{\"transfers\":["
+	    	      + "{\"accountFrom\":\"Id-366\",\"accountTo\":\"Id-367\",\"transferAmount\":100},"
+	    	      + "{\"accountFrom\":\"Id-366\",\"accountTo\":\"Id-367\",\"transferAmount\":100}]}"))
+	    	      .andExpect(status().isBadRequest())
+	    	      .andExpect(jsonPath("$[0].status").value("ROLLED_BACK"))
+	    	      .andExpect(jsonPath("$[1].status").value("REJECTED"));
+	    assertThat(this.accountsService.getAccount("Id-366").getBalance()).isEqualTo(new BigDecimal("123.45"));
+  }
+  
+  @Test
+  public void amountTransfers_InvalidAmount() throws Exception {
+	    this.mockMvc.perform(post("/v1/accounts/transfer/batch").contentType(MediaType.APPLICATION_JSON)
+	    	      .content("{\"transfers\":[{\"accountFrom\":\"Id-366\",\"accountTo\":\"Id-367\",\"transferAmount\":-100}]}"))
+	    	      .andExpect(status().isBadRequest());
+	    this.mockMvc.perform(post("/v1/accounts/transfer/batch").contentType(MediaType.APPLICATION_JSON)
+	    	      .content("{\"transfers\":[]}")).andExpect(status().isBadRequest());
+  }
+  
+  @Test
+  public void amountTransfers_IdempotencyKeyRejected() throws Exception {
+	    this.accountsService.createAccount(new Account("Id-369", new BigDecimal("123.45")));
+	    this.accountsService.createAccount(new Account("Id-370", new BigDecimal("123.45")));
+	    this.mockMvc.perform(post("/v1/accounts/transfer/batch").contentType(MediaType.APPLICATION_JSON)
+	    	      .content("{\"mode\":\"BEST_EFFORT\",\"transfers\":["
+	    	      + "{\"accountFrom\":\"Id-369\",\"accountTo\":\"Id-370\",\"transferAmount\":10},"
+	    	      + "{\"accountFrom\":\"Id-369\",\"accountTo\":\"Id-370\",\"transferAmount\":10,\"idempotencyKey\":\"k-369\"}]}"))
+	    	      .andExpect(status().isBadRequest())
+	    	      .andExpect(content().string(String.format(BATCH_IDEMPOTENCY_KEY_UNSUPPORTED, 1)));
+	    assertThat(this.accountsService.getAccount("Id-369").getBalance()).isEqualTo(new BigDecimal("123.45"));
+  }
+  
+  @Test
+  public void multiLegTransfer() throws Exception {
+	    this.accountsService.createAccount(new Account("Id-371", new BigDecimal("300")));
+	    this.accountsService.createAccount(new Account("Id-372", BigDecimal.ZERO));
+	    this.accountsService.createAccount(new Account("Id-373", BigDecimal.ZERO));
+	    this.mockMvc.perform(post("/v1/accounts/transfer/multi-leg").contentType(MediaType.APPLICATION_JSON)
+	    	      .content("{\"debits\":[{\"accountId\":\"Id-371\",\"amount\":250}],"
+	    	      + "\"credits\":[{\"accountId\":\"Id-372\",\"amount\":200},{\"accountId\":\"Id-373\",\"amount\":50}]}"))
+	    	      .andExpect(status().isAccepted());
+	    this.mockMvc.perform(post("/v1/accounts/transfer/multi-leg").contentType(MediaType.APPLICATION_JSON)
+	    	      .content("{\"debits\":[{\"accountId\":\"Id-371\",\"amount\":100}],"
+	    	      + "\"credits\":[{\"accountId\":\"Id-372\",\"amount\":100}]}"))
+	    	      .andExpect(status().isBadRequest())
+	    	      .andExpect(content().string(String.format(INSUFFICIENT_BALANCE, "Id-371")));
+	    this.mockMvc.perform(post("/v1/accounts/transfer/multi-leg").contentType(MediaType.APPLICATION_JSON)
+	    	      .content("{\"debits\":[],\"credits\":[{\"accountId\":\"Id-372\",\"amount\":100}]}"))
+	    	      .andExpect(status().isBadRequest());
+	    assertThat(this.accountsService.getAccount("Id-371").getBalance()).isEqualTo(new BigDecimal("50"));
+	    assertThat(this.accountsService.getAccount("Id-372").getBalance()).isEqualTo(new BigDecimal("200"));
+	    assertThat(this.accountsService.getAccount("Id-373").getBalance()).isEqualTo(new BigDecimal("50"));
+  }
+  
+  @Test
+  public void getMetrics() throws Exception {
+	    this.accountsService.createAccount(new Account("Id-369", new BigDecimal("123.45")));
+	    this.accountsService.createAccount(new Account("Id-370", new BigDecimal("123.45")));
+	    this.mockMvc.perform(post("/v1/accounts/transfer/").contentType(MediaType.APPLICATION_JSON)
+	    	      .content("{\"accountFrom\":\"Id-369\",\"accountTo\":\"Id-370\",\"transferAmount\":100}")).andExpect(status().isAccepted());
+	    this.mockMvc.perform(post("/v1/accounts/transfer/").contentType(MediaType.APPLICATION_JSON)
+	    	      .content("{\"accountFrom\":\"Id-369\",\"accountTo\":\"Id-370\",\"transferAmount\":100}")).andExpect(status().isBadRequest());
+	    this.mockMvc.perform(get("/v1/metrics")).andExpect(status().isOk())
+	    	      .andExpect(jsonPath("$['notifications.queue.depth']").isNumber())
+	    	      .andExpect(jsonPath("$['notifications.dropped']").value(0))
+	    	      .andExpect(jsonPath("$['transfer.completed']").value(greaterThanOrEqualTo(1)))
+	    	      .andExpect(jsonPath("$['transfer.rejected.insufficient-balance']").value(greaterThanOrEqualTo(1)))
+	    	      .andExpect(jsonPath("$['service.amountTransfer'].count").value(greaterThanOrEqualTo(2)))
+	    	      .andExpect(jsonPath("$['transaction.commit'].p99Nanos").isNumber())
+	    	      .andExpect(jsonPath("$['http.amountTransfer'].count").value(greaterThanOrEqualTo(2)));
+  }
+  
 }
@@ -0,0 +1,187 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.db.awmd.challenge.config.AccountsProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.repository.AccountsRepositoryOffHeap;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.transaction.VersionClock;
+
+public class AccountsRepositoryOffHeapTest {
+
+	private AccountsRepositoryOffHeap repository;
+
+	@Before
+	public void createRepository() {
+		repository = new AccountsRepositoryOffHeap(4);
+	}
+
+	@Test
+	public void createAndGetAccount() throws Exception {
+		repository.createAccount(new Account("Id-123", new BigDecimal("123.45"), true));
+
+		Account account = repository.getAccount("Id-123");
+		assertThat(account.getAccountId()).isEqualTo("Id-123");
+		assertThat(account.getBalance()).isEqualTo(new BigDecimal("123.45"));
+		assertThat(account.isBlocked()).isTrue();
+		assertThat(repository.getAccount("Id-124")).isNull();
+	}
+
+	@Test
+	public void createAccount_failsOnDuplicateId() throws Exception {
+		repository.createAccount(new Account("Id-123"));
+		try {
+			repository.createAccount(new Account("Id-123"));
+			fail("Should have failed when adding duplicate account");
+		} catch (DuplicateAccountIdException ex) {
+			assertThat(ex.getMessage()).isEqualTo("Account id Id-123 already exists!");
+		}
+	}
+
+	@Test
+	public void createAccount_keepsIdsLongerThanAShort() throws Exception {
+		char[] chars = new char[70000];
+		Arrays.fill(chars, 'x');
+		String longId = new String(chars);
+		// same length modulo 65536 as the long id
+		String shortId = new String(chars, 0, 70000 - 65536);
+		repository.createAccount(new Account(longId, new BigDecimal(1)));
+		repository.createAccount(new Account(shortId, new BigDecimal(2)));
+		repository.createAccount(new Account("Id-123", new BigDecimal(3)));
+
+		assertThat(repository.getAccount(longId).getAccountId()).isEqualTo(longId);
+		assertThat(repository.getAccount(longId).getBalance()).isEqualByComparingTo("1");
+		assertThat(repository.getAccount(shortId).getBalance()).isEqualByComparingTo("2");
+		long[] visited = new long[2];
+		repository.forEachAccount(account -> {
+			visited[0]++;
+			visited[1] += account.getBalanceUnits();
+		});
+		assertThat(visited[0]).isEqualTo(3);
+		assertThat(visited[1]).isEqualTo(600);
+	}
+
+	@Test
+	public void createAccount_failsOnIdLongerThanAChunk() throws Exception {
+		char[] chars = new char[AccountsRepositoryOffHeap.MAX_ID_LENGTH + 1];
+		Arrays.fill(chars, 'x');
+		try {
+			repository.createAccount(new Account(new String(chars)));
+			fail("Should have failed when adding an account id longer than a chunk");
+		} catch (IllegalArgumentException ex) {
+			assertThat(ex.getMessage()).startsWith("Account id of " + chars.length + " characters");
+		}
+		repository.createAccount(new Account("Id-123"));
+		assertThat(repository.size()).isEqualTo(1);
+		assertThat(repository.getAccount("Id-123").getNumber()).isEqualTo(0);
+	}
+
+	@Test
+	public void updatesThroughViewAreStored() throws Exception {
+		repository.createAccount(new Account("Id-123", new BigDecimal(1000)));
+		Account view = repository.getAccount("Id-123");
+		view.setBalance(new BigDecimal(10));
+		view.setBlocked(true);
+
+		Account account = repository.getAccount("Id-123");
+		assertThat(account.getBalance()).isEqualTo(new BigDecimal(10));
+		assertThat(account.isBlocked()).isTrue();
+	}
+
+	@Test
+	public void indexGrowsBeyondInitialCapacity() throws Exception {
+		for (int i = 0; i < 100000; i++) {
+			repository.createAccount(new Account("Id-" + i, new BigDecimal(i)));
+		}
+		assertThat(repository.size()).isEqualTo(100000);
+		for (int i = 0; i < 100000; i += 997) {
+			assertThat(repository.getAccount("Id-" + i).getBalance()).isEqualTo(new BigDecimal(i));
+		}
+	}
+
+	@Test
+	public void getAccountByNumber() throws Exception {
+		for (int i = 0; i < 1000; i++) {
+			repository.createAccount(new Account("Id-" + i, new BigDecimal(i)));
+		}
+		Account account = repository.getAccount("Id-537");
+		assertThat(account.getNumber()).isEqualTo(537);
+		assertThat(repository.getAccount(537).getAccountId()).isEqualTo("Id-537");
+		assertThat(repository.getAccount(537).getBalance()).isEqualTo(new BigDecimal(537));
+		assertThat(repository.getAccount(1000)).isNull();
+		assertThat(repository.getAccount(-1)).isNull();
+	}
+
+	@Test
+	public void forEachAccountVisitsAllAccounts() throws Exception {
+		for (int i = 0; i < 1000; i++) {
+			repository.createAccount(new Account("Id-" + i, new BigDecimal(i), i % 2 == 0));
+		}
+		long[] visited = new long[3];
+		repository.forEachAccount(account -> {
+			visited[0]++;
+			visited[1] += account.getBalanceUnits();
+			visited[2] += account.isBlocked() ? 1 : 0;
+			assertThat(repository.getAccount(account.getAccountId()).getBalanceUnits())
+					.isEqualTo(account.getBalanceUnits());
+		});
+		assertThat(visited[0]).isEqualTo(1000);
+		assertThat(visited[1]).isEqualTo(999 * 1000 / 2 * 100);
+		assertThat(visited[2]).isEqualTo(500);
+	}
+
+	@Test
+	public void clearAccounts() throws Exception {
+		repository.createAccount(new Account("Id-123"));
+		repository.clearAccounts();
+		assertThat(repository.getAccount("Id-123")).isNull();
+		repository.createAccount(new Account("Id-123"));
+		assertThat(repository.getAccount("Id-123")).isNotNull();
+	}
+
+	@Test
+	public void amountTransfer_TransactionCommit() throws Exception {
+		AccountsService accountsService = new AccountsService(repository, new AccountsProperties());
+		accountsService.createAccount(new Account("Id-341", new BigDecimal(1000)));
+		accountsService.createAccount(new Account("Id-342", new BigDecimal(1000)));
+		accountsService.amountTransfer("Id-341", "Id-342", new BigDecimal(1000));
+		assertThat(accountsService.getAccount("Id-341").getBalance()).isEqualTo(BigDecimal.ZERO);
+		assertThat(accountsService.getAccount("Id-342").getBalance()).isEqualTo(new BigDecimal(2000));
+	}
+
+	@Test
+	public void snapshotVersionsStayInTheRecords() throws Exception {
+		AccountsService accountsService = new AccountsService(repository, new AccountsProperties());
+		VersionClock clock = accountsService.getTransactionManager().getClock();
+		accountsService.createAccount(new Account("Id-343", new BigDecimal(1000)));
+		accountsService.createAccount(new Account("Id-344", new BigDecimal(1000)));
+		for (int i = 0; i < 10; i++) {
+			accountsService.amountTransfer("Id-343", "Id-344", BigDecimal.ONE);
+		}
+		assertThat(repository.getHeapHistoryCount()).isZero();
+		assertThat(accountsService.getAccountSnapshot("Id-343").getBalance()).isEqualByComparingTo("990");
+
+		long pinned = clock.pin();
+		for (int i = 0; i < 10; i++) {
+			accountsService.amountTransfer("Id-343", "Id-344", BigDecimal.ONE);
+		}
+		// the versions the pinned epoch reads are kept, older than the record holds
+		assertThat(repository.getHeapHistoryCount()).isEqualTo(2);
+		assertThat(clock.read(repository.getAccount("Id-343"), pinned).getBalanceUnits()).isEqualTo(99000);
+		clock.unpin(pinned);
+
+		accountsService.amountTransfer("Id-343", "Id-344", BigDecimal.ONE);
+		accountsService.amountTransfer("Id-344", "Id-343", BigDecimal.ONE);
+		assertThat(repository.getHeapHistoryCount()).isZero();
+		assertThat(accountsService.getAccountSnapshot("Id-343").getBalance()).isEqualByComparingTo("980");
+	}
+}
@@ -0,0 +1,483 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.db.awmd.challenge.config.AccountsProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountsSnapshot;
+import com.db.awmd.challenge.domain.AmountTransfer;
+import com.db.awmd.challenge.domain.BatchTransfer;
+import com.db.awmd.challenge.domain.TransferOutcome;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferResult.Status;
+import com.db.awmd.challenge.engine.ShardedTransferEngine;
+import com.db.awmd.challenge.exception.AmountTransferException;
+import com.db.awmd.challenge.exception.TransactionConflictException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsBulkService;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.transaction.AccountTransactionManager;
+import com.db.awmd.challenge.transaction.TransactionEngine;
+import com.db.awmd.challenge.transaction.TransactionMode;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class AccountsServiceConcurrencyTest {
+
+	private static final int THREADS = 2000;
+
+	private static final int TRANSFERS_PER_THREAD = 25;
+
+	@Autowired
+	private AccountsService accountsService;
+
+	@Test
+	public void amountTransfer_ConcurrentTransfersKeepTotalBalance() throws Exception {
+		transferRandomly(this.accountsService);
+	}
+
+	@Test
+	public void amountTransfer_OptimisticConcurrentTransfersKeepTotalBalance() throws Exception {
+		AccountsProperties properties = new AccountsProperties();
+		properties.getTransaction().setMode(TransactionMode.OPTIMISTIC);
+		AccountsService optimisticService = new AccountsService(new AccountsRepositoryInMemory(), properties);
+
+		transferRandomly(optimisticService);
+
+		AccountTransactionManager transactionManager = optimisticService.getTransactionManager();
+		// the service holds only the accounts of this run
+		BigDecimal total = BigDecimal.ZERO;
+		for (String accountId : accountIds(optimisticService)) {
+			total = total.add(optimisticService.getAccount(accountId).getBalance());
+		}
+		assertThat(total).isEqualByComparingTo("16000");
+		assertThat(optimisticService.getStatistics().getTotalBalance()).isEqualByComparingTo("16000");
+		// commits raced on the same accounts and were validated, not just applied
+		assertThat(transactionManager.getRetryCount() + transactionManager.getAbortCount()).isGreaterThan(0);
+	}
+
+	@Test
+	public void amountTransfer_ShardedConcurrentTransfersKeepTotalBalance() throws Exception {
+		AccountsProperties properties = new AccountsProperties();
+		properties.getTransaction().setEngine(TransactionEngine.SHARDED);
+		properties.getTransaction().setShards(4);
+		AccountsService shardedService = new AccountsService(new AccountsRepositoryInMemory(), properties);
+		try {
+			transferRandomly(shardedService);
+		} finally {
+			shardedService.close();
+		}
+	}
+
+	@Test(timeout = 60000)
+	public void amountTransfer_ShardedSmallQueuesDoNotStall() throws Exception {
+		AccountsProperties properties = new AccountsProperties();
+		properties.getTransaction().setEngine(TransactionEngine.SHARDED);
+		properties.getTransaction().setShards(2);
+		// forwards between the shards find their queues full most of the time
+		properties.getTransaction().setShardQueueCapacity(16);
+		AccountsService shardedService = new AccountsService(new AccountsRepositoryInMemory(), properties);
+		try {
+			transferRandomly(shardedService);
+
+			for (int i = 0; i < 16; i++) {
+				shardedService.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+			}
+			List<AmountTransfer> transfers = new ArrayList<>();
+			for (int i = 0; i < 10000; i++) {
+				transfers.add(new AmountTransfer("Id-" + i % 16, "Id-" + (i + 1) % 16, BigDecimal.ONE));
+			}
+			List<TransferResult> results = shardedService.amountTransfers(transfers, BatchTransfer.Mode.BEST_EFFORT);
+			assertThat(results).extracting("status").containsOnly(Status.COMPLETED);
+			for (int i = 0; i < 16; i++) {
+				assertThat(shardedService.getAccount("Id-" + i).getBalance()).isEqualByComparingTo("1000");
+			}
+		} finally {
+			shardedService.close();
+		}
+	}
+
+	@Test
+	public void amountTransfer_ShardedRefundsRejectedCredit() throws Exception {
+		AccountsProperties properties = new AccountsProperties();
+		properties.getTransaction().setEngine(TransactionEngine.SHARDED);
+		properties.getTransaction().setShards(4);
+		AccountsService shardedService = new AccountsService(new AccountsRepositoryInMemory(), properties);
+		try {
+			for (int i = 0; i < 8; i++) {
+				shardedService.createAccount(new Account("Id-" + i, new BigDecimal(100)));
+			}
+			shardedService.blockAccount("Id-1");
+			for (int i = 0; i < 8; i++) {
+				if (i == 1) {
+					continue;
+				}
+				try {
+					shardedService.amountTransfer("Id-" + i, "Id-1", BigDecimal.TEN);
+					fail("Transfer to a blocked account should be rejected");
+				} catch (AmountTransferException e) {
+					assertThat(shardedService.getAccount("Id-" + i).getBalance()).isEqualByComparingTo("100");
+				}
+			}
+			shardedService.unblockAccount("Id-1");
+			shardedService.amountTransfer("Id-0", "Id-1", BigDecimal.TEN);
+			assertThat(shardedService.getAccount("Id-1").getBalance()).isEqualByComparingTo("110");
+		} finally {
+			shardedService.close();
+		}
+	}
+
+	@Test
+	public void amountTransfer_ShardedRefundsFailedCredit() throws Exception {
+		AtomicBoolean failing = new AtomicBoolean(true);
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory() {
+			@Override
+			public Account getAccount(String accountId) {
+				if (failing.get() && accountId.equals("Broken")) {
+					throw new IllegalStateException("Injected failure");
+				}
+				return super.getAccount(accountId);
+			}
+		};
+		repository.createAccount(new Account("Broken", BigDecimal.ZERO));
+		for (int i = 0; i < 8; i++) {
+			repository.createAccount(new Account("Id-" + i, new BigDecimal(100)));
+		}
+		ShardedTransferEngine engine = new ShardedTransferEngine(repository, 4, 16);
+		try {
+			// sources on the shard of the target and on others
+			for (int i = 0; i < 8; i++) {
+				CompletableFuture<TransferOutcome> result = engine.transfer("Id-" + i, "Broken", 1000);
+				try {
+					result.join();
+					fail("Transfer with a failing credit should fail");
+				} catch (CompletionException e) {
+					assertThat(e.getCause()).hasMessage("Injected failure");
+				}
+				assertThat(repository.getAccount("Id-" + i).getBalance()).isEqualByComparingTo("100");
+			}
+			failing.set(false);
+			assertThat(engine.transfer("Id-0", "Broken", 1000).join()).isEqualTo(TransferOutcome.COMPLETED);
+			assertThat(repository.getAccount("Broken").getBalance()).isEqualByComparingTo("10");
+		} finally {
+			engine.close();
+		}
+	}
+
+	@Test
+	public void amountTransfer_ConcurrentTransfersOnHotAccount() throws Exception {
+		final String prefix = "Hot-" + System.nanoTime() + "-";
+		this.accountsService.createAccount(new Account(prefix + "treasury", new BigDecimal(THREADS * TRANSFERS_PER_THREAD)));
+		for (int i = 0; i < 8; i++) {
+			this.accountsService.createAccount(new Account(prefix + i, BigDecimal.ZERO));
+		}
+
+		runConcurrently(() -> {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+				this.accountsService.amountTransfer(prefix + "treasury", prefix + random.nextInt(8), BigDecimal.ONE);
+			}
+		});
+
+		assertThat(this.accountsService.getAccount(prefix + "treasury").getBalance()).isEqualByComparingTo("0");
+		BigDecimal total = BigDecimal.ZERO;
+		for (int i = 0; i < 8; i++) {
+			total = total.add(this.accountsService.getAccount(prefix + i).getBalance());
+		}
+		assertThat(total).isEqualByComparingTo(new BigDecimal(THREADS * TRANSFERS_PER_THREAD));
+	}
+
+	@Test
+	public void amountTransfer_StripedHotAccountKeepsTotalBalance() throws Exception {
+		AccountsService hotService = hotService("merchant");
+		hotService.createAccount(new Account("merchant", BigDecimal.ZERO));
+		for (int i = 0; i < 16; i++) {
+			hotService.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+		}
+
+		runConcurrently(() -> {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+				String payer = "Id-" + random.nextInt(16);
+				try {
+					// every fifth transfer debits the hot account, borrowing across stripes
+					if (random.nextInt(5) == 0) {
+						hotService.amountTransfer("merchant", payer, new BigDecimal(2));
+					} else {
+						hotService.amountTransfer(payer, "merchant", BigDecimal.ONE);
+					}
+				} catch (AmountTransferException e) {
+					// balance too low
+				}
+			}
+		});
+
+		BigDecimal total = hotService.getAccount("merchant").getBalance();
+		assertThat(total.signum()).isGreaterThanOrEqualTo(0);
+		for (int i = 0; i < 16; i++) {
+			total = total.add(hotService.getAccount("Id-" + i).getBalance());
+		}
+		assertThat(total).isEqualByComparingTo("16000");
+		assertThat(hotService.getStatistics().getImbalance()).isEqualByComparingTo("0");
+		assertThat(hotService.getAccountSnapshot("merchant").getBalance())
+				.isEqualByComparingTo(hotService.getAccount("merchant").getBalance());
+	}
+
+	@Test
+	public void amountTransfer_BlockedStripedHotAccountTakesNoCredits() throws Exception {
+		AccountsService hotService = hotService("merchant");
+		hotService.createAccount(new Account("merchant", BigDecimal.ZERO));
+		hotService.createAccount(new Account("payer", new BigDecimal(THREADS * TRANSFERS_PER_THREAD)));
+		AtomicInteger started = new AtomicInteger();
+		BigDecimal[] blockedBalance = new BigDecimal[1];
+
+		runConcurrently(() -> {
+			if (started.incrementAndGet() == THREADS / 2) {
+				hotService.blockAccount("merchant");
+				blockedBalance[0] = hotService.getAccount("merchant").getBalance();
+			}
+			for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+				try {
+					hotService.amountTransfer("payer", "merchant", BigDecimal.ONE);
+				} catch (AmountTransferException e) {
+					// blocked
+				}
+			}
+		});
+
+		assertThat(hotService.getAccount("merchant").getBalance()).isEqualByComparingTo(blockedBalance[0]);
+		assertThat(hotService.getAccount("merchant").getBalance().add(hotService.getAccount("payer").getBalance()))
+				.isEqualByComparingTo(new BigDecimal(THREADS * TRANSFERS_PER_THREAD));
+		hotService.unblockAccount("merchant");
+		hotService.amountTransfer("payer", "merchant", BigDecimal.ONE);
+		assertThat(hotService.getAccount("merchant").getBalance()).isEqualByComparingTo(blockedBalance[0].add(BigDecimal.ONE));
+	}
+
+	private static AccountsService hotService(String hotAccount) {
+		AccountsProperties properties = new AccountsProperties();
+		properties.getHot().getAccounts().add(hotAccount);
+		properties.getHot().setStripes(8);
+		return new AccountsService(new AccountsRepositoryInMemory(), properties);
+	}
+
+	@Test
+	public void getAccounts_SnapshotsSeeNoTransferHalfApplied() throws Exception {
+		readSnapshotsWhileTransferring(this.accountsService);
+	}
+
+	@Test
+	public void getAccounts_ShardedSnapshotsSeeNoTransferHalfApplied() throws Exception {
+		AccountsProperties properties = new AccountsProperties();
+		properties.getTransaction().setEngine(TransactionEngine.SHARDED);
+		// one shard, so that no transfer is in flight between shards
+		properties.getTransaction().setShards(1);
+		properties.getTransaction().setSnapshotVersions(2);
+		AccountsService shardedService = new AccountsService(new AccountsRepositoryInMemory(), properties);
+		try {
+			readSnapshotsWhileTransferring(shardedService);
+		} finally {
+			shardedService.close();
+		}
+	}
+
+	@Test
+	public void exportAccounts_ExportsOneEpochWhileTransferring() throws Exception {
+		final int accounts = 256;
+		AccountsProperties properties = new AccountsProperties();
+		// histories shorter than an export, unless the export pins its epoch
+		properties.getTransaction().setSnapshotVersions(2);
+		AccountsService service = new AccountsService(new AccountsRepositoryInMemory(), properties);
+		ObjectMapper objectMapper = new ObjectMapper();
+		AccountsBulkService bulkService = new AccountsBulkService(service, properties, objectMapper);
+		for (int i = 0; i < accounts; i++) {
+			service.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+		}
+		BigDecimal expected = new BigDecimal(1000 * accounts);
+		AtomicInteger exports = new AtomicInteger();
+		List<BigDecimal> torn = new ArrayList<>();
+		List<Throwable> failures = new ArrayList<>();
+		AtomicBoolean running = new AtomicBoolean(true);
+		Thread exporter = new Thread(() -> {
+			while (running.get()) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				BigDecimal total = BigDecimal.ZERO;
+				try {
+					bulkService.exportAccounts(out);
+					for (String line : new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+						JsonNode account = objectMapper.readTree(line);
+						total = total.add(account.get("balance").decimalValue());
+					}
+				} catch (IOException | RuntimeException e) {
+					failures.add(e);
+					return;
+				}
+				if (total.compareTo(expected) != 0) {
+					synchronized (torn) {
+						torn.add(total);
+					}
+				}
+				exports.incrementAndGet();
+			}
+		});
+		exporter.start();
+		try {
+			runConcurrently(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+					int from = random.nextInt(accounts);
+					int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+					try {
+						service.amountTransfer("Id-" + from, "Id-" + to, new BigDecimal(random.nextInt(50)));
+					} catch (AmountTransferException e) {
+						// insufficient balance is expected under random load
+					}
+				}
+			});
+		} finally {
+			running.set(false);
+			exporter.join();
+			bulkService.close();
+		}
+		assertThat(failures).isEmpty();
+		assertThat(exports.get()).isGreaterThan(0);
+		assertThat(torn).isEmpty();
+	}
+
+	private void readSnapshotsWhileTransferring(AccountsService service) throws InterruptedException {
+		final int accounts = 16;
+		final String prefix = "Snapshot-" + System.nanoTime() + "-";
+		List<String> accountIds = new ArrayList<>();
+		for (int i = 0; i < accounts; i++) {
+			service.createAccount(new Account(prefix + i, new BigDecimal(1000)));
+			accountIds.add(prefix + i);
+		}
+		BigDecimal expected = new BigDecimal(1000 * accounts);
+		AtomicInteger reads = new AtomicInteger();
+		List<BigDecimal> torn = new ArrayList<>();
+		Thread[] readers = new Thread[2];
+		AtomicBoolean running = new AtomicBoolean(true);
+		for (int r = 0; r < readers.length; r++) {
+			readers[r] = new Thread(() -> {
+				while (running.get()) {
+					AccountsSnapshot snapshot = service.getAccounts(accountIds);
+					BigDecimal total = BigDecimal.ZERO;
+					for (Account account : snapshot.getAccounts()) {
+						total = total.add(account.getBalance());
+					}
+					if (total.compareTo(expected) != 0) {
+						synchronized (torn) {
+							torn.add(total);
+						}
+					}
+					reads.incrementAndGet();
+					Thread.yield();
+				}
+			});
+			readers[r].start();
+		}
+		try {
+			runConcurrently(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+					int from = random.nextInt(accounts);
+					int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+					try {
+						service.amountTransfer(prefix + from, prefix + to, new BigDecimal(random.nextInt(50)));
+					} catch (AmountTransferException e) {
+						// insufficient balance is expected under random load
+					}
+				}
+			});
+		} finally {
+			running.set(false);
+			for (Thread reader : readers) {
+				reader.join();
+			}
+		}
+		assertThat(reads.get()).isGreaterThan(0);
+		assertThat(torn).isEmpty();
+	}
+
+	private void transferRandomly(AccountsService service) throws InterruptedException {
+		final int accounts = 16;
+		final String prefix = "Stress-" + System.nanoTime() + "-";
+		for (int i = 0; i < accounts; i++) {
+			service.createAccount(new Account(prefix + i, new BigDecimal(1000)));
+		}
+
+		runConcurrently(() -> {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+				int from = random.nextInt(accounts);
+				int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+				try {
+					service.amountTransfer(prefix + from, prefix + to, new BigDecimal(random.nextInt(50)));
+				} catch (AmountTransferException | TransactionConflictException e) {
+					// insufficient balance and aborted retries are expected under random load
+				}
+			}
+		});
+
+		BigDecimal total = BigDecimal.ZERO;
+		for (int i = 0; i < accounts; i++) {
+			BigDecimal balance = service.getAccount(prefix + i).getBalance();
+			assertThat(balance.signum()).isGreaterThanOrEqualTo(0);
+			total = total.add(balance);
+		}
+		assertThat(total).isEqualByComparingTo(new BigDecimal(1000 * accounts));
+		assertThat(service.getStatistics().getImbalance()).isEqualByComparingTo("0");
+	}
+
+	private static List<String> accountIds(AccountsService service) {
+		List<String> accountIds = new ArrayList<>();
+		service.getAccountsRepository().forEachAccount(account -> accountIds.add(account.getAccountId()));
+		return accountIds;
+	}
+
+	private void runConcurrently(Runnable task) throws InterruptedException {
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>(THREADS);
+		List<Throwable> failures = new ArrayList<>();
+		for (int i = 0; i < THREADS; i++) {
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+					task.run();
+				} catch (Throwable t) {
+					synchronized (failures) {
+						failures.add(t);
+					}
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertThat(failures).isEmpty();
+	}
+}
@@ -3,12 +3,18 @@ package com.db.awmd.challenge;
 import static com.db.awmd.challenge.constant.MessageConstants.ACCOUNT_DOES_NOT_EXIST;
 import static com.db.awmd.challenge.constant.MessageConstants.ACCOUNT_IS_BLOCKED;
 import static com.db.awmd.challenge.constant.MessageConstants.INSUFFICIENT_BALANCE;
+import static com.db.awmd.challenge.constant.MessageConstants.IDEMPOTENCY_KEY_REUSED;
+import static com.db.awmd.challenge.constant.MessageConstants.INVALID_AMOUNT_SCALE;
+import static com.db.awmd.challenge.constant.MessageConstants.SAME_ACCOUNT_TRANSFER;
+import static com.db.awmd.challenge.constant.MessageConstants.UNBALANCED_LEGS;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -17,8 +23,21 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AmountTransfer;
+import com.db.awmd.challenge.domain.BatchTransfer;
+import com.db.awmd.challenge.domain.MultiLegResult;
+import com.db.awmd.challenge.domain.MultiLegTransfer;
+import com.db.awmd.challenge.domain.RejectionReason;
+import com.db.awmd.challenge.domain.StatusChangeOutcome;
+import com.db.awmd.challenge.domain.StatusChangeResult;
+import com.db.awmd.challenge.domain.TransferOutcome;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferResult.Status;
+import com.db.awmd.challenge.exception.AmountTransferException;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.transaction.TransactionContext;
+import com.db.awmd.challenge.transaction.VersionClock;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
@@ -65,6 +84,56 @@ public class AccountsServiceTest {
 
 	}
 
+	@Test
+	public void amountTransfer_IdempotencyKeyReplaysCompletedTransfer() throws Exception {
+		this.accountsService.createAccount(new Account("Id-2000", new BigDecimal(1000)));
+		this.accountsService.createAccount(new Account("Id-2001", new BigDecimal(1000)));
+		AmountTransfer transfer = new AmountTransfer("Id-2000", "Id-2001", new BigDecimal(300), "key-2000");
+
+		this.accountsService.amountTransfer(transfer);
+		this.accountsService.amountTransfer(transfer);
+
+		assertThat(this.accountsService.getAccount("Id-2000").getBalance()).isEqualByComparingTo("700");
+		assertThat(this.accountsService.getAccount("Id-2001").getBalance()).isEqualByComparingTo("1300");
+	}
+
+	@Test
+	public void amountTransfer_IdempotencyKeyReplaysRejection() throws Exception {
+		this.accountsService.createAccount(new Account("Id-2010", new BigDecimal(100)));
+		this.accountsService.createAccount(new Account("Id-2011", new BigDecimal(100)));
+		AmountTransfer transfer = new AmountTransfer("Id-2010", "Id-2011", new BigDecimal(300), "key-2010");
+		try {
+			this.accountsService.amountTransfer(transfer);
+			fail("Transfer should be rejected for insufficient balance");
+		} catch (AmountTransferException e) {
+			assertThat(e.getMessage()).isEqualTo(String.format(INSUFFICIENT_BALANCE, "Id-2010"));
+		}
+
+		// the retry is not applied even though the balance would now suffice
+		this.accountsService.amountTransfer("Id-2011", "Id-2010", new BigDecimal(100));
+		try {
+			this.accountsService.amountTransfer(transfer);
+			fail("Retry should replay the rejection");
+		} catch (AmountTransferException e) {
+			assertThat(e.getMessage()).isEqualTo(String.format(INSUFFICIENT_BALANCE, "Id-2010"));
+		}
+		assertThat(this.accountsService.getAccount("Id-2010").getBalance()).isEqualByComparingTo("200");
+	}
+
+	@Test
+	public void amountTransfer_IdempotencyKeyReusedForDifferentTransfer() throws Exception {
+		this.accountsService.createAccount(new Account("Id-2020", new BigDecimal(1000)));
+		this.accountsService.createAccount(new Account("Id-2021", new BigDecimal(1000)));
+		this.accountsService.amountTransfer(new AmountTransfer("Id-2020", "Id-2021", BigDecimal.TEN, "key-2020"));
+		try {
+			this.accountsService.amountTransfer(new AmountTransfer("Id-2020", "Id-2021", BigDecimal.ONE, "key-2020"));
+			fail("Reusing the key for another amount should be rejected");
+		} catch (AmountTransferException e) {
+			assertThat(e.getMessage()).isEqualTo(String.format(IDEMPOTENCY_KEY_REUSED, "key-2020"));
+		}
+		assertThat(this.accountsService.getAccount("Id-2021").getBalance()).isEqualByComparingTo("1010");
+	}
+
 	@Test
 	public void amountTransfer_TransactionRollBack() throws Exception {
 		Account accountFrom = new Account("Id-350");
@@ -102,6 +171,28 @@ public class AccountsServiceTest {
 		assertThat(this.accountsService.getAccount("Id-360").getBalance()).isEqualTo(new BigDecimal(1000));
 	}
 
+	@Test
+	public void amountTransfer_FractionalAmount() throws Exception {
+		this.accountsService.createAccount(new Account("Id-440", new BigDecimal("100.10")));
+		this.accountsService.createAccount(new Account("Id-441", new BigDecimal("0.05")));
+		this.accountsService.amountTransfer("Id-440", "Id-441", new BigDecimal("99.15"));
+		assertThat(this.accountsService.getAccount("Id-440").getBalance()).isEqualTo(new BigDecimal("0.95"));
+		assertThat(this.accountsService.getAccount("Id-441").getBalance()).isEqualTo(new BigDecimal("99.2"));
+	}
+
+	@Test
+	public void amountTransfer_RejectsSubMinorUnitAmount() throws Exception {
+		this.accountsService.createAccount(new Account("Id-450", new BigDecimal(1000)));
+		this.accountsService.createAccount(new Account("Id-451", new BigDecimal(1000)));
+		try {
+			this.accountsService.amountTransfer("Id-450", "Id-451", new BigDecimal("0.001"));
+			fail("Should have failed for an amount below the minor unit");
+		} catch (Exception e) {
+			assertThat(e.getMessage()).isEqualTo(String.format(INVALID_AMOUNT_SCALE, 2));
+		}
+		assertThat(this.accountsService.getAccount("Id-450").getBalance()).isEqualTo(new BigDecimal(1000));
+	}
+
 	// adding test cases to increase coverage
 	// UnitTest to test case when from account does not exist.
 	@Test
@@ -190,6 +281,116 @@ public class AccountsServiceTest {
 
 	}
 
+	@Test
+	public void amountTransfer_PrecheckRejectsWithoutTransaction() throws Exception {
+		this.accountsService.createAccount(new Account("Id-480", new BigDecimal(1000)));
+		this.accountsService.createAccount(new Account("Id-481", new BigDecimal(1000), true));
+		try {
+			this.accountsService.amountTransfer("Id-480", "Id-480", new BigDecimal(10));
+			fail("Transfer to the same account should be rejected");
+		} catch (AmountTransferException e) {
+			assertThat(e.getReason()).isEqualTo(RejectionReason.SAME_ACCOUNT);
+			assertThat(e.getMessage()).isEqualTo(String.format(SAME_ACCOUNT_TRANSFER, "Id-480"));
+			// rejections are signalled without capturing a stack trace
+			assertThat(e.getStackTrace()).isEmpty();
+		}
+		try {
+			this.accountsService.amountTransfer("Id-480", "Id-481", new BigDecimal(10));
+			fail("Transfer to a blocked account should be rejected");
+		} catch (AmountTransferException e) {
+			assertThat(e.getReason()).isEqualTo(RejectionReason.ACCOUNT_BLOCKED);
+			assertThat(e.getMessage()).isEqualTo(String.format(ACCOUNT_IS_BLOCKED, "Id-481"));
+			assertThat(e.getStackTrace()).isEmpty();
+		}
+		assertThat(this.accountsService.getAccount("Id-480").getBalance()).isEqualTo(new BigDecimal(1000));
+	}
+
+	@Test
+	public void transfer_ReturnsOutcomesWithoutThrowing() throws Exception {
+		this.accountsService.createAccount(new Account("Id-490", new BigDecimal(1000)));
+		Account full = new Account("Id-491");
+		full.setBalanceUnits(Long.MAX_VALUE - 5);
+		this.accountsService.createAccount(full);
+
+		assertThat(this.accountsService.transfer("Id-490", "Id-492", 10L)).isEqualTo(TransferOutcome.TARGET_MISSING);
+		// passes the precheck and is rejected in the transaction
+		assertThat(this.accountsService.transfer("Id-490", "Id-491", 10L))
+				.isEqualTo(TransferOutcome.TARGET_BALANCE_LIMIT);
+		assertThat(this.accountsService.transfer(new AmountTransfer("Id-490", "Id-491", new BigDecimal("0.001"))))
+				.isEqualTo(TransferOutcome.INVALID_AMOUNT);
+		assertThat(this.accountsService.getAccount("Id-490").getBalance()).isEqualByComparingTo("1000");
+
+		AmountTransfer transfer = new AmountTransfer("Id-491", "Id-490", BigDecimal.ONE, "key-490");
+		assertThat(this.accountsService.transfer(transfer)).isEqualTo(TransferOutcome.COMPLETED);
+		assertThat(this.accountsService.transfer(transfer)).isEqualTo(TransferOutcome.REPLAYED);
+		assertThat(this.accountsService.getAccount("Id-490").getBalance()).isEqualByComparingTo("1001");
+	}
+
+	@Test
+	public void setBlocked_ReturnsOutcome() throws Exception {
+		this.accountsService.createAccount(new Account("Id-495", new BigDecimal(1000)));
+
+		assertThat(this.accountsService.setBlocked("Id-495", true)).isEqualTo(StatusChangeOutcome.COMPLETED);
+		assertTrue(this.accountsService.getAccount("Id-495").isBlocked());
+		assertThat(this.accountsService.setBlocked("Id-496", true)).isEqualTo(StatusChangeOutcome.ACCOUNT_MISSING);
+		assertThat(StatusChangeOutcome.ACCOUNT_MISSING.message("Id-496"))
+				.isEqualTo(String.format(ACCOUNT_DOES_NOT_EXIST, "Id-496"));
+	}
+
+	@Test
+	public void transfer_ReusesEmptiedTransactionContext() throws Exception {
+		this.accountsService.createAccount(new Account("Id-501", new BigDecimal(1000)));
+		this.accountsService.createAccount(new Account("Id-502", new BigDecimal(1000)));
+		TransactionContext<Account, Account> context = this.accountsService.getTransactionManager().getRepoProxy()
+				.getContext();
+
+		this.accountsService.transfer("Id-501", "Id-502", 100);
+		this.accountsService.transfer("Id-501", "Id-503", 100);
+
+		assertThat(this.accountsService.getTransactionManager().getRepoProxy().getContext()).isSameAs(context);
+		assertFalse(context.isActive());
+		assertThat(context.size()).isEqualTo(0);
+		assertThat(context.getPostings().size()).isEqualTo(0);
+	}
+
+	@Test
+	public void transfer_ReusesSavePointCopies() throws Exception {
+		this.accountsService.createAccount(new Account("Id-531", new BigDecimal(1000)));
+		this.accountsService.createAccount(new Account("Id-532", new BigDecimal(1000)));
+		TransactionContext<Account, Account> context = this.accountsService.getTransactionManager().getRepoProxy()
+				.getContext();
+
+		this.accountsService.transfer("Id-531", "Id-532", 10000);
+		Account spare = context.spare();
+		this.accountsService.transfer("Id-532", "Id-531", 30000);
+
+		assertThat(spare).isNotNull();
+		assertThat(context.spare()).isSameAs(spare);
+		assertThat(this.accountsService.getAccount("Id-531").getBalance()).isEqualByComparingTo("1200");
+		assertThat(this.accountsService.getAccount("Id-532").getBalance()).isEqualByComparingTo("800");
+	}
+
+	@Test
+	public void setBlocked_BulkFreezesAccounts() throws Exception {
+		this.accountsService.createAccount(new Account("Id-497", new BigDecimal(1000)));
+		this.accountsService.createAccount(new Account("Id-498", new BigDecimal(1000)));
+		this.accountsService.createAccount(new Account("Id-499", new BigDecimal(1000)));
+
+		StatusChangeResult result = this.accountsService.setBlocked(Arrays.asList("Id-497", "Id-498", "Id-497", "Id-500"),
+				true);
+		assertThat(result.getAccounts()).isEqualTo(2);
+		assertThat(result.getMissing()).containsExactly("Id-500");
+		assertTrue(this.accountsService.getAccount("Id-498").isBlocked());
+		assertThat(this.accountsService.transfer("Id-497", "Id-499", 100)).isEqualTo(TransferOutcome.SOURCE_BLOCKED);
+		assertThat(this.accountsService.transfer("Id-499", "Id-498", 100)).isEqualTo(TransferOutcome.TARGET_BLOCKED);
+
+		result = this.accountsService.setBlocked(Arrays.asList("Id-497", "Id-498"), false);
+		assertThat(result.getAccounts()).isEqualTo(2);
+		assertThat(result.getMissing()).isEmpty();
+		assertThat(this.accountsService.transfer("Id-497", "Id-498", 100)).isEqualTo(TransferOutcome.COMPLETED);
+		assertThat(this.accountsService.getAccount("Id-498").getBalance()).isEqualByComparingTo("1001");
+	}
+
 	@Test
 	public void amountTransfer_TransactionRollbackOnFromAccountBlocked() throws Exception {
 		Account accountFrom = new Account("Id-430");
@@ -210,4 +411,109 @@ public class AccountsServiceTest {
 
 	}
 
+	@Test
+	public void amountTransfers_BestEffortSkipsFailingTransfers() throws Exception {
+		this.accountsService.createAccount(new Account("Id-460", new BigDecimal(1000)));
+		this.accountsService.createAccount(new Account("Id-461", new BigDecimal(1000)));
+		this.accountsService.createAccount(new Account("Id-462", new BigDecimal(1000), true));
+		List<TransferResult> results = this.accountsService.amountTransfers(Arrays.asList(
+				new AmountTransfer("Id-460", "Id-461", new BigDecimal(100)),
+				new AmountTransfer("Id-460", "Id-462", new BigDecimal(100)),
+				new AmountTransfer("Id-461", "Id-460", new BigDecimal("0.001")),
+				new AmountTransfer("Id-461", "Id-460", new BigDecimal(1100))), BatchTransfer.Mode.BEST_EFFORT);
+
+		assertThat(results).extracting("status").containsExactly(Status.COMPLETED, Status.REJECTED, Status.REJECTED,
+				Status.COMPLETED);
+		assertThat(results.get(1).getMessage()).isEqualTo(String.format(ACCOUNT_IS_BLOCKED, "Id-462"));
+		assertThat(results.get(2).getMessage()).isEqualTo(String.format(INVALID_AMOUNT_SCALE, 2));
+		assertThat(this.accountsService.getAccount("Id-460").getBalance()).isEqualTo(new BigDecimal(2000));
+		assertThat(this.accountsService.getAccount("Id-461").getBalance()).isEqualTo(BigDecimal.ZERO);
+		assertThat(this.accountsService.getAccount("Id-462").getBalance()).isEqualTo(new BigDecimal(1000));
+	}
+
+	@Test
+	public void amountTransfers_AllOrNothingRollsBackBatch() throws Exception {
+		this.accountsService.createAccount(new Account("Id-470", new BigDecimal(1000)));
+		this.accountsService.createAccount(new Account("Id-471", new BigDecimal(1000)));
+		List<TransferResult> results = this.accountsService.amountTransfers(Arrays.asList(
+				new AmountTransfer("Id-470", "Id-471", new BigDecimal(600)),
+				new AmountTransfer("Id-470", "Id-471", new BigDecimal(600)),
+				new AmountTransfer("Id-471", "Id-470", new BigDecimal(1))), BatchTransfer.Mode.ALL_OR_NOTHING);
+
+		assertThat(results).extracting("status").containsExactly(Status.ROLLED_BACK, Status.REJECTED,
+				Status.ROLLED_BACK);
+		assertThat(results.get(1).getMessage()).isEqualTo(String.format(INSUFFICIENT_BALANCE, "Id-470"));
+		assertThat(this.accountsService.getAccount("Id-470").getBalance()).isEqualTo(new BigDecimal(1000));
+		assertThat(this.accountsService.getAccount("Id-471").getBalance()).isEqualTo(new BigDecimal(1000));
+
+		results = this.accountsService.amountTransfers(Arrays.asList(
+				new AmountTransfer("Id-470", "Id-471", new BigDecimal(600)),
+				new AmountTransfer("Id-471", "Id-470", new BigDecimal(1600))), BatchTransfer.Mode.ALL_OR_NOTHING);
+		assertThat(results).extracting("status").containsExactly(Status.COMPLETED, Status.COMPLETED);
+		assertThat(this.accountsService.getAccount("Id-470").getBalance()).isEqualTo(new BigDecimal(2000));
+		assertThat(this.accountsService.getAccount("Id-471").getBalance()).isEqualTo(BigDecimal.ZERO);
+	}
+
+	@Test
+	public void transfer_MultiLegCreditsAllAccounts() throws Exception {
+		this.accountsService.createAccount(new Account("Id-510", new BigDecimal(1000)));
+		this.accountsService.createAccount(new Account("Id-511", new BigDecimal(500)));
+		this.accountsService.createAccount(new Account("Id-512", BigDecimal.ZERO));
+		this.accountsService.createAccount(new Account("Id-513", BigDecimal.ZERO));
+		this.accountsService.createAccount(new Account("Id-514", BigDecimal.ZERO));
+		MultiLegResult result = this.accountsService.transfer(new MultiLegTransfer(
+				Arrays.asList(leg("Id-510", 900), leg("Id-511", 300)),
+				Arrays.asList(leg("Id-512", 400), leg("Id-513", 700), leg("Id-514", 100))));
+
+		assertTrue(result.isCompleted());
+		assertThat(this.accountsService.getAccount("Id-510").getBalance()).isEqualTo(new BigDecimal(100));
+		assertThat(this.accountsService.getAccount("Id-511").getBalance()).isEqualTo(new BigDecimal(200));
+		assertThat(this.accountsService.getAccount("Id-512").getBalance()).isEqualTo(new BigDecimal(400));
+		assertThat(this.accountsService.getAccount("Id-513").getBalance()).isEqualTo(new BigDecimal(700));
+		assertThat(this.accountsService.getAccount("Id-514").getBalance()).isEqualTo(new BigDecimal(100));
+	}
+
+	@Test
+	public void transfer_MultiLegRollsBackAllLegs() throws Exception {
+		this.accountsService.createAccount(new Account("Id-520", new BigDecimal(1000)));
+		this.accountsService.createAccount(new Account("Id-521", new BigDecimal(100)));
+		this.accountsService.createAccount(new Account("Id-522", BigDecimal.ZERO));
+		this.accountsService.createAccount(new Account("Id-523", BigDecimal.ZERO));
+
+		MultiLegResult result = this.accountsService.transfer(new MultiLegTransfer(
+				Arrays.asList(leg("Id-520", 600), leg("Id-521", 200)),
+				Arrays.asList(leg("Id-522", 400), leg("Id-523", 400))));
+		assertThat(result.getReason()).isEqualTo(RejectionReason.INSUFFICIENT_BALANCE);
+		assertThat(result.getMessage()).isEqualTo(String.format(INSUFFICIENT_BALANCE, "Id-521"));
+
+		result = this.accountsService.transfer(new MultiLegTransfer(Arrays.asList(leg("Id-520", 600)),
+				Arrays.asList(leg("Id-522", 400), leg("Id-523", 100))));
+		assertThat(result.getReason()).isEqualTo(RejectionReason.UNBALANCED_LEGS);
+		assertThat(result.getMessage()).isEqualTo(String.format(UNBALANCED_LEGS, "100"));
+
+		assertThat(this.accountsService.getAccount("Id-520").getBalance()).isEqualTo(new BigDecimal(1000));
+		assertThat(this.accountsService.getAccount("Id-521").getBalance()).isEqualTo(new BigDecimal(100));
+		assertThat(this.accountsService.getAccount("Id-522").getBalance()).isEqualTo(BigDecimal.ZERO);
+		assertThat(this.accountsService.getAccount("Id-523").getBalance()).isEqualTo(BigDecimal.ZERO);
+	}
+
+	@Test
+	public void createAccount_NotSeenAtEarlierEpoch() throws Exception {
+		VersionClock clock = this.accountsService.getTransactionManager().getClock();
+		long pinned = clock.pin();
+		try {
+			this.accountsService.createAccount(new Account("Id-530", BigDecimal.TEN));
+			Account account = this.accountsService.getAccount("Id-530");
+			assertThat(clock.read(account, pinned)).isNull();
+			assertThat(clock.read(account, clock.current()).getBalanceUnits()).isEqualTo(1000);
+			assertThat(this.accountsService.getAccountSnapshot("Id-530").getBalance()).isEqualByComparingTo("10");
+		} finally {
+			clock.unpin(pinned);
+		}
+	}
+
+	private static MultiLegTransfer.Leg leg(String accountId, int amount) {
+		return new MultiLegTransfer.Leg(accountId, new BigDecimal(amount));
+	}
+
 }
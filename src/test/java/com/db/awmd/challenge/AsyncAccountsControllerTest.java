@@ -0,0 +1,123 @@
+package com.db.awmd.challenge;
+
+import static com.db.awmd.challenge.constant.MessageConstants.SERVER_BUSY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.web.AccountsController;
+import com.db.awmd.challenge.web.AsyncAccountsController;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@WebAppConfiguration
+public class AsyncAccountsControllerTest {
+
+	private MockMvc mockMvc;
+
+	@Autowired
+	private AccountsService accountsService;
+
+	@Autowired
+	private AccountsController accountsController;
+
+	@Autowired
+	private WebApplicationContext webApplicationContext;
+
+	@Before
+	public void prepareMockMvc() {
+		this.mockMvc = webAppContextSetup(this.webApplicationContext).build();
+		accountsService.clearAccounts();
+	}
+
+	@Test
+	public void createAndGetAccount() throws Exception {
+		MvcResult created = this.mockMvc.perform(post("/v2/accounts").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"accountId\":\"Id-123\",\"balance\":1000}")).andExpect(request().asyncStarted()).andReturn();
+		this.mockMvc.perform(asyncDispatch(created)).andExpect(status().isCreated());
+
+		MvcResult read = this.mockMvc.perform(get("/v2/accounts/Id-123")).andExpect(request().asyncStarted())
+				.andReturn();
+		this.mockMvc.perform(asyncDispatch(read)).andExpect(status().isOk())
+				.andExpect(content().string("{\"accountId\":\"Id-123\",\"balance\":1000,\"blocked\":false}"));
+	}
+
+	@Test
+	public void amountTransfer() throws Exception {
+		this.accountsService.createAccount(new Account("Id-360", new BigDecimal("123.45")));
+		this.accountsService.createAccount(new Account("Id-361", new BigDecimal("123.45")));
+
+		MvcResult result = this.mockMvc.perform(post("/v2/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"accountFrom\":\"Id-360\",\"accountTo\":\"Id-361\",\"transferAmount\":100}"))
+				.andExpect(request().asyncStarted()).andReturn();
+		this.mockMvc.perform(asyncDispatch(result)).andExpect(status().isAccepted());
+
+		assertThat(accountsService.getAccount("Id-360").getBalance()).isEqualByComparingTo("23.45");
+		assertThat(accountsService.getAccount("Id-361").getBalance()).isEqualByComparingTo("223.45");
+	}
+
+	@Test
+	public void amountTransfer_InvalidAmountIsRejectedBeforeDispatch() throws Exception {
+		this.mockMvc.perform(post("/v2/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"accountFrom\":\"Id-360\",\"accountTo\":\"Id-361\",\"transferAmount\":-1}"))
+				.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void saturatedExecutorAnswersServiceUnavailable() throws Exception {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(1);
+		executor.setMaxPoolSize(1);
+		executor.setQueueCapacity(1);
+		executor.initialize();
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			executor.execute(() -> {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			AsyncAccountsController controller = new AsyncAccountsController(accountsController, executor);
+			this.accountsService.createAccount(new Account("Id-1", BigDecimal.ONE));
+
+			CompletableFuture<ResponseEntity<Object>> queued = controller.getAccount("Id-1");
+			ResponseEntity<Object> rejected = controller.getAccount("Id-1").join();
+			assertThat(rejected.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+			assertThat(rejected.getBody()).isEqualTo(SERVER_BUSY);
+
+			release.countDown();
+			assertThat(queued.join().getStatusCode()).isEqualTo(HttpStatus.OK);
+		} finally {
+			release.countDown();
+			executor.shutdown();
+		}
+	}
+}
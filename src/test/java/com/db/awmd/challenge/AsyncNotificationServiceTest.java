@@ -0,0 +1,106 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AsyncNotificationService;
+import com.db.awmd.challenge.service.AsyncNotificationService.Backpressure;
+import com.db.awmd.challenge.service.NotificationService;
+
+public class AsyncNotificationServiceTest {
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private final List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+
+	private final List<String> threads = Collections.synchronizedList(new ArrayList<>());
+
+	// blocks the workers until release is counted down
+	private final NotificationService slowService = (account, description) -> {
+		try {
+			if (Thread.currentThread().getName().startsWith("notification-")) {
+				release.await(5, TimeUnit.SECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		threads.add(Thread.currentThread().getName());
+		delivered.addAll(Arrays.asList(description.split("\n")));
+	};
+
+	private AsyncNotificationService notificationService;
+
+	@After
+	public void close() {
+		release.countDown();
+		notificationService.close();
+	}
+
+	@Test
+	public void deliversInOrderAndMergesPerAccount() throws Exception {
+		notificationService = new AsyncNotificationService(slowService, 2, 1000, 64, Backpressure.BLOCK);
+		Account account = new Account("Id-1");
+		for (int i = 0; i < 100; i++) {
+			notificationService.notifyAboutTransfer(account, "transfer " + i);
+		}
+		release.countDown();
+		notificationService.close();
+
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			expected.add("transfer " + i);
+		}
+		assertThat(delivered).isEqualTo(expected);
+		assertThat(notificationService.getDeliveredCount()).isEqualTo(100);
+		assertThat(notificationService.getBatchCount()).isLessThan(100);
+		assertThat(notificationService.getQueueDepth()).isZero();
+	}
+
+	@Test
+	public void dropsWhenQueueIsFull() throws Exception {
+		notificationService = new AsyncNotificationService(slowService, 1, 2, 1, Backpressure.DROP);
+		fillQueue();
+		notificationService.notifyAboutTransfer(new Account("Id-1"), "dropped");
+
+		assertThat(notificationService.getDroppedCount()).isEqualTo(1);
+		assertThat(notificationService.getQueueDepth()).isEqualTo(2);
+		release.countDown();
+		notificationService.close();
+		assertThat(delivered).containsExactly("taken", "queued 1", "queued 2");
+	}
+
+	@Test
+	public void callerDeliversWhenQueueIsFull() throws Exception {
+		notificationService = new AsyncNotificationService(slowService, 1, 2, 1, Backpressure.CALLER_RUNS);
+		fillQueue();
+		notificationService.notifyAboutTransfer(new Account("Id-1"), "by caller");
+
+		assertThat(delivered).containsExactly("by caller");
+		assertThat(threads).containsExactly(Thread.currentThread().getName());
+		release.countDown();
+		notificationService.close();
+		assertThat(notificationService.getDroppedCount()).isZero();
+		assertThat(notificationService.getDeliveredCount()).isEqualTo(4);
+	}
+
+	// one notification held by the blocked worker and two waiting in its queue
+	private void fillQueue() throws InterruptedException {
+		Account account = new Account("Id-1");
+		notificationService.notifyAboutTransfer(account, "taken");
+		while (notificationService.getQueueDepth() > 0) {
+			Thread.sleep(1);
+		}
+		notificationService.notifyAboutTransfer(account, "queued 1");
+		notificationService.notifyAboutTransfer(account, "queued 2");
+	}
+}
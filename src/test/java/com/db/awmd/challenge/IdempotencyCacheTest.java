@@ -0,0 +1,51 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.db.awmd.challenge.service.IdempotencyCache;
+
+public class IdempotencyCacheTest {
+
+	@Test
+	public void returnsFirstEntryForKnownKey() throws Exception {
+		IdempotencyCache cache = new IdempotencyCache(1000, 60000);
+		IdempotencyCache.Entry first = new IdempotencyCache.Entry("Id-1", "Id-2", 100);
+
+		assertThat(cache.putIfAbsent("key", first)).isNull();
+		assertThat(cache.putIfAbsent("key", new IdempotencyCache.Entry("Id-1", "Id-2", 100))).isSameAs(first);
+		assertThat(first.matches("Id-1", "Id-2", 100)).isTrue();
+		assertThat(first.matches("Id-1", "Id-2", 101)).isFalse();
+
+		cache.remove("key", first);
+		assertThat(cache.putIfAbsent("key", new IdempotencyCache.Entry("Id-1", "Id-2", 100))).isNull();
+	}
+
+	@Test
+	public void expiredKeysAreForgotten() throws Exception {
+		AtomicLong now = new AtomicLong();
+		IdempotencyCache cache = new IdempotencyCache(1000, 100, now::get);
+		cache.putIfAbsent("key", new IdempotencyCache.Entry("Id-1", "Id-2", 100));
+
+		now.set(99);
+		assertThat(cache.putIfAbsent("key", new IdempotencyCache.Entry("Id-1", "Id-2", 100))).isNotNull();
+		now.set(100);
+		// expiry is judged by the clock reading of the latest insert
+		cache.putIfAbsent("other", new IdempotencyCache.Entry("Id-1", "Id-2", 100));
+		assertThat(cache.putIfAbsent("key", new IdempotencyCache.Entry("Id-1", "Id-2", 100))).isNull();
+	}
+
+	@Test
+	public void sizeStaysBounded() throws Exception {
+		IdempotencyCache cache = new IdempotencyCache(6400, 3600000);
+		for (int i = 0; i < 1000000; i++) {
+			cache.putIfAbsent("key-" + i, new IdempotencyCache.Entry("Id-1", "Id-2", i));
+		}
+		assertThat(cache.size()).isLessThanOrEqualTo(6400);
+		assertThat(cache.putIfAbsent("key-999999", new IdempotencyCache.Entry("Id-1", "Id-2", 999999))).isNotNull();
+		assertThat(cache.putIfAbsent("key-0", new IdempotencyCache.Entry("Id-1", "Id-2", 0))).isNull();
+	}
+}
@@ -0,0 +1,62 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.db.awmd.challenge.metrics.LatencyHistogram;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void percentilesStayWithinBucketPrecision() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long nanos = 1; nanos <= 1000000; nanos++) {
+			histogram.record(nanos);
+		}
+		assertThat(histogram.getCount()).isEqualTo(1000000);
+		assertThat((double) histogram.getPercentile(50)).isCloseTo(500000, within(500000 / 16.0));
+		assertThat((double) histogram.getPercentile(99)).isCloseTo(990000, within(990000 / 16.0));
+		assertThat((double) histogram.getPercentile(99.9)).isCloseTo(999000, within(999000 / 16.0));
+		assertThat(histogram.getPercentile(0)).isEqualTo(1);
+
+		Map<String, Long> summary = histogram.summary();
+		assertThat(summary.get("count")).isEqualTo(1000000);
+		assertThat(summary.get("meanNanos")).isEqualTo(500000);
+		assertThat(summary.get("maxNanos")).isEqualTo(1000000);
+	}
+
+	@Test
+	public void smallAndHugeValues() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertThat(histogram.getPercentile(99)).isZero();
+		histogram.record(-5);
+		histogram.record(7);
+		histogram.record(Long.MAX_VALUE);
+		assertThat(histogram.getPercentile(1)).isZero();
+		assertThat(histogram.getPercentile(50)).isEqualTo(7);
+		assertThat(histogram.getPercentile(100)).isGreaterThan(TimeUnit.MINUTES.toNanos(17));
+	}
+
+	@Test
+	public void concurrentRecordingLosesNothing() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		for (int t = 0; t < 8; t++) {
+			executor.execute(() -> {
+				for (int i = 0; i < 100000; i++) {
+					histogram.record(i % 1000);
+				}
+			});
+		}
+		executor.shutdown();
+		assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+		assertThat(histogram.getCount()).isEqualTo(800000);
+	}
+}
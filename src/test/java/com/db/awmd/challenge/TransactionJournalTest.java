@@ -0,0 +1,209 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.db.awmd.challenge.config.AccountsProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.journal.TransactionJournal;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.transaction.TransactionEvent;
+
+public class TransactionJournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void replayRestoresTransfersAndStatusChanges() throws Exception {
+		File directory = folder.getRoot();
+		AccountsService accountsService = newService(directory, 0);
+		accountsService.createAccount(new Account("Id-1", new BigDecimal("1000.50")));
+		accountsService.createAccount(new Account("Id-2", new BigDecimal(1000)));
+		accountsService.amountTransfer("Id-1", "Id-2", new BigDecimal("250.25"));
+		accountsService.blockAccount("Id-2");
+		accountsService.close();
+
+		AccountsService restarted = newService(directory, 0);
+		assertThat(restarted.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("750.25"));
+		assertThat(restarted.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal("1250.25"));
+		assertThat(restarted.getAccount("Id-2").isBlocked()).isTrue();
+		restarted.close();
+	}
+
+	@Test
+	public void replayDiscardsTornTail() throws Exception {
+		File directory = folder.getRoot();
+		AccountsService accountsService = newService(directory, 5);
+		accountsService.createAccount(new Account("Id-1", new BigDecimal(1000)));
+		accountsService.createAccount(new Account("Id-2", new BigDecimal(1000)));
+		accountsService.amountTransfer("Id-1", "Id-2", new BigDecimal(100));
+		accountsService.close();
+
+		// simulate a crash in the middle of a write
+		File journal = journalSegments(directory)[0];
+		long length = journal.length();
+		try (RandomAccessFile file = new RandomAccessFile(journal, "rw")) {
+			file.seek(length);
+			file.writeInt(64);
+			file.writeInt(42);
+			file.write(new byte[10]);
+		}
+
+		AccountsService restarted = newService(directory, 5);
+		assertThat(journal.length()).isEqualTo(length);
+		assertThat(restarted.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal(900));
+		restarted.amountTransfer("Id-2", "Id-1", new BigDecimal(100));
+		restarted.close();
+
+		AccountsService again = newService(directory, 5);
+		assertThat(again.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal(1000));
+		assertThat(again.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal(1000));
+		again.close();
+	}
+
+	@Test
+	public void recoveryLoadsSnapshotAndReplaysTail() throws Exception {
+		File directory = folder.getRoot();
+		AccountsService accountsService = newService(directory, 0);
+		for (int i = 0; i < 100; i++) {
+			accountsService.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+		}
+		accountsService.amountTransfer("Id-0", "Id-1", new BigDecimal(100));
+		accountsService.getSnapshotManager().takeSnapshot();
+		accountsService.amountTransfer("Id-1", "Id-2", new BigDecimal("50.50"));
+		accountsService.blockAccount("Id-3");
+		accountsService.createAccount(new Account("Id-100", new BigDecimal(5)));
+		accountsService.close();
+
+		assertThat(journalSegments(directory)).hasSize(1);
+		assertThat(directory.list((dir, name) -> name.startsWith("snapshot-"))).hasSize(1);
+
+		AccountsService restarted = newService(directory, 0);
+		assertThat(restarted.getAccount("Id-0").getBalance()).isEqualTo(new BigDecimal(900));
+		assertThat(restarted.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("1049.5"));
+		assertThat(restarted.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal("1050.5"));
+		assertThat(restarted.getAccount("Id-3").isBlocked()).isTrue();
+		assertThat(restarted.getAccount("Id-99").getBalance()).isEqualTo(new BigDecimal(1000));
+		assertThat(restarted.getAccount("Id-100").getBalance()).isEqualTo(new BigDecimal(5));
+
+		// a second snapshot replaces the first one and the segment it covers
+		restarted.getSnapshotManager().takeSnapshot();
+		restarted.amountTransfer("Id-2", "Id-0", new BigDecimal(100));
+		restarted.close();
+		assertThat(directory.list((dir, name) -> name.startsWith("snapshot-"))).hasSize(1);
+
+		AccountsService again = newService(directory, 0);
+		assertThat(again.getAccount("Id-0").getBalance()).isEqualTo(new BigDecimal(1000));
+		assertThat(again.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal("950.5"));
+		again.close();
+	}
+
+	@Test
+	public void failedWriteFailsTheJournal() throws Exception {
+		File directory = folder.getRoot();
+		TransactionJournal journal = new TransactionJournal(directory.toPath(), 1024, 0);
+		journal.recover(new AccountsRepositoryInMemory(), 0);
+		journal.append(TransactionEvent.CREATE, Collections.singletonList(new Account("Id-1", BigDecimal.TEN)));
+		long durable = journal.getDurablePosition();
+
+		// the disk goes away under the journal, and comes back after the failure
+		FileChannel channel = (FileChannel) ReflectionTestUtils.getField(journal, "channel");
+		channel.close();
+		for (int i = 0; i < 2; i++) {
+			try {
+				journal.append(TransactionEvent.CREATE, Collections.singletonList(new Account("Id-2", BigDecimal.TEN)));
+				fail("Append to a failed journal should throw");
+			} catch (UncheckedIOException e) {
+				assertThat(journal.getDurablePosition()).isEqualTo(durable);
+			}
+			ReflectionTestUtils.setField(journal, "channel",
+					FileChannel.open(folder.newFile().toPath(), StandardOpenOption.WRITE));
+		}
+		journal.close();
+
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+		TransactionJournal reopened = new TransactionJournal(directory.toPath(), 1024, 0);
+		assertThat(reopened.recover(repository, 0)).isEqualTo(1);
+		assertThat(repository.getAccount("Id-2")).isNull();
+		reopened.append(TransactionEvent.CREATE, Collections.singletonList(new Account("Id-2", BigDecimal.TEN)));
+		reopened.close();
+	}
+
+	@Test
+	public void recoveryKeepsAccountsCreatedDuringSnapshot() throws Exception {
+		File directory = folder.getRoot();
+		AccountsService accountsService = newService(directory, 0);
+		AtomicBoolean creating = new AtomicBoolean(true);
+		List<Throwable> failures = new ArrayList<>();
+		Thread snapshots = new Thread(() -> {
+			try {
+				while (creating.get()) {
+					accountsService.getSnapshotManager().takeSnapshot();
+				}
+			} catch (Exception e) {
+				failures.add(e);
+			}
+		});
+		snapshots.start();
+		List<Thread> creators = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			int creator = t;
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < 2000; i++) {
+					accountsService.createAccount(new Account("Id-" + creator + "-" + i, BigDecimal.ONE));
+				}
+			});
+			thread.start();
+			creators.add(thread);
+		}
+		for (Thread thread : creators) {
+			thread.join();
+		}
+		creating.set(false);
+		snapshots.join();
+		accountsService.close();
+		assertThat(failures).isEmpty();
+
+		AccountsService restarted = newService(directory, 0);
+		for (int t = 0; t < 4; t++) {
+			for (int i = 0; i < 2000; i++) {
+				assertThat(restarted.getAccount("Id-" + t + "-" + i)).isNotNull();
+			}
+		}
+		assertThat(restarted.getStatistics().getAccounts()).isEqualTo(8000);
+		restarted.close();
+	}
+
+	private static File[] journalSegments(File directory) {
+		File[] segments = directory.listFiles((dir, name) -> name.endsWith(".journal"));
+		Arrays.sort(segments);
+		return segments;
+	}
+
+	private static AccountsService newService(File directory, long syncIntervalMs) {
+		AccountsProperties properties = new AccountsProperties();
+		properties.getJournal().setEnabled(true);
+		properties.getJournal().setDirectory(directory.getPath());
+		properties.getJournal().setSyncIntervalMs(syncIntervalMs);
+		return new AccountsService(new AccountsRepositoryInMemory(), properties);
+	}
+}